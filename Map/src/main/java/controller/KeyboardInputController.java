@@ -42,6 +42,18 @@ public class KeyboardInputController {
                     setKeyboardOption(KeyCode.G, Options.DRAW_GRAPH, "Set Draw Graph to ");
                 } else if (e.getCode().equals(KeyCode.M)) {
                     setKeyboardOption(KeyCode.M, Options.DRAW_MAP, "Set Draw Map to ");
+                } else if (e.getCode().equals(KeyCode.T)) {
+                    setKeyboardOption(KeyCode.T, Options.TILE_CACHE, "Set Tile Cache to ");
+                } else if (e.getCode().equals(KeyCode.R)) {
+                    setKeyboardOption(KeyCode.R, Options.SOFTWARE_RASTER, "Set Software Raster to ");
+                } else if (e.getCode().equals(KeyCode.B)) {
+                    setKeyboardOption(KeyCode.B, Options.STYLE_BATCHING, "Set Style Batching to ");
+                } else if (e.getCode().equals(KeyCode.D)) {
+                    setKeyboardOption(KeyCode.D, Options.DECIMATION, "Set Decimation to ");
+                } else if (e.getCode().equals(KeyCode.P)) {
+                    setKeyboardOption(KeyCode.P, Options.BLIT_PAN, "Set Blit Pan to ");
+                } else if (e.getCode().equals(KeyCode.F)) {
+                    setKeyboardOption(KeyCode.F, Options.PROGRESSIVE, "Set Progressive Drawing to ");
                 }
                 mapView.draw(); // do a redraw so we dont have to move smth to see change
             }
@@ -0,0 +1,489 @@
+package controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLStreamException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.AStar;
+import model.Address;
+import model.AddressRegistry;
+import model.FileLoader;
+import model.Geometry;
+import model.GlobalConfig;
+import model.Graph;
+import model.Java2DRenderer;
+import model.MapDrawer;
+import model.MapObject;
+import model.RTree;
+import model.SerializableColor;
+import model.SerializableRectangle2D;
+import model.StyleBatcher;
+import model.TileCache;
+import model.DataTypes.LRUCache;
+
+/**
+ * A headless server for the map, so browsers can show it too. It has the endpoints
+ * <ul>
+ * <li>/tile/{z}/{x}/{y}.png, a tile of the map in the same pyramid as the TileCache of the desktop app</li>
+ * <li>/route?from=..&amp;to=..&amp;mode=drivable, the fastest route between two addresses or two x,y map coordinates</li>
+ * <li>/search?q=.., the addresses matching the query</li>
+ * <li>/complete?q=..&amp;k=.., the best k streets starting with q, for type-ahead</li>
+ * <li>/reverse?x=..&amp;y=.., the address nearest to a point in map coordinates</li>
+ * <li>/metrics, the amount of requests and their latencies per endpoint</li>
+ * </ul>
+ * Requests are handled by a fixed amount of worker threads with a bounded queue. When the queue is full the thread
+ * accepting connections handles the request itself, which stops it from accepting more until there is room again.
+ * Tiles are rendered with the Java2DRenderer and kept as png's in an LRU cache.
+ */
+public class MapServer {
+    private static final int tileSize = TileCache.tileSize;
+    private static final double edgeMargin = 4; // pixels around the tile to include objects from, like the TileCache
+    // the size of the canvas in the desktop app, tiles pick their objects as if the canvas was showing their level
+    private static final double viewWidth = 1570, viewHeight = 1050;
+    private static final SerializableColor black = new SerializableColor(0, 0, 0);
+
+    private final RTree tree;
+    private final Graph graph;
+    private final AddressRegistry registry;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final LRUCache<Long, byte[]> tiles;
+    private final Map<String, Metrics> metrics = new LinkedHashMap<>();
+    private final ThreadLocal<Java2DRenderer> renderers = ThreadLocal.withInitial(() -> new Java2DRenderer(tileSize, tileSize));
+    private final ThreadLocal<StyleBatcher> batchers = ThreadLocal.withInitial(StyleBatcher::new);
+
+    /**
+     * Makes a server for the map in the loaded file, it doesn't accept requests until started.
+     *
+     * @param loader  the loaded map
+     * @param port    the port to listen on, 0 picks a free one
+     * @param threads the amount of worker threads
+     */
+    public MapServer(FileLoader loader, int port, int threads) throws IOException, XMLStreamException {
+        this(new RTree(loader.getBounds(), loader.getObjects()), loader.getGraph(), loader.getAddressRegistry(), port, threads);
+    }
+
+    /**
+     * Makes a server for the given map, it doesn't accept requests until started.
+     *
+     * @param tree     the tree of the map objects to draw the tiles from
+     * @param graph    the graph to find routes in, may be null if there is no routing
+     * @param registry the addresses to search in, may be null if there is no searching
+     * @param port     the port to listen on, 0 picks a free one
+     * @param threads  the amount of worker threads
+     */
+    public MapServer(RTree tree, Graph graph, AddressRegistry registry, int port, int threads) throws IOException {
+        if (tree == null)
+            throw new NullPointerException("Cannot be null");
+        this.tree = tree;
+        this.graph = graph;
+        this.registry = registry;
+        this.tiles = new LRUCache<>(GlobalConfig.getInstance().getConstant(GlobalConfig.Constant.TILE_CACHE_MB) * 1024L * 1024L);
+        if (graph != null) {
+            graph.getNearestNodeID(0, 0); // builds the grid now, rather than on several threads at once
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64 * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        server.setExecutor(workers);
+        addEndpoint("tile", "image/png", this::tile);
+        addEndpoint("route", "application/json", this::route);
+        addEndpoint("search", "application/json", this::search);
+        addEndpoint("complete", "application/json", this::complete);
+        addEndpoint("reverse", "application/json", this::reverse);
+        addEndpoint("metrics", "application/json", exchange -> metricsJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, and waits up to a second for the ones being handled.
+     */
+    public void stop() {
+        server.stop(1);
+        workers.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public LRUCache<Long, byte[]> getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Something that answers a request. Throwing an IllegalArgumentException means the request was wrong.
+     */
+    private interface Endpoint {
+        byte[] respond(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Registers the endpoint at /name, timing every request to it.
+     */
+    private void addEndpoint(String name, String contentType, Endpoint endpoint) {
+        Metrics endpointMetrics = new Metrics();
+        metrics.put(name, endpointMetrics);
+        server.createContext("/" + name, exchange -> {
+            long start = System.nanoTime();
+            int status = 200;
+            byte[] body;
+            try {
+                body = endpoint.respond(exchange);
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                status = 500;
+                body = String.valueOf(e).getBytes(StandardCharsets.UTF_8);
+            }
+            try {
+                exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+                endpointMetrics.record(System.nanoTime() - start, status != 200);
+            }
+        });
+    }
+
+    /**
+     * /tile/{z}/{x}/{y}.png
+     */
+    private byte[] tile(HttpExchange exchange) throws IOException {
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        if (parts.length != 5 || !parts[4].endsWith(".png"))
+            throw new IllegalArgumentException("Tiles are at /tile/{z}/{x}/{y}.png");
+        int level;
+        long tx, ty;
+        try {
+            level = Integer.parseInt(parts[2]);
+            tx = Long.parseLong(parts[3]);
+            ty = Long.parseLong(parts[4].substring(0, parts[4].length() - ".png".length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a tile: " + exchange.getRequestURI().getPath());
+        }
+        if (level < 0 || level > TileCache.maxLevel)
+            throw new IllegalArgumentException("The level has to be between 0 and " + TileCache.maxLevel);
+        long key = TileCache.key(level, tx, ty);
+        byte[] png = tiles.get(key);
+        if (png == null) { // two requests for the same missing tile both render it, which is rare enough to not matter
+            png = renderTile(level, tx, ty);
+            tiles.put(key, png, png.length);
+        }
+        return png;
+    }
+
+    /**
+     * Renders a tile with the renderer of the current thread.
+     *
+     * @return the tile as a png
+     */
+    public byte[] renderTile(int level, long tx, long ty) throws IOException {
+        double scale = TileCache.scaleOf(level);
+        double minX = tx * tileSize / scale, minY = ty * tileSize / scale;
+        Java2DRenderer renderer = renderers.get();
+        renderer.setTransform(scale, -minX * scale, -minY * scale);
+        renderer.clear(new SerializableColor(GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND)));
+        renderer.setLineWidth(1 / scale);
+        renderer.setStroke(black);
+
+        double margin = edgeMargin / scale;
+        List<MapObject> objects = new ArrayList<>();
+        tree.getObjectsIntersecting(new SerializableRectangle2D(minX - margin, minY - margin, tileSize / scale + 2 * margin,
+                tileSize / scale + 2 * margin), objects, MapDrawer.zoomLevelOf(viewWidth / scale, viewHeight / scale));
+        TileCache.drawObjects(renderer, objects, batchers.get());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(renderer.getImage(), "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * /route?from=..&amp;to=..&amp;mode=.., where from and to are addresses or x,y map coordinates and the mode is walkable,
+     * cyclable or drivable. Responds with the points along the route, its length in meters and the time it takes.
+     */
+    private byte[] route(HttpExchange exchange) {
+        if (graph == null)
+            throw new IllegalArgumentException("There is no graph to route in");
+        Map<String, String> query = parseQuery(exchange);
+        int from = graphNodeOf(query.get("from")), to = graphNodeOf(query.get("to"));
+        Graph.TravelPermission permission;
+        try {
+            permission = Graph.TravelPermission.valueOf(query.getOrDefault("mode", "drivable"));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The mode has to be walkable, cyclable or drivable");
+        }
+        int maxSpeed = 130; // same speeds as the desktop app
+        if (permission == Graph.TravelPermission.walkable) {
+            maxSpeed = 5;
+        } else if (permission == Graph.TravelPermission.cyclable) {
+            maxSpeed = 15;
+        }
+
+        AStar search = new AStar(graph, from, to, maxSpeed, permission);
+        StringBuilder json = new StringBuilder("{\"path\":[");
+        double distance = 0, minutes = 0;
+        boolean first = true;
+        for (Graph.Edge edge : search.getPath()) {
+            if (first) {
+                appendPoint(json, edge.fromNode);
+                first = false;
+            }
+            json.append(',');
+            appendPoint(json, edge.toNode);
+            distance += edge.distance;
+            minutes += edge.getTravelTimeInMinutes(maxSpeed);
+        }
+        json.append("],\"meters\":").append(Math.round(distance * Geometry.metersPerMapUnit))
+                .append(",\"minutes\":").append(Math.round(minutes * 10) / 10.0).append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void appendPoint(StringBuilder json, int node) {
+        json.append('[').append(graph.getXFromID(node)).append(',').append(graph.getYFromID(node)).append(']');
+    }
+
+    /**
+     * @param place either x,y in map coordinates or an address
+     * @return the node of the graph closest to the place
+     */
+    private int graphNodeOf(String place) {
+        if (place == null)
+            throw new IllegalArgumentException("Both from and to are needed");
+        String[] xy = place.split(",");
+        if (xy.length == 2) {
+            try {
+                return graph.getNearestNodeID(Double.parseDouble(xy[0].trim()), Double.parseDouble(xy[1].trim()));
+            } catch (NumberFormatException e) {
+                // not coordinates, so it's an address with a comma in it
+            }
+        }
+        checkRegistry();
+        int[] found = new int[1]; // only the best match is needed, and its strings never are
+        if (registry.findAddressIds(place, found) == 0)
+            throw new IllegalArgumentException("No address matches " + place);
+        return registry.getGraphNode(found[0]);
+    }
+
+    /**
+     * /search?q=..
+     */
+    private byte[] search(HttpExchange exchange) {
+        String q = parseQuery(exchange).get("q");
+        if (q == null)
+            throw new IllegalArgumentException("The query goes in q");
+        checkRegistry();
+        return addressesJson(registry.findAddresses(q));
+    }
+
+    /**
+     * /complete?q=..&amp;k=..
+     */
+    private byte[] complete(HttpExchange exchange) {
+        Map<String, String> query = parseQuery(exchange);
+        String q = query.get("q");
+        if (q == null)
+            throw new IllegalArgumentException("The prefix goes in q");
+        checkRegistry();
+        int k = query.containsKey("k") ? Integer.parseInt(query.get("k")) : 8;
+        return addressesJson(registry.complete(q, k));
+    }
+
+    /**
+     * /reverse?x=..&amp;y=.., responds with the nearest address and how far from the point it is
+     */
+    private byte[] reverse(HttpExchange exchange) {
+        Map<String, String> query = parseQuery(exchange);
+        if (!query.containsKey("x") || !query.containsKey("y"))
+            throw new IllegalArgumentException("The point goes in x and y");
+        checkRegistry();
+        double x = Double.parseDouble(query.get("x")), y = Double.parseDouble(query.get("y"));
+        int point = registry.getNearestAddressPoint(x, y);
+        if (point == -1)
+            throw new IllegalArgumentException("There are no address points");
+        return ("{\"address\":\"" + escape(registry.getAddressOfPoint(point).toString()) + "\",\"meters\":"
+                + Math.round(registry.getMetersToPoint(point, x, y)) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] addressesJson(List<Address> addresses) {
+        StringBuilder json = new StringBuilder("[");
+        for (Address address : addresses) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"address\":\"").append(escape(address.toString())).append('"');
+            if (graph != null) {
+                json.append(",\"x\":").append(graph.getXFromID(address.getGraphNode()))
+                        .append(",\"y\":").append(graph.getYFromID(address.getGraphNode()));
+            }
+            json.append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The registry is only read once it's frozen, so the workers search it at the same time without taking turns
+     */
+    private void checkRegistry() {
+        if (registry == null)
+            throw new IllegalArgumentException("There are no addresses to search in");
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * @return the string as the contents of a json string, with the quotes, backslashes and control characters
+     *         escaped
+     */
+    public static String escape(String str) {
+        StringBuilder escaped = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) { // the rest of the control characters have no short escape worth using
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * @return the metrics of every endpoint and the tile cache as json
+     */
+    public String metricsJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Metrics> entry : metrics.entrySet()) {
+            json.append('"').append(entry.getKey()).append("\":");
+            entry.getValue().appendJson(json);
+            json.append(',');
+        }
+        json.append("\"tileCache\":{\"hits\":").append(tiles.getHits()).append(",\"misses\":").append(tiles.getMisses())
+                .append(",\"bytes\":").append(tiles.getWeight()).append("}}");
+        return json.toString();
+    }
+
+    /**
+     * The latencies of an endpoint, kept in a histogram with a bucket per power of two microseconds so recording is
+     * just a few atomic increments. The percentiles are the upper end of the bucket they fall in.
+     */
+    private static class Metrics {
+        private final LongAdder count = new LongAdder(), errors = new LongAdder(), totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(40);
+
+        void record(long nanos, boolean error) {
+            count.increment();
+            if (error) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long micros = Math.max(1, nanos / 1000);
+            buckets.incrementAndGet(Math.min(buckets.length() - 1, 63 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        /**
+         * @return the latency in milliseconds that the given fraction of the requests were faster than
+         */
+        double percentile(double fraction) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen > 0 && seen >= fraction * total) {
+                    return (1L << (i + 1)) / 1000.0;
+                }
+            }
+            return 0;
+        }
+
+        void appendJson(StringBuilder json) {
+            long n = count.sum();
+            json.append("{\"count\":").append(n)
+                    .append(",\"errors\":").append(errors.sum())
+                    .append(",\"meanMs\":").append(n == 0 ? 0 : totalNanos.sum() / n / 1e6)
+                    .append(",\"p50Ms\":").append(percentile(0.5))
+                    .append(",\"p99Ms\":").append(percentile(0.99))
+                    .append(",\"maxMs\":").append(maxNanos.get() / 1e6).append('}');
+        }
+    }
+
+    /**
+     * Starts a server, the arguments are the map file, the port and the amount of worker threads, all optional.
+     */
+    public static void main(String[] args) throws IOException, XMLStreamException, ClassNotFoundException {
+        // printing every found address slows searching down a lot under load
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.ADRESS_DEBUG_INFO, false);
+        FileLoader loader = args.length > 0 ? FileLoader.load(args[0]) : FileLoader.loadResourceFile("default.obj");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        MapServer server = new MapServer(loader, port, threads);
+        server.start();
+        System.out.println("Serving the map on port " + server.getPort() + " with " + threads + " threads");
+    }
+}
@@ -1,6 +1,61 @@
 package controller;
 
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import model.Address;
+import model.AddressRegistry;
+import model.GlobalConfig;
+import model.SerializablePoint2D;
+import view.MapView;
+import view.UIView;
+
+/**
+ * Searches as the address is typed into the search bar. The search waits until typing pauses for a moment, so a
+ * burst of keystrokes is one search, and runs on its own thread with a session that only has to go through the
+ * characters that changed. The results are published on the FX thread through the suggestions of the UIView, and
+ * thrown away if the text changed while they were being found. The addresses nearest the middle of the map as it
+ * was when typing paused come first, since only the first few are shown.
+ */
 public class SearchController {
+    private static final long debounceMillis = 150;
+    private final ScheduledExecutorService searcher;
+    private final AddressRegistry.Session session; // only used on the search thread
+    private ScheduledFuture<?> pending;
+    private long generation; // the amount of times the text has changed, only used on the FX thread
 
+    public SearchController(UIView uiView, MapView mapView, AddressRegistry registry) {
+        session = registry.newSession();
+        searcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "address-search");
+            thread.setDaemon(true);
+            return thread;
+        });
 
+        uiView.getInputBar().textProperty().addListener((observable, oldText, newText) -> {
+            long curGeneration = ++generation;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            if (newText == null || newText.isBlank()) {
+                pending = null; // the bar was cleared, e.g. after searching with enter
+                return;
+            }
+            SerializablePoint2D center = mapView.getCenter(); // read here, the map is only changed on the FX thread
+            int shown = GlobalConfig.getInstance().getConstant(GlobalConfig.Constant.MAX_AMT_ADDRESSES);
+            pending = searcher.schedule(() -> {
+                session.setText(newText);
+                List<Address> found = session.findAddresses(center.getX(), center.getY(), shown);
+                Platform.runLater(() -> {
+                    if (curGeneration == generation) {
+                        uiView.getSuggestions().setValue(found);
+                    }
+                });
+            }, debounceMillis, TimeUnit.MILLISECONDS);
+        });
+    }
 }
@@ -1,11 +1,25 @@
 package model;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import model.DataTypes.Dawg;
+import model.DataTypes.DoubleArrayList;
+import model.DataTypes.DoublePointGrid;
 import model.DataTypes.IntArrayList;
 import model.DataTypes.IntToIntHashMap;
 import model.GlobalConfig.Options;
@@ -44,6 +58,16 @@ import model.GlobalConfig.Options;
  * parent and many children. The "layers" of the trees corrospond to the
  * semantic elements
  * of an address, Municipalities, Cities ect
+ * <P>
+ * Once loaded, the registry is frozen into plain arrays: the tries as one array
+ * per field of their nodes, and the tree as arrays indexed by node, with the
+ * children of all the nodes after each other in one array. The words of the
+ * street, city and municipality names are indexed too, so a name can also be
+ * found from its words in any order.
+ * <P>
+ * The frozen registry isn't serialized with the rest of the snapshot. It is
+ * written as a section of its own, which is memory mapped when the snapshot is
+ * loaded, so it doesn't take up the heap.
  */
 public class AddressRegistry implements Serializable {
 
@@ -55,10 +79,401 @@ public class AddressRegistry implements Serializable {
         HOUSENUMBER
     }
 
+    // the registry while it's being built, dropped when it's frozen
     private ArrayList<ElementNode> eNodes;
     private TrieNode[] root;
     private ArrayList<ArrayList<TrieNode>> semanticTree;
     private IntToIntHashMap coordinates;
+    private IntArrayList pointHouseNumbers; // the house number of every address point, and where it is
+    private DoubleArrayList pointXs, pointYs;
+
+    // the frozen registry, which is what queries use. One trie per semantic layer, and the element nodes as arrays
+    // indexed by their id, with the children of node i at children[childStart[i]] until children[childStart[i + 1]]
+    // None of it is serialized, it is written as a section of the snapshot which is mapped instead of loaded
+    // set last when freezing or mapping, so a thread seeing it sees the whole registry
+    private transient volatile FrozenTrie[] tries;
+    private transient IntBuffer eValID, eParent, childStart, children, eGraphNode;
+    // the points of the addresses, for finding the address nearest to a point on the map. Point i is the house
+    // number addressHouseNumber[i] at addressX[i], addressY[i]
+    private transient IntBuffer addressHouseNumber;
+    private transient DoubleBuffer addressX, addressY;
+    private transient IntBuffer ePoint; // the address point of every house number, -1 if it has none
+    private DoublePointGrid addressGrid;
+    // the words of the names of the streets, cities and municipalities, null for the other layers. Built from the
+    // rest the first time they're needed, if the registry wasn't mapped
+    private transient volatile TokenIndex[] tokenIndexes;
+    private static final AddrElements[] indexedLayers = { AddrElements.MUNICIPALITY, AddrElements.CITY,
+            AddrElements.STREET };
+    private static final int suggestions = 8; // the completions kept for every prefix
+    private static final int perLevel = 8; // the elements of a level a search goes through, when it isn't narrowed down
+    private static final int maxResults = perLevel * perLevel * perLevel;
+    // the other ways the letters can be typed, which fuzzy matching treats as the letter itself. Only set before the
+    // registry is frozen, and replaced instead of changed, so searches read it without locking
+    private Map<Character, String[]> folding = Map.of('Æ', new String[] { "AE" }, 'Ø', new String[] { "OE", "O" },
+            'Å', new String[] { "AA", "A" });
+
+    /**
+     * A ternary search trie stored as arrays instead of node objects, node i being val[i] with the children lo[i],
+     * eq[i] and hi[i]. Node 0 is the root, and -1 is no node. The arrays are buffers, on the heap when the trie is
+     * built and in the mapped section of the snapshot when it is loaded.
+     */
+    private static class FrozenTrie {
+        private final CharBuffer val;
+        private final IntBuffer lo, eq, hi, parent;
+        // the elements named by the string ending in node i are named[namedStart[i]] until named[namedStart[i + 1]],
+        // sorted by id. A name is in many places, like a street name in dozens of towns
+        private final IntBuffer namedStart, named;
+        // the best completions of the prefix ending in node i are top[topStart[i]] until top[topStart[i + 1]],
+        // null for the layers that aren't completed
+        private IntBuffer topStart, top;
+
+        /**
+         * @param nodes    the nodes of the trie
+         * @param elements all the element nodes, of which the ones in the layer are named by the trie
+         */
+        private FrozenTrie(ArrayList<TrieNode> nodes, ArrayList<ElementNode> elements, AddrElements elem) {
+            int n = nodes.size();
+            char[] val = new char[n];
+            int[] lo = new int[n], eq = new int[n], hi = new int[n], parent = new int[n];
+            for (int i = 0; i < n; i++) {
+                TrieNode node = nodes.get(i);
+                val[i] = node.val;
+                lo[i] = node.lChildID;
+                eq[i] = node.midChildID;
+                hi[i] = node.rChildID;
+                parent[i] = node.parentID;
+            }
+            int[] namedStart = new int[n + 1];
+            for (ElementNode element : elements) {
+                if (element.semantic == elem) {
+                    namedStart[element.valID + 1]++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                namedStart[i + 1] += namedStart[i];
+            }
+            int[] named = new int[namedStart[n]], filled = new int[n];
+            for (ElementNode element : elements) { // in order of id
+                if (element.semantic == elem) {
+                    named[namedStart[element.valID] + filled[element.valID]++] = element.thisID;
+                }
+            }
+            this.val = CharBuffer.wrap(val);
+            this.lo = IntBuffer.wrap(lo);
+            this.eq = IntBuffer.wrap(eq);
+            this.hi = IntBuffer.wrap(hi);
+            this.parent = IntBuffer.wrap(parent);
+            this.namedStart = IntBuffer.wrap(namedStart);
+            this.named = IntBuffer.wrap(named);
+        }
+
+        /**
+         * Reads the trie at the position of the buffer, which is moved past it
+         */
+        private FrozenTrie(ByteBuffer buffer) {
+            int n = buffer.getInt();
+            val = chars(buffer, n);
+            lo = ints(buffer, n);
+            eq = ints(buffer, n);
+            hi = ints(buffer, n);
+            parent = ints(buffer, n);
+            namedStart = ints(buffer, n + 1);
+            named = ints(buffer, buffer.getInt());
+            int tops = buffer.getInt();
+            if (tops != -1) {
+                topStart = ints(buffer, n + 1);
+                top = ints(buffer, tops);
+            }
+        }
+
+        /**
+         * Writes the trie in the layout it is read in
+         */
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(size());
+            for (int i = 0; i < size(); i++) {
+                out.writeChar(val.get(i));
+            }
+            for (IntBuffer array : new IntBuffer[] { lo, eq, hi, parent, namedStart }) {
+                writeInts(array, out);
+            }
+            out.writeInt(named.limit());
+            writeInts(named, out);
+            out.writeInt(top == null ? -1 : top.limit());
+            if (top != null) {
+                writeInts(topStart, out);
+                writeInts(top, out);
+            }
+        }
+
+        /**
+         * @return whether the string ending in the node is the name of an element
+         */
+        private boolean isName(int node) {
+            return namedStart.get(node + 1) > namedStart.get(node);
+        }
+
+        /**
+         * @return the amount of nodes
+         */
+        private int size() {
+            return val.limit();
+        }
+
+        /**
+         * The string ending in the given node, found by going up to the root and taking the characters of the nodes
+         * that are gone through the middle of
+         */
+        private String getString(int node) {
+            int length = 1;
+            for (int cur = node; parent.get(cur) != -1; cur = parent.get(cur)) {
+                if (eq.get(parent.get(cur)) == cur) {
+                    length++;
+                }
+            }
+            // filled from the back, since the characters are found from the end of the string
+            char[] str = new char[length];
+            str[--length] = val.get(node);
+            for (int cur = node; parent.get(cur) != -1; cur = parent.get(cur)) {
+                if (eq.get(parent.get(cur)) == cur) {
+                    str[--length] = val.get(parent.get(cur));
+                }
+            }
+            return new String(str);
+        }
+    }
+
+    /**
+     * A part of the buffer as ints, from its position, which is moved past them
+     */
+    private static IntBuffer ints(ByteBuffer buffer, int length) {
+        ByteBuffer ints = buffer.duplicate();
+        ints.limit(buffer.position() + Integer.BYTES * length);
+        buffer.position(buffer.position() + Integer.BYTES * length);
+        return ints.slice().asIntBuffer();
+    }
+
+    private static CharBuffer chars(ByteBuffer buffer, int length) {
+        ByteBuffer chars = buffer.duplicate();
+        chars.limit(buffer.position() + Character.BYTES * length);
+        buffer.position(buffer.position() + Character.BYTES * length);
+        return chars.slice().asCharBuffer();
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer buffer, int length) {
+        ByteBuffer doubles = buffer.duplicate();
+        doubles.limit(buffer.position() + Double.BYTES * length);
+        buffer.position(buffer.position() + Double.BYTES * length);
+        return doubles.slice().asDoubleBuffer();
+    }
+
+    private static void writeInts(IntBuffer array, DataOutputStream out) throws IOException {
+        for (int i = 0; i < array.limit(); i++) {
+            out.writeInt(array.get(i));
+        }
+    }
+
+    /**
+     * Finds the prefix in a trie closest to a word, by edit distance, going down the trie with a row of the
+     * Levenshtein table per character. The row of a node is shared by its lo and hi children, who are other
+     * characters in the same place, and the middle child gets the next row. Once every entry of a row is over the
+     * amount of edits allowed, nothing below the node can get closer, so it is skipped.
+     */
+    private static class FuzzyMatch {
+        private final FrozenTrie trie;
+        private final String word;
+        private final Map<Character, String[]> folding;
+        private final int maxEdits;
+        private int[][] rows;
+        private int bestNode = -1, bestDistance;
+
+        private FuzzyMatch(FrozenTrie trie, String word, Map<Character, String[]> folding, int maxEdits) {
+            this.trie = trie;
+            this.word = word;
+            this.folding = folding;
+            this.maxEdits = maxEdits;
+            bestDistance = maxEdits + 1;
+            rows = new int[word.length() + maxEdits + 1][word.length() + 1];
+            for (int j = 0; j <= word.length(); j++) {
+                rows[0][j] = j;
+            }
+        }
+
+        private int search() {
+            // node 0 is the root, which isn't a character
+            visit(trie.lo.get(0), 0);
+            visit(trie.hi.get(0), 0);
+            visit(trie.eq.get(0), 0);
+            return bestNode;
+        }
+
+        /**
+         * @param node  the node to go through, and its lo and hi children
+         * @param depth the characters before the node, whose row is rows[depth]
+         */
+        private void visit(int node, int depth) {
+            while (node != -1) {
+                if (depth + 1 == rows.length) {
+                    rows = Arrays.copyOf(rows, rows.length * 2);
+                }
+                if (rows[depth + 1] == null) {
+                    rows[depth + 1] = new int[word.length() + 1];
+                }
+                int[] prev = rows[depth], row = rows[depth + 1];
+                char c = trie.val.get(node);
+                String[] spellings = c < 128 ? null : folding.get(c);
+                row[0] = prev[0] + 1;
+                int min = row[0];
+                for (int j = 1; j <= word.length(); j++) {
+                    int cost = prev[j - 1] + (word.charAt(j - 1) == c ? 0 : 1);
+                    cost = Math.min(cost, Math.min(prev[j], row[j - 1]) + 1);
+                    if (spellings != null) {
+                        for (String spelling : spellings) {
+                            if (spelling.length() <= j && word.startsWith(spelling, j - spelling.length())) {
+                                cost = Math.min(cost, prev[j - spelling.length()]);
+                            }
+                        }
+                    }
+                    row[j] = cost;
+                    min = Math.min(min, cost);
+                }
+
+                int distance = row[word.length()];
+                // on a tie the end of a word is better than the middle of one
+                if (distance < bestDistance || distance == bestDistance && bestNode != -1 && trie.isName(node)
+                        && !trie.isName(bestNode)) {
+                    bestNode = node;
+                    bestDistance = distance;
+                }
+                if (min <= maxEdits) {
+                    visit(trie.eq.get(node), depth + 1);
+                }
+                visit(trie.lo.get(node), depth);
+                node = trie.hi.get(node);
+            }
+        }
+    }
+
+    /**
+     * An inverted index from the words in the names of a layer to the elements whose name has the word, so a name can
+     * be found from any of its words in any order. The words are a {@link Dawg}, where word i is the i'th word in
+     * sorted order, and the elements of word i are postings[postingStart[i]] until postings[postingStart[i + 1]],
+     * sorted by id. It is all read from a ByteBuffer, so it can be used straight from the snapshot file.
+     */
+    private static class TokenIndex {
+        private final Dawg tokens;
+        private final IntBuffer postingStart, postings;
+
+        /**
+         * Reads the index at the position of the buffer, which is moved past it
+         */
+        private TokenIndex(ByteBuffer buffer) {
+            tokens = new Dawg(buffer);
+            postingStart = ints(buffer, tokens.size() + 1);
+            postings = ints(buffer, postingStart.get(tokens.size()));
+        }
+
+        /**
+         * Writes the index in the layout it is read in
+         *
+         * @param index the elements having every word, sorted by id
+         */
+        private static void write(TreeMap<String, IntArrayList> index, DataOutputStream out) throws IOException {
+            Dawg.write(new ArrayList<>(index.keySet()), out);
+            int start = 0;
+            out.writeInt(start);
+            for (IntArrayList elements : index.values()) {
+                start += elements.size();
+                out.writeInt(start);
+            }
+            for (IntArrayList elements : index.values()) {
+                for (int k = 0; k < elements.size(); k++) {
+                    out.writeInt(elements.get(k));
+                }
+            }
+        }
+
+        /**
+         * @return the index of the word, or -1 if no name has it
+         */
+        private int indexOf(String token) {
+            return tokens.ordinal(token);
+        }
+
+        private int length(int token) {
+            return postingStart.get(token + 1) - postingStart.get(token);
+        }
+
+        /**
+         * @return the elements having the word, sorted by id
+         */
+        private int[] elements(int token) {
+            int[] elements = new int[length(token)];
+            for (int k = 0; k < elements.length; k++) {
+                elements[k] = postings.get(postingStart.get(token) + k);
+            }
+            return elements;
+        }
+
+        /**
+         * @return whether the element has the word in its name
+         */
+        private boolean contains(int token, int element) {
+            int lo = postingStart.get(token), hi = postingStart.get(token + 1) - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (postings.get(mid) < element) {
+                    lo = mid + 1;
+                } else if (postings.get(mid) > element) {
+                    hi = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Keeps the elements that also have the word. Both lists are sorted, so they are gone through together, and
+         * the postings of the word skip ahead by the square root of their length while that doesn't pass the next
+         * element, so a long posting list is mostly jumped over when the elements are few.
+         *
+         * @param elements the elements so far, sorted, which are overwritten by the ones that are kept
+         * @param count    the amount of elements
+         * @return the amount of elements kept
+         */
+        private int intersect(int[] elements, int count, int token) {
+            int from = postingStart.get(token), to = postingStart.get(token + 1);
+            int skip = Math.max(1, (int) Math.sqrt(to - from));
+            int kept = 0, i = from;
+            for (int e = 0; e < count && i < to; e++) {
+                int element = elements[e];
+                while (i + skip < to && postings.get(i + skip) <= element) {
+                    i += skip;
+                }
+                while (i < to && postings.get(i) < element) {
+                    i++;
+                }
+                if (i < to && postings.get(i) == element) {
+                    elements[kept++] = element;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * The words of a name or a query, in upper case
+     */
+    private static String[] tokenize(String str) {
+        List<String> words = new ArrayList<>();
+        for (String word : str.toUpperCase().split("[\\s\\-.,/]+")) {
+            if (!word.isEmpty()) { // split keeps the empty word before a leading separator
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
 
     private class TrieNode implements Serializable {
         public char val;
@@ -79,26 +494,6 @@ public class AddressRegistry implements Serializable {
             this(val, thisID);
             this.parentID = parentID;
         }
-
-        public String getString(ArrayList<TrieNode> nodeList) {
-            TrieNode curNode = this;
-            TrieNode former;
-            StringBuilder str = new StringBuilder();
-            str.append(val);
-            while (curNode != null) {
-                former = curNode;
-
-                if (curNode.parentID == -1) {
-                    break;
-                }
-                curNode = nodeList.get(curNode.parentID);
-                if (curNode.midChildID == former.thisID) {
-                    str.append(curNode.val);
-                }
-            }
-            return str.reverse().toString();
-        }
-
     }
 
     private class ElementNode implements Serializable {
@@ -106,7 +501,6 @@ public class AddressRegistry implements Serializable {
         public AddrElements semantic;
         public int parentID;
         public int thisID;
-        public int nextSiblingID;
         public IntToIntHashMap siblings;
         public IntArrayList childrenIDs;
 
@@ -115,7 +509,6 @@ public class AddressRegistry implements Serializable {
             this.valID = valID;
             this.childrenIDs = new IntArrayList();
             this.parentID = -1;
-            this.nextSiblingID = -1;
             this.thisID = thisID;
         }
 
@@ -184,6 +577,9 @@ public class AddressRegistry implements Serializable {
         eNodes = new ArrayList<>();
         semanticTree = new ArrayList<>(AddrElements.values().length);
         coordinates = new IntToIntHashMap();
+        pointHouseNumbers = new IntArrayList();
+        pointXs = new DoubleArrayList();
+        pointYs = new DoubleArrayList();
         for (int i = 0; i < AddrElements.values().length; i++) {
             semanticTree.add(new ArrayList<>());
             root[i] = new TrieNode('-', 0);
@@ -192,6 +588,28 @@ public class AddressRegistry implements Serializable {
     }
 
     public void addAddress(Address addr) {
+        addHouseNumber(addr);
+    }
+
+    /**
+     * Adds the address, and that it is at the given point on the map, so it can be found from the point by
+     * {@link #getNearestAddressPoint(double, double)}
+     *
+     * @param x the x-coordinate of the address, in map coordinates
+     * @param y the y-coordinate of the address, in map coordinates
+     */
+    public void addAddress(Address addr, double x, double y) {
+        pointHouseNumbers.add(addHouseNumber(addr));
+        pointXs.add(x);
+        pointYs.add(y);
+    }
+
+    /**
+     * @return the element node of the house number of the address
+     */
+    private int addHouseNumber(Address addr) {
+        if (tries != null)
+            throw new IllegalStateException("Addresses can't be added once the registry is frozen");
         TrieNode muncTNode = insertString(AddrElements.MUNICIPALITY, addr.getMunicipality().trim().toUpperCase());
         ElementNode municENode;
         if (muncTNode.nodeID != -1) {
@@ -210,6 +628,7 @@ public class AddressRegistry implements Serializable {
                 addr.getHouseNumber().trim().toUpperCase());
 
         coordinates.put(hnENode.thisID, addr.getGraphNode());
+        return hnENode.thisID;
     }
 
     private ElementNode setAddrElem(ElementNode parentENode, AddrElements elem, String strElem) {
@@ -230,11 +649,12 @@ public class AddressRegistry implements Serializable {
         TrieNode trieRoot = root[elem.ordinal()];
         TrieNode curNode = trieRoot;
         int curNodeID = 0;
+        boolean wentDown = false; // whether curNodeID is the middle child, where the next character goes
 
         int index = 0;
         while (true) {
             if (curNodeID < 0) { // insert the rest
-                if (curNodeID != curNode.midChildID) {
+                if (!wentDown) { // the root or a side child, where the character itself goes
                     curNode = insertChild(str.charAt(index++), curNode, trieArr);
                 }
                 str = str.substring(index);
@@ -246,12 +666,14 @@ public class AddressRegistry implements Serializable {
                 }
                 return curNode;
             }
+            wentDown = false;
             if (str.charAt(index) < curNode.val) {
                 curNodeID = curNode.lChildID;
             } else if (str.charAt(index) > curNode.val) {
                 curNodeID = curNode.rChildID;
             } else if (index < str.length() - 1) {
                 curNodeID = curNode.midChildID;
+                wentDown = true;
                 index++;
             } else {
                 return curNode;
@@ -262,86 +684,579 @@ public class AddressRegistry implements Serializable {
         }
     }
 
-    private TrieNode find(AddrElements elem, String str) {
-        return find(elem, str, root[elem.ordinal()], 0);
+    private TrieNode insertChild(char childVal, TrieNode parent, ArrayList<TrieNode> trieArr) {
+        TrieNode newNode;
+        if (childVal < parent.val) {
+            parent.lChildID = trieArr.size();
+        } else if (childVal > parent.val) {
+            parent.rChildID = trieArr.size();
+        } else {
+            parent.midChildID = trieArr.size();
+        }
+
+        newNode = new TrieNode(childVal, trieArr.size(), parent.thisID);
+        trieArr.add(newNode);
+        return newNode;
     }
 
-    private TrieNode find(AddrElements elem, String str, TrieNode startNode, int strIndex) {
-        str = str.trim().toUpperCase();
-        ArrayList<TrieNode> trieArr = semanticTree.get(elem.ordinal());
-        TrieNode curNode = startNode;
-        int curNodeID = startNode.thisID; // since we start at root
+    /**
+     * Packs the registry into arrays, which is much smaller than the node objects it is built from and has no pointers
+     * to chase. Done once all the addresses are added, after that none can be added. Queries freeze the registry if it
+     * wasn't already. Once frozen the registry is only read, so any amount of threads can search it at once.
+     */
+    public void freeze() {
+        if (tries == null) { // checked before locking, so searching a frozen registry never waits for a lock
+            pack();
+        }
+    }
+
+    private synchronized void pack() {
+        if (tries != null) {
+            return; // another thread froze it while this one waited
+        }
+        if (eNodes == null) {
+            throw new IllegalStateException("The registry was loaded without its section of the snapshot");
+        }
+        FrozenTrie[] frozen = new FrozenTrie[AddrElements.values().length];
+        for (int i = 0; i < frozen.length; i++) {
+            frozen[i] = new FrozenTrie(semanticTree.get(i), eNodes, AddrElements.values()[i]);
+        }
+
+        int n = eNodes.size();
+        int[] eValID = new int[n], eParent = new int[n];
+        int[] eGraphNode = new int[n]; // like the map the coordinates were in, an element without any is 0
+        int[] childStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            ElementNode node = eNodes.get(i);
+            eValID[i] = node.valID;
+            eParent[i] = node.parentID;
+            childStart[i + 1] = childStart[i] + node.childrenIDs.size();
+        }
+        int[] children = new int[childStart[n]];
+        for (int i = 0; i < n; i++) {
+            IntArrayList nodeChildren = eNodes.get(i).childrenIDs;
+            for (int k = 0; k < nodeChildren.size(); k++) {
+                children[childStart[i] + k] = nodeChildren.get(k);
+            }
+        }
+        for (int key : coordinates) {
+            eGraphNode[key] = coordinates.get(key);
+        }
+        this.eValID = IntBuffer.wrap(eValID);
+        this.eParent = IntBuffer.wrap(eParent);
+        this.eGraphNode = IntBuffer.wrap(eGraphNode);
+        this.childStart = IntBuffer.wrap(childStart);
+        this.children = IntBuffer.wrap(children);
+        rankCompletions(frozen[AddrElements.STREET.ordinal()]);
+        int points = pointHouseNumbers.size();
+        int[] addressHouseNumber = new int[points];
+        double[] addressX = new double[points], addressY = new double[points];
+        int[] ePoint = new int[n];
+        Arrays.fill(ePoint, -1);
+        for (int i = 0; i < points; i++) {
+            addressHouseNumber[i] = pointHouseNumbers.get(i);
+            addressX[i] = pointXs.get(i);
+            addressY[i] = pointYs.get(i);
+            ePoint[addressHouseNumber[i]] = i;
+        }
+        addressGrid = new DoublePointGrid(addressX, addressY);
+
+        this.addressHouseNumber = IntBuffer.wrap(addressHouseNumber);
+        this.addressX = DoubleBuffer.wrap(addressX);
+        this.addressY = DoubleBuffer.wrap(addressY);
+        this.ePoint = IntBuffer.wrap(ePoint);
+        tries = frozen;
+        dropBuilder();
+    }
+
+    private void dropBuilder() {
+        eNodes = null;
+        root = null;
+        semanticTree = null;
+        coordinates = null;
+        pointHouseNumbers = null;
+        pointXs = null;
+        pointYs = null;
+    }
+
+    /**
+     * Writes the frozen registry, the tries, the element nodes, the address points and the word indexes of the names,
+     * for {@link #mapSection(ByteBuffer)} to use without deserializing them
+     */
+    public void writeSection(DataOutputStream out) throws IOException {
+        freeze();
+        for (FrozenTrie trie : tries) {
+            trie.write(out);
+        }
+        out.writeInt(eValID.limit());
+        for (IntBuffer array : new IntBuffer[] { eValID, eParent, eGraphNode, ePoint, childStart }) {
+            writeInts(array, out);
+        }
+        out.writeInt(children.limit());
+        writeInts(children, out);
+        out.writeInt(addressHouseNumber.limit());
+        writeInts(addressHouseNumber, out);
+        for (DoubleBuffer array : new DoubleBuffer[] { addressX, addressY }) {
+            for (int i = 0; i < array.limit(); i++) {
+                out.writeDouble(array.get(i));
+            }
+        }
+        for (AddrElements elem : indexedLayers) {
+            TokenIndex.write(indexTokens(elem), out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Uses the registry written by {@link #writeSection(DataOutputStream)}, usually from a memory mapped part of the
+     * snapshot file, so it is read as searches need it instead of being loaded onto the heap when the registry is.
+     * Whatever the registry was built from is dropped.
+     *
+     * @param section the frozen registry, from its position
+     */
+    public synchronized void mapSection(ByteBuffer section) {
+        ByteBuffer buffer = section.duplicate(); // reading moves the position
+        FrozenTrie[] frozen = new FrozenTrie[AddrElements.values().length];
+        for (int i = 0; i < frozen.length; i++) {
+            frozen[i] = new FrozenTrie(buffer);
+        }
+        int n = buffer.getInt();
+        eValID = ints(buffer, n);
+        eParent = ints(buffer, n);
+        eGraphNode = ints(buffer, n);
+        ePoint = ints(buffer, n);
+        childStart = ints(buffer, n + 1);
+        children = ints(buffer, buffer.getInt());
+        int points = buffer.getInt();
+        addressHouseNumber = ints(buffer, points);
+        addressX = doubles(buffer, points);
+        addressY = doubles(buffer, points);
+        TokenIndex[] indexes = new TokenIndex[AddrElements.values().length];
+        for (AddrElements elem : indexedLayers) {
+            indexes[elem.ordinal()] = new TokenIndex(buffer);
+        }
+        tokenIndexes = indexes;
+        tries = frozen;
+        dropBuilder();
+    }
+
+    private TokenIndex[] getTokenIndexes() {
+        TokenIndex[] indexes = tokenIndexes;
+        return indexes != null ? indexes : loadTokenIndexes();
+    }
+
+    /**
+     * Builds the word indexes of a registry that wasn't mapped, the same way they are written, so there is only one
+     * way to read them
+     */
+    private synchronized TokenIndex[] loadTokenIndexes() {
+        if (tokenIndexes != null) {
+            return tokenIndexes; // another thread loaded them while this one waited
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (AddrElements elem : indexedLayers) {
+                TokenIndex.write(indexTokens(elem), out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // there is no IO when writing to memory
+        }
+        ByteBuffer section = ByteBuffer.wrap(bytes.toByteArray());
+        TokenIndex[] indexes = new TokenIndex[AddrElements.values().length];
+        for (AddrElements elem : indexedLayers) {
+            indexes[elem.ordinal()] = new TokenIndex(section);
+        }
+        tokenIndexes = indexes;
+        return indexes;
+    }
+
+    /**
+     * Makes the inverted index of the words in the names of the layer. The names are split into words once per name
+     * and not once per element, since most names are the names of many elements.
+     *
+     * @return the elements having every word, sorted by id
+     */
+    private TreeMap<String, IntArrayList> indexTokens(AddrElements elem) {
+        FrozenTrie trie = tries[elem.ordinal()];
+        TreeMap<String, IntArrayList> index = new TreeMap<>();
+        Map<Integer, String[]> wordsOfName = new HashMap<>();
+        for (int id = 0; id < eValID.limit(); id++) { // in order of id, so the postings come out sorted
+            if (depthOf(id) != elem.ordinal()) { // the layers are in order from the top
+                continue;
+            }
+            String[] words = wordsOfName.computeIfAbsent(eValID.get(id), name -> tokenize(trie.getString(name)));
+            for (String word : words) {
+                IntArrayList elements = index.computeIfAbsent(word, w -> new IntArrayList());
+                if (elements.size() == 0 || elements.get(elements.size() - 1) != id) { // a word can repeat
+                    elements.add(id);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * How far an element is below its municipality
+     */
+    private int depthOf(int id) {
+        int depth = 0;
+        for (int parent = eParent.get(id); parent != -1; parent = eParent.get(parent)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Searches by the words of the query in any order, for when the query isn't the start of the names in the order
+     * of the address, like "Allé Kongens" or a word from the middle of a street name. Only used when the ordered
+     * search finds nothing, so the queries it answers keep their results. The elements of the most specific layer
+     * with a match are found by intersecting the postings of the words, rarest first, and a word that would leave
+     * nothing is left for the other parts of the address. An element is kept if all those other words are the name
+     * of its house number or post code, or a word of its city or municipality. The elements found are then expanded
+     * down to house numbers like any other search.
+     *
+     * @return the amount of house numbers found
+     */
+    private int findAddressIdsByTokens(String query, int[] results) {
+        String[] words = tokenize(query);
+        if (words.length == 0) {
+            return 0;
+        }
+        for (AddrElements elem : new AddrElements[] { AddrElements.STREET, AddrElements.CITY, AddrElements.MUNICIPALITY }) {
+            TokenIndex index = getTokenIndexes()[elem.ordinal()];
+            int[] tokens = new int[words.length];
+            int found = 0;
+            for (int k = 0; k < words.length; k++) {
+                tokens[k] = index.indexOf(words[k]);
+                if (tokens[k] != -1) {
+                    found++;
+                }
+            }
+            if (found == 0) {
+                continue;
+            }
+
+            // the rarest word first, so the intersection starts small
+            Integer[] order = new Integer[words.length];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(tokens[a] == -1 ? Integer.MAX_VALUE : index.length(tokens[a]),
+                    tokens[b] == -1 ? Integer.MAX_VALUE : index.length(tokens[b])));
+            int first = tokens[order[0]];
+            int[] elements = index.elements(first);
+            int count = elements.length;
+            boolean[] used = new boolean[words.length];
+            used[order[0]] = true;
+            for (int k = 1; k < order.length && tokens[order[k]] != -1; k++) {
+                int kept = index.intersect(elements, count, tokens[order[k]]);
+                if (kept > 0) {
+                    count = kept;
+                    used[order[k]] = true;
+                }
+            }
+
+            int total = 0;
+            for (int i = 0; i < count && total < results.length; i++) {
+                total = expandTokenMatch(elements[i], elem, words, used, results, total);
+            }
+            if (total > 0) {
+                return total;
+            } // otherwise the words may fit a less specific layer, like a city that is also part of a street name
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the house numbers of an element found by its words to the results, if the rest of the words fit it
+     *
+     * @param used  which of the words were used to find the element
+     * @param total the amount of results so far
+     * @return the amount of results after
+     */
+    private int expandTokenMatch(int element, AddrElements elem, String[] words, boolean[] used, int[] results,
+            int total) {
+        int street = elem == AddrElements.STREET ? element : -1;
+        int city = elem == AddrElements.CITY ? element : street == -1 ? -1 : eParent.get(street);
+        int postCode = city == -1 ? -1 : eParent.get(city);
+        int municipality = postCode == -1 ? element : eParent.get(postCode);
+        int postCodePart = -2, houseNumberPart = -2;
+        TokenIndex cities = getTokenIndexes()[AddrElements.CITY.ordinal()],
+                municipalities = getTokenIndexes()[AddrElements.MUNICIPALITY.ordinal()];
+        for (int k = 0; k < words.length; k++) {
+            if (used[k]) {
+                continue;
+            }
+            int postCodeNode = find(AddrElements.POSTCODE, words[k]),
+                    cityToken = cities.indexOf(words[k]),
+                    municipalityToken = municipalities.indexOf(words[k]),
+                    houseNumberNode = find(AddrElements.HOUSENUMBER, words[k]);
+            if (postCodeNode != -1 && postCodePart == -2 && (postCode == -1 || eValID.get(postCode) == postCodeNode)) {
+                postCodePart = postCodeNode; // filters the post codes when going down from a municipality
+            } else if (cityToken != -1 && city != -1 && cities.contains(cityToken, city)) {
+                continue;
+            } else if (municipalityToken != -1 && municipalities.contains(municipalityToken, municipality)) {
+                continue;
+            } else if (houseNumberNode != -1 && houseNumberPart == -2) {
+                houseNumberPart = houseNumberNode;
+            } else {
+                return total; // a word that doesn't fit this element
+            }
+        }
+        return expand(municipality, postCode, city, street, postCodePart, -2, -2, houseNumberPart, results, total);
+    }
+
+    /**
+     * The rank of a street, the more house numbers it has the higher. Ties go to the street loaded first.
+     */
+    private int compareRank(int streetA, int streetB) {
+        int a = childStart.get(streetA + 1) - childStart.get(streetA);
+        int b = childStart.get(streetB + 1) - childStart.get(streetB);
+        return a != b ? Integer.compare(b, a) : Integer.compare(streetA, streetB);
+    }
+
+    /**
+     * The best of the given elements, at most suggestions of them, best first
+     */
+    private int[] best(IntArrayList candidates) {
+        int[] sorted = new int[candidates.size()];
+        for (int i = 0; i < sorted.length; i++) { // insertion sort, there are at most a few times suggestions
+            int candidate = candidates.get(i), k = i;
+            while (k > 0 && compareRank(candidate, sorted[k - 1]) < 0) {
+                sorted[k] = sorted[k - 1];
+                k--;
+            }
+            sorted[k] = candidate;
+        }
+        return sorted.length <= suggestions ? sorted : Arrays.copyOf(sorted, suggestions);
+    }
+
+    private static void addAll(IntArrayList list, int[] elements) {
+        if (elements == null) {
+            return;
+        }
+        for (int element : elements) {
+            list.add(element);
+        }
+    }
+
+    /**
+     * Stores the best completions of every prefix in the trie, so completing only has to find the prefix.
+     * The completions of the prefix ending in a node are its own word and the words below its middle child.
+     * The trie is gone through children first, and every node keeps the best of everything below it, including
+     * what is to its sides, for its parent to use. That is thrown away once the parent has used it.
+     */
+    private void rankCompletions(FrozenTrie trie) {
+        int n = trie.size();
+        // children before their parents, by reversing a preorder
+        int[] order = new int[n], stack = new int[n];
+        int ordered = 0, top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            order[ordered++] = node;
+            for (int child : new int[] { trie.lo.get(node), trie.eq.get(node), trie.hi.get(node) }) {
+                if (child != -1) {
+                    stack[top++] = child;
+                }
+            }
+        }
+
+        int[][] completions = new int[n][], below = new int[n][];
+        IntArrayList candidates = new IntArrayList();
+        for (int i = n - 1; i >= 0; i--) {
+            int node = order[i];
+            candidates = new IntArrayList();
+            for (int k = trie.namedStart.get(node); k < trie.namedStart.get(node + 1); k++) {
+                candidates.add(trie.named.get(k));
+            }
+            if (trie.eq.get(node) != -1) {
+                addAll(candidates, below[trie.eq.get(node)]);
+                below[trie.eq.get(node)] = null;
+            }
+            completions[node] = best(candidates);
+            addAll(candidates, trie.lo.get(node) == -1 ? null : below[trie.lo.get(node)]);
+            addAll(candidates, trie.hi.get(node) == -1 ? null : below[trie.hi.get(node)]);
+            if (trie.lo.get(node) != -1) {
+                below[trie.lo.get(node)] = null;
+            }
+            if (trie.hi.get(node) != -1) {
+                below[trie.hi.get(node)] = null;
+            }
+            below[node] = best(candidates);
+        }
+
+        int[] start = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            start[i + 1] = start[i] + completions[i].length;
+        }
+        int[] best = new int[start[n]];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(completions[i], 0, best, start[i], completions[i].length);
+        }
+        trie.topStart = IntBuffer.wrap(start);
+        trie.top = IntBuffer.wrap(best);
+    }
+
+    /**
+     * Type-ahead completion of a street name. Gives the streets whose name starts with the prefix, the ones with
+     * the most house numbers first, as an address in the first house number of the street. The completions are
+     * ranked when the registry is frozen, so this only has to find the prefix.
+     *
+     * @param prefix the start of the street name
+     * @param k      how many to give, at most 8
+     * @return the best streets starting with the prefix, best first
+     */
+    public List<Address> complete(String prefix, int k) {
+        freeze();
+        List<Address> completions = new ArrayList<>();
+        prefix = prefix.trim().toUpperCase();
+        if (prefix.isEmpty()) {
+            return completions;
+        }
+        int node = find(AddrElements.STREET, prefix);
+        if (node == -1) {
+            return completions;
+        }
+        FrozenTrie trie = tries[AddrElements.STREET.ordinal()];
+        int end = Math.min(trie.topStart.get(node) + k, trie.topStart.get(node + 1));
+        for (int i = trie.topStart.get(node); i < end; i++) {
+            int street = trie.top.get(i), city = eParent.get(street), postCode = eParent.get(city);
+            int first = children.get(childStart.get(street));
+            completions.add(createAddress(eParent.get(postCode), postCode, city, street, first));
+        }
+        return completions;
+    }
+
+    /**
+     * The address of the given element nodes, at the graph node of the house number
+     */
+    private Address createAddress(int municipality, int postCode, int city, int street, int houseNumber) {
+        Address address = new Address(getStr(municipality, AddrElements.MUNICIPALITY),
+                getStr(postCode, AddrElements.POSTCODE),
+                getStr(city, AddrElements.CITY),
+                getStr(street, AddrElements.STREET),
+                getStr(houseNumber, AddrElements.HOUSENUMBER));
+        address.setClosestGraphPoint(eGraphNode.get(houseNumber));
+        return address;
+    }
+
+    private int find(AddrElements elem, String str) {
+        return find(elem, str, 0, 0);
+    }
+
+    /**
+     * Follows the string down the trie of the layer, from the given node.
+     *
+     * @param str the string, trimmed and in upper case
+     * @return the node the string ends in, or -1 if it isn't in the trie or is empty
+     */
+    private int find(AddrElements elem, String str, int startNode, int strIndex) {
+        if (strIndex >= str.length()) {
+            return -1; // no name is empty
+        }
+        FrozenTrie trie = tries[elem.ordinal()];
+        int curNode = startNode;
         int index = strIndex;
 
         while (true) {
-            if (str.charAt(index) < curNode.val) {
-                curNodeID = curNode.lChildID;
-            } else if (str.charAt(index) > curNode.val) {
-                curNodeID = curNode.rChildID;
+            int next;
+            if (str.charAt(index) < trie.val.get(curNode)) {
+                next = trie.lo.get(curNode);
+            } else if (str.charAt(index) > trie.val.get(curNode)) {
+                next = trie.hi.get(curNode);
             } else if (index < str.length() - 1) {
-                curNodeID = curNode.midChildID;
+                next = trie.eq.get(curNode);
                 index++;
             } else {
                 return curNode;
-            } // the full string is already in the trie
-            if (curNodeID >= 0) {
-                curNode = trieArr.get(curNodeID);
-            } else {
-                return null;
+            } // the full string is in the trie
+            if (next < 0) {
+                return -1;
             } // string isn't in the tree
+            curNode = next;
         }
     }
 
-    private TrieNode insertChild(char childVal, TrieNode parent, ArrayList<TrieNode> trieArr) {
-        TrieNode newNode;
-        if (childVal < parent.val) {
-            parent.lChildID = trieArr.size();
-        } else if (childVal > parent.val) {
-            parent.rChildID = trieArr.size();
-        } else {
-            parent.midChildID = trieArr.size();
+    /**
+     * Sets the other ways a letter can be typed, e.g. "OE" and "O" for Ø, which fuzzy matching takes as the letter
+     * without counting them as edits.
+     *
+     * @param letter    the letter, in upper case
+     * @param spellings the other ways to type it, in upper case, none to only take the letter itself
+     * @throws IllegalStateException if the registry is frozen, when searches may be reading the folding
+     */
+    public void setFolding(char letter, String... spellings) {
+        if (tries != null) {
+            throw new IllegalStateException("The folding can't be changed once the registry is frozen");
         }
+        Map<Character, String[]> changed = new HashMap<>(folding);
+        changed.put(letter, spellings.clone());
+        folding = Collections.unmodifiableMap(changed);
+    }
 
-        newNode = new TrieNode(childVal, trieArr.size(), parent.thisID);
-        trieArr.add(newNode);
-        return newNode;
+    /**
+     * The prefix in the trie of the layer closest to the word, when it isn't in the trie because of a typo or
+     * because the Danish letters were typed without them. Short words have too many close prefixes, so words under
+     * 4 characters aren't matched, and words under 8 can only be one edit off.
+     *
+     * @return the node the closest prefix ends in, or -1 if none are close enough
+     */
+    private int findFuzzy(AddrElements elem, String word) {
+        int maxEdits = word.length() >= 8 ? 2 : word.length() >= 4 ? 1 : 0;
+        if (maxEdits == 0) {
+            return -1;
+        }
+        return new FuzzyMatch(tries[elem.ordinal()], word, folding, maxEdits).search();
     }
 
-    private Address createQueryAddress(String query) {
-        query = query.trim().toUpperCase();
-        String[] words = query.split(" ");
+    /**
+     * Splits the query into the parts of an address, by going through the layers from the municipality down and
+     * taking the words that are a name in it. A word that isn't in any of the layers is a typo, and is taken as the
+     * closest name if it starts a part of the address.
+     *
+     * @param words     the upper case words of the query
+     * @param wordNodes the node every word ends in, when followed from the root of the trie of every layer, -1 if
+     *                  it isn't in the trie
+     */
+    private Address createQueryAddress(String[] words, int[][] wordNodes) {
         boolean[] isRecognized = new boolean[words.length];
         Arrays.fill(isRecognized, false);
+        boolean[] isMisspelled = new boolean[words.length];
+        for (int k = 0; k < words.length; k++) {
+            isMisspelled[k] = !words[k].isEmpty();
+            for (int i = 0; i < AddrElements.values().length && isMisspelled[k]; i++) {
+                isMisspelled[k] = wordNodes[k][i] == -1;
+            }
+        }
 
         String[] elements = new String[AddrElements.values().length];
 
         for (int i = 0; i < AddrElements.values().length; i++) {
-            ArrayList<TrieNode> tries = semanticTree.get(i);
-            int strIndex = 0;
-            TrieNode node = root[i], formerNode;
+            int node = 0, formerNode;
             for (int k = 0; k < words.length; k++) {
-                if (isRecognized[k]) {
+                if (isRecognized[k] || words[k].isEmpty()) {
                     continue;
                 }
-                if (node.thisID != root[i].thisID) {
-                    words[k] = " " + words[k];
-                } // because of multiple word names, names never start with a space but will have
-                  // em inbetween words
-
                 formerNode = node;
-                node = find(AddrElements.values()[i], words[k], node, 0);
-                if (node == null) { // this isnt a match
+                node = node == 0 ? wordNodes[k][i] : find(AddrElements.values()[i], words[k], node, 0);
+                if (node == -1 && formerNode == 0 && isMisspelled[k]) {
+                    node = findFuzzy(AddrElements.values()[i], words[k]);
+                }
+                if (node == -1) { // this isnt a match
                     node = formerNode;
-                    if (formerNode.thisID != root[i].thisID) {
+                    if (formerNode != 0) {
                         break;
                     } // we found something valid, now gtfo
                 } else {
                     isRecognized[k] = true;
                 }
             }
-            if (node != null && node.thisID != root[i].thisID) { // if we found something
-                node = traverseDown(node, tries);
-                elements[i] = node.getString(tries);
+            if (node != 0) { // if we found something
+                node = traverseDown(node, tries[i]);
+                elements[i] = tries[i].getString(node);
             }
         }
 
@@ -352,170 +1267,553 @@ public class AddressRegistry implements Serializable {
                 elements[AddrElements.HOUSENUMBER.ordinal()]);
     }
 
-    public List<Address> findAddresses(String query) {
-        return findAddresses(createQueryAddress(query));
+    private Address createQueryAddress(String query) {
+        String[] words = query.trim().toUpperCase().split(" ");
+        int[][] wordNodes = new int[words.length][AddrElements.values().length];
+        for (int k = 0; k < words.length; k++) {
+            for (int i = 0; i < AddrElements.values().length; i++) {
+                wordNodes[k][i] = words[k].isEmpty() ? -1 : find(AddrElements.values()[i], words[k]);
+            }
+        }
+        return createQueryAddress(words, wordNodes);
     }
 
-    // Returns all the valid addresses that match the query address
-    // query address only needs to have one non-null field.
-    public List<Address> findAddresses(Address queryAddr) {
-        List<Address> possibleAddresses = new ArrayList<>();
-        List<ElementNode> streets = null, cities = null, postCodes = null, municipalities = null;
+    /**
+     * Goes one character further down the trie.
+     *
+     * @param node      the node the word so far ends in
+     * @param wordStart whether the character starts the word, in which case node isn't used
+     * @return the node the word ends in with the character, or -1 if that isn't in the trie
+     */
+    private static int step(FrozenTrie trie, int node, boolean wordStart, char c) {
+        int cur = wordStart ? 0 : trie.eq.get(node);
+        while (cur != -1 && trie.val.get(cur) != c) {
+            cur = c < trie.val.get(cur) ? trie.lo.get(cur) : trie.hi.get(cur);
+        }
+        return cur;
+    }
 
-        if (queryAddr.getStreet() != null) {
-            DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO,
-                    "Querying street: " + queryAddr.getStreet());
-            TrieNode street = find(AddrElements.STREET, queryAddr.getStreet());
-            streets = new LinkedList<>();
-            cities = new LinkedList<>();
-            postCodes = new LinkedList<>();
-            municipalities = new LinkedList<>();
-            ElementNode firstStreetE = eNodes.get(street.nodeID);
-            streets.add(firstStreetE);
+    /**
+     * @return a new session for searching as the query is typed
+     */
+    public Session newSession() {
+        freeze();
+        return new Session();
+    }
 
-            while (firstStreetE.nextSiblingID != -1) {
-                firstStreetE = eNodes.get(firstStreetE.nextSiblingID);
-                streets.add(firstStreetE);
+    /**
+     * A query that is typed a character at a time. Searching from scratch goes down every trie from the root for
+     * every word of the query on every keystroke, so a session keeps the node every trie is in after every character
+     * typed so far. Typing a character is then one step down each trie, and deleting one is dropping the last nodes.
+     * A session isn't thread safe, but several sessions can search the same registry.
+     */
+    public class Session {
+        private final StringBuilder text = new StringBuilder(); // the query so far, in upper case
+        // the node of every layer after each character of the text, -1 for spaces and words that aren't in the trie
+        private final IntArrayList[] cursors = new IntArrayList[AddrElements.values().length];
+
+        private Session() {
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = new IntArrayList();
             }
+        }
 
-            for (ElementNode s : streets) {
-                cities.add(eNodes.get(s.parentID));
+        /**
+         * Changes the query to the given text, only going through the characters after the part the text has in
+         * common with the query so far, so it doesn't matter if the text field gave the whole text or not.
+         *
+         * @param query the new query
+         */
+        public void setText(String query) {
+            query = query.toUpperCase();
+            int common = 0;
+            while (common < Math.min(text.length(), query.length()) && text.charAt(common) == query.charAt(common)) {
+                common++;
             }
+            while (text.length() > common) {
+                delete();
+            }
+            for (int i = common; i < query.length(); i++) {
+                type(query.charAt(i));
+            }
+        }
 
-            for (ElementNode c : cities) {
-                postCodes.add(eNodes.get(c.parentID));
+        /**
+         * Adds a character to the end of the query
+         */
+        public void type(char c) {
+            c = Character.toUpperCase(c);
+            int index = text.length();
+            boolean wordStart = index == 0 || text.charAt(index - 1) == ' ';
+            text.append(c);
+            for (int i = 0; i < cursors.length; i++) {
+                int node = -1;
+                if (c != ' ' && (wordStart || cursors[i].get(index - 1) != -1)) {
+                    node = step(tries[i], wordStart ? 0 : cursors[i].get(index - 1), wordStart, c);
+                }
+                cursors[i].add(node);
             }
+        }
 
-            for (ElementNode pc : postCodes) {
-                municipalities.add(eNodes.get(pc.parentID));
+        /**
+         * Removes the last character of the query, if there is one
+         */
+        public void delete() {
+            if (text.length() == 0) {
+                return;
+            }
+            text.setLength(text.length() - 1);
+            for (IntArrayList cursor : cursors) {
+                cursor.remove(cursor.size() - 1);
             }
-        } else if (queryAddr.getCity() != null) { // for each level, we know there is no query for the levels below it.
-                                                  // E.g here we know the user didnt specify a street
-            DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO, "Querying city: " + queryAddr.getCity());
-            TrieNode city = find(AddrElements.CITY, queryAddr.getCity());
-            cities = new LinkedList<>();
-            postCodes = new LinkedList<>();
-            municipalities = new LinkedList<>();
+        }
 
-            ElementNode firstCityE = eNodes.get(city.nodeID);
-            cities.add(firstCityE);
+        /**
+         * @return the query so far, in upper case
+         */
+        public String getText() {
+            return text.toString();
+        }
 
-            while (firstCityE.nextSiblingID != -1) {
-                firstCityE = eNodes.get(firstCityE.nextSiblingID);
-                cities.add(firstCityE);
+        /**
+         * Finds the ids of the addresses matching the query so far
+         *
+         * @param found where the ids go
+         * @return the amount of addresses found
+         */
+        private int findIds(int[] found) {
+            List<String> words = new ArrayList<>();
+            IntArrayList ends = new IntArrayList();
+            int start = 0;
+            while (start < text.length() && text.charAt(start) == ' ') {
+                start++;
             }
-
-            for (ElementNode c : cities) {
-                postCodes.add(eNodes.get(c.parentID));
+            int end = text.length();
+            while (end > start && text.charAt(end - 1) == ' ') {
+                end--;
             }
-
-            for (ElementNode pc : postCodes) {
-                municipalities.add(eNodes.get(pc.parentID));
+            // split like the query is, where two spaces in a row have an empty word between them
+            for (int i = start; i <= end; i++) {
+                if (i == end || text.charAt(i) == ' ') {
+                    words.add(text.substring(start, i));
+                    ends.add(i - 1);
+                    start = i + 1;
+                }
+            }
+            int[][] wordNodes = new int[words.size()][cursors.length];
+            for (int k = 0; k < words.size(); k++) {
+                for (int i = 0; i < cursors.length; i++) {
+                    wordNodes[k][i] = words.get(k).isEmpty() ? -1 : cursors[i].get(ends.get(k));
+                }
             }
-        } else if (queryAddr.getPostCode() != -1) { // otherwise start it at the postcode level, if we have a postcode
-            DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO,
-                    "Querying postcode: " + queryAddr.getPostCode());
-            TrieNode postCode = find(AddrElements.POSTCODE, Integer.toString(queryAddr.getPostCode()));
-            postCodes = new LinkedList<>();
-            municipalities = new LinkedList<>();
+            int count = findAddressIds(createQueryAddress(words.toArray(new String[0]), wordNodes), found);
+            return count > 0 ? count : findAddressIdsByTokens(text.toString(), found);
+        }
 
-            ElementNode firstPCE = eNodes.get(postCode.nodeID);
-            postCodes.add(firstPCE);
+        /**
+         * @return the addresses matching the query so far, the same as {@link #findAddresses(String)} would give
+         */
+        public List<Address> findAddresses() {
+            int[] found = new int[maxResults];
+            return getAddresses(found, findIds(found));
+        }
 
-            while (firstPCE.nextSiblingID != -1) {
-                firstPCE = eNodes.get(firstPCE.nextSiblingID);
-                postCodes.add(firstPCE);
-            }
+        /**
+         * @return the k addresses matching the query so far nearest to the point, like
+         *         {@link #findAddresses(String, double, double, int)}
+         */
+        public List<Address> findAddresses(double x, double y, int k) {
+            int[] found = new int[maxResults];
+            return getAddresses(found, rankByDistance(found, findIds(found), x, y, k));
+        }
+    }
+
+    /**
+     * The addresses matching the query. The query is read as the start of the names in the order of an address, and
+     * the words that aren't in the registry are taken as the names closest to them, so typos and Danish letters typed
+     * as "oe" or "aa" still find the address. If that finds nothing, the words can be in any order, like
+     * "Nicolai Gade 2 Svendborg", as long as they are whole words of the names.
+     */
+    public List<Address> findAddresses(String query) {
+        int[] found = new int[maxResults];
+        return getAddresses(found, findAddressIds(query, found));
+    }
+
+    /**
+     * Like {@link #findAddresses(String)}, but only the k addresses nearest to a point, nearest first. A street name
+     * is in dozens of towns, and the one meant is most likely the one near where the map is looked at.
+     *
+     * @param x the x-coordinate of the point, in map coordinates, e.g. the centre of the screen
+     * @param y the y-coordinate of the point, in map coordinates
+     * @param k the amount of addresses to give
+     */
+    public List<Address> findAddresses(String query, double x, double y, int k) {
+        int[] found = new int[maxResults];
+        return getAddresses(found, rankByDistance(found, findAddressIds(query, found), x, y, k));
+    }
 
-            for (ElementNode pc : postCodes) {
-                municipalities.add(eNodes.get(pc.parentID));
+    /**
+     * Puts the k addresses nearest to the point first, nearest first. The addresses without a point go last, and
+     * addresses as far away keep their order. Only the nearest k so far are kept, in a heap with the farthest of
+     * them on top, so ranking n addresses takes n log k and not n log n.
+     *
+     * @param ids   the addresses, as found by {@link #findAddressIds(String, int[])}
+     * @param count the amount of addresses
+     * @param x     the x-coordinate of the point, in map coordinates
+     * @param y     the y-coordinate of the point, in map coordinates
+     * @return the amount of addresses kept, at most k
+     */
+    public int rankByDistance(int[] ids, int count, double x, double y, int k) {
+        k = Math.min(k, count);
+        if (k <= 0) {
+            return 0;
+        }
+        int[] heap = new int[k]; // the indexes into ids
+        double[] distance = new double[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int point = getPointOfAddress(ids[i]);
+            // squared, since only the order matters
+            double dx = point == -1 ? 0 : addressX.get(point) - x, dy = point == -1 ? 0 : addressY.get(point) - y;
+            distance[i] = point == -1 ? Double.POSITIVE_INFINITY : dx * dx + dy * dy;
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, distance);
+            } else if (isFarther(heap[0], i, distance)) {
+                heap[0] = i;
+                siftDown(heap, size, distance);
             }
+        }
+        int[] ranked = new int[k];
+        while (size > 0) { // the farthest comes off first
+            ranked[--size] = ids[heap[0]];
+            heap[0] = heap[size];
+            siftDown(heap, size, distance);
+        }
+        System.arraycopy(ranked, 0, ids, 0, k);
+        return k;
+    }
 
-        } else if (queryAddr.getMunicipality() != null) { // if we have a municipality, start the search at top down
-                                                          // level
-            DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO,
-                    "Querying municipality: " + queryAddr.getMunicipality());
-            TrieNode municipality = find(AddrElements.MUNICIPALITY, queryAddr.getMunicipality());
-            municipalities = new LinkedList<>();
+    /**
+     * @return whether address a goes after address b, by distance and then by where it was found
+     */
+    private static boolean isFarther(int a, int b, double[] distance) {
+        return distance[a] > distance[b] || distance[a] == distance[b] && a > b;
+    }
 
-            ElementNode firstMunc = eNodes.get(municipality.nodeID);
-            municipalities.add(firstMunc);
+    private static void siftUp(int[] heap, int i, double[] distance) {
+        while (i > 0 && isFarther(heap[i], heap[(i - 1) / 2], distance)) {
+            int parent = (i - 1) / 2;
+            int swap = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = swap;
+            i = parent;
+        }
+    }
 
-            while (firstMunc.nextSiblingID != -1) {
-                firstMunc = eNodes.get(firstMunc.nextSiblingID);
-                municipalities.add(firstMunc);
+    private static void siftDown(int[] heap, int size, double[] distance) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && isFarther(heap[child + 1], heap[child], distance)) {
+                child++;
             }
+            if (!isFarther(heap[child], heap[i], distance)) {
+                return;
+            }
+            int swap = heap[i];
+            heap[i] = heap[child];
+            heap[child] = swap;
+            i = child;
+        }
+    }
 
+    /**
+     * The trie node of a part of the query, -1 if it isn't in the trie, or -2 if the query doesn't have the part
+     */
+    private int findPart(AddrElements elem, String part) {
+        if (part == null) {
+            return -2;
+        }
+        part = part.trim().toUpperCase();
+        return part.isEmpty() ? -1 : find(elem, part);
+    }
+
+    // Returns all the valid addresses that match the query address
+    // query address only needs to have one non-null field.
+    public List<Address> findAddresses(Address queryAddr) {
+        int[] found = new int[maxResults];
+        return getAddresses(found, findAddressIds(queryAddr, found));
+    }
+
+    private List<Address> getAddresses(int[] found, int count) {
+        List<Address> possibleAddresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            possibleAddresses.add(getAddress(found[i]));
+        }
+        return possibleAddresses;
+    }
+
+    /**
+     * Like {@link #findAddresses(String)}, but only gives the ids of the addresses, which is all there is to find
+     * them, and doesn't build the strings of the addresses until {@link #getAddress(int)} is called. Nothing is kept
+     * between calls, so it can be called from several threads at once.
+     *
+     * @param query   the query
+     * @param results where the ids of the addresses found are put, at most as many as there is room for
+     * @return the amount of addresses found
+     */
+    public int findAddressIds(String query, int[] results) {
+        freeze();
+        int count = findAddressIds(createQueryAddress(query), results);
+        return count > 0 ? count : findAddressIdsByTokens(query, results);
+    }
+
+    /**
+     * Like {@link #findAddressIds(String, int[])} for a query that is already split into its parts.
+     */
+    public int findAddressIds(Address queryAddr, int[] results) {
+        freeze();
+        boolean debug = GlobalConfig.getInstance().getOption(Options.ADRESS_DEBUG_INFO);
+        // the parts are looked up once, and compared to the elements by their trie node
+        int streetPart = findPart(AddrElements.STREET, queryAddr.getStreet()),
+                cityPart = findPart(AddrElements.CITY, queryAddr.getCity()),
+                postCodePart = findPart(AddrElements.POSTCODE,
+                        queryAddr.getPostCode() == -1 ? null : Integer.toString(queryAddr.getPostCode())),
+                municipalityPart = findPart(AddrElements.MUNICIPALITY, queryAddr.getMunicipality()),
+                houseNumberPart = findPart(AddrElements.HOUSENUMBER, queryAddr.getHouseNumber());
+
+        // we find the elements of the most specific part of the query, and go up from each of them.
+        // For each level, we know there is no query for the levels below it, e.g if we start
+        // at the city we know the user didnt specify a street
+        AddrElements layer;
+        int part;
+        String name;
+        if (streetPart != -2) {
+            layer = AddrElements.STREET;
+            part = streetPart;
+            name = queryAddr.getStreet();
+        } else if (cityPart != -2) {
+            layer = AddrElements.CITY;
+            part = cityPart;
+            name = queryAddr.getCity();
+        } else if (postCodePart != -2) { // otherwise start it at the postcode level, if we have a postcode
+            layer = AddrElements.POSTCODE;
+            part = postCodePart;
+            name = Integer.toString(queryAddr.getPostCode());
+        } else if (municipalityPart != -2) { // if we have a municipality, start the search at top down level
+            layer = AddrElements.MUNICIPALITY;
+            part = municipalityPart;
+            name = queryAddr.getMunicipality();
         } else { // haram query
-            return possibleAddresses;
+            return 0;
+        }
+        if (debug) {
+            DebugConsole.getInstance().log("Querying " + layer.name().toLowerCase() + ": " + name);
+        }
+        if (part == -1) {
+            return 0;
         }
 
-        // Here we just go down the tree, grabbing all the children of a particular
+        // a name is in many places, like a street name in dozens of towns, and every one of them that fits the rest
+        // of the query is expanded
+        FrozenTrie trie = tries[layer.ordinal()];
+        int count = 0;
+        int[] above = new int[AddrElements.HOUSENUMBER.ordinal()]; // the element and the ones above it, by layer
+        for (int i = trie.namedStart.get(part); i < trie.namedStart.get(part + 1) && count < results.length; i++) {
+            Arrays.fill(above, -1);
+            above[layer.ordinal()] = trie.named.get(i);
+            for (int l = layer.ordinal(); l > 0; l--) {
+                above[l - 1] = eParent.get(above[l]);
+            }
+            if (!fits(above[AddrElements.MUNICIPALITY.ordinal()], municipalityPart)
+                    || !fits(above[AddrElements.POSTCODE.ordinal()], postCodePart)
+                    || !fits(above[AddrElements.CITY.ordinal()], cityPart)) {
+                continue;
+            }
+            count = expand(above[AddrElements.MUNICIPALITY.ordinal()], above[AddrElements.POSTCODE.ordinal()],
+                    above[AddrElements.CITY.ordinal()], above[AddrElements.STREET.ordinal()], postCodePart, cityPart,
+                    streetPart, houseNumberPart, results, count);
+        }
+        if (debug) {
+            DebugConsole.getInstance().log("Final # of possible addresses: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Whether an element found by going up from the most specific part of a query has the name the query gives it
+     *
+     * @param element the element, -1 if it is below the part the search started from
+     * @param part    the trie node of the query part, like for
+     *                {@link #getAppropiateList(int, int, AddrElements, int, int[], int)}
+     */
+    private boolean fits(int element, int part) {
+        return part == -2 || element == -1 || eValID.get(element) == part;
+    }
+
+    /**
+     * Goes down from the elements found by a search to the house numbers under them.
+     *
+     * @param municipality the municipality, which is always known
+     * @param postCode     the post code, -1 if it isn't known
+     * @param city         the city, -1 if it isn't known
+     * @param street       the street, -1 if it isn't known
+     * @param postCodePart the trie nodes of the parts of the query, like for
+     *                     {@link #getAppropiateList(int, int, AddrElements, int, int[], int)}
+     * @param count        the amount of results so far
+     * @return the amount of results after
+     */
+    private int expand(int municipality, int postCode, int city, int street, int postCodePart, int cityPart,
+            int streetPart, int houseNumberPart, int[] results, int count) {
+        boolean debug = GlobalConfig.getInstance().getOption(Options.ADRESS_DEBUG_INFO);
+        // Here we just go down the tree, grabbing the first few children of a particular
         // instance if we dont have any info on that level from the query
         // and otherwise filtering it by the ones that match the query.
         // IF the query is nonsense, e.g a street tag that's not in the given city tag
         // or something, which can easily happen with user input, we'll
-        // just return an empty list, which should be fine for our case. The general
+        // just return nothing, which should be fine for our case. The general
         // logic anyway is that we display one message when there is zero matches,
         // another with one match, and finally some other when theres more than one.
-        // Maybe we need to filter a little bit considering that we can easily return
-        // several hundred addresses if you search for some common streetname, e.g
-        // "Østergade". Or just a municipality or city, in which case you get everything
-        // thats inside of that particular concept, because there's no filter on
-        // streetnames, so you just get em all.
-        for (ElementNode munc : municipalities) {
-            DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO, munc.thisID + ":");
-
-            List<ElementNode> postCodeList = getAppropiateList(
-                    queryAddr.getPostCode() == -1 ? null : Integer.toString(queryAddr.getPostCode()), munc,
-                    AddrElements.POSTCODE, postCodes);
-
-            for (ElementNode postCode : postCodeList) {
-                List<ElementNode> cityList = getAppropiateList(queryAddr.getCity(), postCode, AddrElements.CITY,
-                        cities);
-
-                for (ElementNode city : cityList) {
-                    List<ElementNode> streetList = getAppropiateList(queryAddr.getStreet(), city, AddrElements.STREET,
-                            streets);
-
-                    for (ElementNode street : streetList) {
-                        ElementNode houseNum;
-                        if (queryAddr.getHouseNumber() == null) {
-                            houseNum = eNodes.get(street.childrenIDs.get(0));
-                        } else {
-                            List<ElementNode> houseNums = getAppropiateList(queryAddr.getHouseNumber(), street,
-                                    AddrElements.HOUSENUMBER, null);
-                            houseNum = houseNums.get(0);
+        // We take at most 8 of every level, which is at most 512 addresses.
+        int[] lists = new int[3 * perLevel]; // the post codes, cities and streets to go through
+        int postCodes = getAppropiateList(postCodePart, municipality, AddrElements.POSTCODE, postCode, lists, 0);
+        for (int p = 0; p < postCodes; p++) {
+            int pc = lists[p];
+            int cities = getAppropiateList(cityPart, pc, AddrElements.CITY, city, lists, perLevel);
+
+            for (int c = 0; c < cities; c++) {
+                int ci = lists[perLevel + c];
+                int streets = getAppropiateList(streetPart, ci, AddrElements.STREET, street, lists, 2 * perLevel);
+
+                for (int s = 0; s < streets; s++) {
+                    int st = lists[2 * perLevel + s];
+                    int houseNum = children.get(childStart.get(st));
+                    if (houseNumberPart != -2) {
+                        houseNum = -1;
+                        for (int i = childStart.get(st); i < childStart.get(st + 1) && houseNum == -1; i++) {
+                            if (eValID.get(children.get(i)) == houseNumberPart) {
+                                houseNum = children.get(i);
+                            }
+                        }
+                        if (houseNum == -1) {
+                            continue; // the street doesn't have that number
                         }
-
-                        Address resAddress = new Address(getStr(munc),
-                                getStr(postCode),
-                                getStr(city),
-                                getStr(street),
-                                getStr(houseNum));
-                        resAddress.setClosestGraphPoint(coordinates.get(houseNum.thisID));
-
-                        DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO, "{" + resAddress + "}");
-                        possibleAddresses.add(resAddress);
+                    }
+                    if (count == results.length) {
+                        return count;
+                    }
+                    results[count++] = houseNum;
+                    if (debug) {
+                        DebugConsole.getInstance().log("{" + getAddress(houseNum) + "}");
                     }
                 }
             }
         }
-        DebugConsole.getInstance().logIfOption(Options.ADRESS_DEBUG_INFO,
-                "Final # of possible addresses: " + possibleAddresses.size());
-        return possibleAddresses;
+        return count;
     }
 
     /**
-     * Utility function to get the string that a particular ElementNode represents.
-     * 
-     * @param eNode
-     * @return
+     * The address of a house number found by {@link #findAddressIds(String, int[])}
+     *
+     * @param id the element node of the house number
+     * @return the address, with its strings built from the tries
+     */
+    public Address getAddress(int id) {
+        int street = eParent.get(id), city = eParent.get(street), postCode = eParent.get(city);
+        return createAddress(eParent.get(postCode), postCode, city, street, id);
+    }
+
+    /**
+     * The graph node of a house number found by {@link #findAddressIds(String, int[])}, without building its address
      */
-    private String getStr(ElementNode eNode) {
-        ArrayList<TrieNode> tArr = semanticTree.get(eNode.semantic.ordinal());
+    public int getGraphNode(int id) {
+        return eGraphNode.get(id);
+    }
 
-        return tArr.get(eNode.valID).getString(tArr);
+    /**
+     * Reverse geocoding, the address nearest to a point on the map. Only the addresses added with their point are
+     * found.
+     *
+     * @param x the x-coordinate of the point, in map coordinates
+     * @param y the y-coordinate of the point, in map coordinates
+     * @return the address point nearest to the point, or -1 if there are none
+     */
+    public int getNearestAddressPoint(double x, double y) {
+        freeze();
+        return addressGrid == null ? -1 : addressGrid.getClosestNodeID(x, y);
+    }
+
+    /**
+     * Bulk version of {@link #getNearestAddressPoint(double, double)}, which runs the queries in parallel
+     *
+     * @return an array where index i holds the address point nearest to (xs[i], ys[i]), -1 if there are none
+     */
+    public int[] getNearestAddressPoints(double[] xs, double[] ys) {
+        freeze();
+        if (addressGrid == null || addressGrid.size() == 0) {
+            int[] none = new int[xs.length];
+            Arrays.fill(none, -1);
+            return none;
+        }
+        return addressGrid.getClosestNodeIDs(xs, ys);
+    }
+
+    /**
+     * @return the nearest address to the point, or null if there are none
+     */
+    public Address getNearestAddress(double x, double y) {
+        int point = getNearestAddressPoint(x, y);
+        return point == -1 ? null : getAddressOfPoint(point);
+    }
+
+    /**
+     * @param point an address point found by {@link #getNearestAddressPoint(double, double)}
+     * @return the address at the point
+     */
+    public Address getAddressOfPoint(int point) {
+        return getAddress(addressHouseNumber.get(point));
+    }
+
+    /**
+     * @param id the house number of an address found by {@link #findAddressIds(String, int[])}
+     * @return the address point of the address, or -1 if it was added without one
+     */
+    public int getPointOfAddress(int id) {
+        return ePoint == null ? -1 : ePoint.get(id);
+    }
+
+    /**
+     * @return the x-coordinate of the address point, in map coordinates
+     */
+    public double getPointX(int point) {
+        return addressX.get(point);
+    }
+
+    /**
+     * @return the y-coordinate of the address point, in map coordinates
+     */
+    public double getPointY(int point) {
+        return addressY.get(point);
+    }
+
+    /**
+     * @param point an address point found by {@link #getNearestAddressPoint(double, double)}
+     * @return the distance from the address point to the given point, in meters
+     */
+    public double getMetersToPoint(int point, double x, double y) {
+        return Math.hypot(addressX.get(point) - x, addressY.get(point) - y) * Geometry.metersPerMapUnit;
+    }
+
+    /**
+     * Utility function to get the string that a particular element node represents.
+     * 
+     * @param eNode the id of the element node
+     * @param elem  the layer the node is in
+     * @return the string
+     */
+    private String getStr(int eNode, AddrElements elem) {
+        return tries[elem.ordinal()].getString(eValID.get(eNode));
     }
 
     /**
@@ -523,50 +1821,52 @@ public class AddressRegistry implements Serializable {
      * incomplete input
      * 
      * @param origin the node to start at
-     * @param tree   the particular semantic tree the node is a part of
+     * @param trie   the particular semantic tree the node is a part of
      * @return some end-node that the origin node leads to.
      */
-    private TrieNode traverseDown(TrieNode origin, ArrayList<TrieNode> tree) {
-        TrieNode next = origin;
-        while (next.midChildID != -1) {
-            next = tree.get(next.midChildID);
+    private int traverseDown(int origin, FrozenTrie trie) {
+        int next = origin;
+        while (trie.eq.get(next) != -1) {
+            next = trie.eq.get(next);
         }
         return next;
     }
 
-    private List<ElementNode> getAppropiateList(String queryStr, ElementNode parentNode, AddrElements elem,
-            List<ElementNode> premadeList) {
-        List<ElementNode> elemList;
-        // basically we want to avoid recalculating stuff unless we have to
-        if (queryStr == null) { // if we dont have a query we want to use postCodeNodes, since they denote all
-                                // the valid postcodes found by upwards traversal
-            if (premadeList == null) { // if we dont have access to postCodeNodes, just grab an arbitrary amount of
-                                       // postcodes
-                elemList = new LinkedList<>();
-                for (int i = 0; i < Math.min(8, parentNode.childrenIDs.size()); i++) {
-                    elemList.add(eNodes.get(parentNode.childrenIDs.get(i)));
+    /**
+     * Puts the elements below the parent node that the search goes through into the list: the one named like the
+     * query part if there is a query part, the one already known from the query if there is one, and otherwise the
+     * first few children.
+     *
+     * @param queryNode the trie node of the query part, -1 if it isn't in the trie or -2 if the query doesn't have it
+     * @param known     the element of the layer found by going up from the query, -1 if there is none
+     * @param list      where the elements go
+     * @param offset    the index the elements go from
+     * @return the amount of elements
+     */
+    private int getAppropiateList(int queryNode, int parentNode, AddrElements elem, int known, int[] list,
+            int offset) {
+        int count = 0;
+        if (queryNode == -2) { // if we dont have a query we want to use the known element, found by upwards traversal
+            if (known == -1) { // if we dont have that, just grab an arbitrary amount of children
+                int end = Math.min(childStart.get(parentNode) + perLevel, childStart.get(parentNode + 1));
+                for (int i = childStart.get(parentNode); i < end; i++) {
+                    list[offset + count++] = children.get(i);
                 }
                 // the worse case amount of addresses is the constant^3, or 512 at cur value.
                 // MUCH better than the previous case
             } else {
-                elemList = premadeList.subList(0, Math.min(8, premadeList.size()));
-            }
-        } else { // if we have a query, we have to do downwards traversal since we dont know if
-                 // the different levels of the search match eachother
-            queryStr = queryStr.trim().toUpperCase();
-            elemList = new LinkedList<>();
-            ArrayList<TrieNode> elemTree = semanticTree.get(elem.ordinal());
-            for (int i = 0; i < parentNode.childrenIDs.size(); i++) {
-                ElementNode child = eNodes.get(parentNode.childrenIDs.get(i));
-                String elementStr = elemTree.get(child.valID).getString(elemTree);
-                if (queryStr.equals(elementStr)) {
-                    elemList.add(child);
+                list[offset + count++] = known;
+            }
+        } else if (queryNode != -1) { // if we have a query, we have to do downwards traversal since we dont know if
+                                      // the different levels of the search match eachother
+            for (int i = childStart.get(parentNode); i < childStart.get(parentNode + 1); i++) {
+                if (eValID.get(children.get(i)) == queryNode) { // a parent only has one child of every name
+                    list[offset + count++] = children.get(i);
+                    break;
                 }
-
             }
         }
-
-        return elemList;
+        return count;
     }
 
 }
@@ -1,7 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-
 import java.util.List;
 
 /**
@@ -34,10 +32,62 @@ public class Area extends MapObject {
     }
 
     @Override
-    public void draw(GraphicsContext gc) {
-        gc.setFill(info.getColor().getFXColor());
-        gc.fillPolygon(xCoordinates, yCoordinates, coordinates.length / 2);
-        gc.stroke();
+    public void draw(MapRenderer renderer, boolean darkmode, Decimator decimator) {
+        renderer.setFill(info.getColor(darkmode));
+        addShape(renderer, decimator);
+    }
+
+    /**
+     * Polygons can't share a path, so an area is filled right away.
+     */
+    @Override
+    public void addShape(MapRenderer renderer, Decimator decimator) {
+        if (decimator != null) {
+            int level = levelFor(decimator.getTolerance());
+            if (level < 0) {
+                decimator.fillPolygon(renderer, coordinates, 0, coordinates.length);
+            } else {
+                decimator.fillPolygon(renderer, levels, levelOffsets[2 * level], levelOffsets[2 * level + 1]);
+            }
+            return;
+        }
+        renderer.fillPolygon(xCoordinates, yCoordinates, coordinates.length / 2);
+    }
+
+    @Override
+    public Object getStyleKey() {
+        return info;
+    }
+
+    @Override
+    public SerializableColor getColor() {
+        return info.getColor();
+    }
+
+    @Override
+    public SerializableColor getColor(boolean darkmode) {
+        return info.getColor(darkmode);
+    }
+
+    @Override
+    public boolean isFilled() {
+        return true;
+    }
+
+    /**
+     * An area also counts as within the distance if the point is inside of it.
+     */
+    @Override
+    public boolean isWithinDistance(double x, double y, double distance) {
+        return Geometry.polygonContains(coordinates, x, y) || super.isWithinDistance(x, y, distance);
+    }
+
+    /**
+     * An area also intersects the polygon if the polygon is inside of it.
+     */
+    @Override
+    public boolean intersectsPolygon(double[] polygon) {
+        return super.intersectsPolygon(polygon) || Geometry.polygonContains(coordinates, polygon[0], polygon[1]);
     }
 
     @Override
@@ -0,0 +1,248 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Geocodes CSV files with a lot of rows at once, without the UI. The rows are read a batch at a time, the batch is
+ * looked up in parallel, and written in the order it was read before the next batch is read, so only one batch is in
+ * memory however long the file is.
+ * <P>
+ * Run with the snapshot of the map, e.g. "reverse default.obj points.csv addresses.csv" or
+ * "forward default.obj addresses.csv points.csv header".
+ */
+public class BulkGeocoder {
+    private static final int batchSize = 1 << 16;
+    // how well a row matched in forward geocoding: not at all, several addresses of which the first is taken, one
+    // address that has another house number than the row, or exactly the one address
+    private static final String[] matchQuality = { "none", "ambiguous", "partial", "exact" };
+    private final AddressRegistry registry;
+
+    /**
+     * @param registry the addresses to geocode with
+     */
+    public BulkGeocoder(AddressRegistry registry) {
+        this.registry = registry;
+        registry.freeze();
+    }
+
+    /**
+     * Reverse geocodes rows of "lat,lon", writing every row with the nearest address and the meters to it after it.
+     * A first row that isn't a point is taken as a header, and rows that aren't points get no address.
+     *
+     * @param in  the rows to geocode
+     * @param out where the rows go with their address
+     * @return the amount of rows geocoded
+     */
+    public long reverse(BufferedReader in, Writer out) throws IOException {
+        List<String> batch = new ArrayList<>(batchSize);
+        double[] xs = new double[batchSize], ys = new double[batchSize];
+        boolean[] isPoint = new boolean[batchSize];
+        boolean first = true;
+        long count = 0;
+        String line;
+        while ((line = in.readLine()) != null || !batch.isEmpty()) {
+            if (line != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int i = batch.size();
+                String[] latLon = line.split(",");
+                try {
+                    ys[i] = -Double.parseDouble(latLon[0].trim()); // like the FileLoader places the nodes
+                    xs[i] = 0.56 * Double.parseDouble(latLon[1].trim());
+                    isPoint[i] = true;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    if (first) {
+                        out.write(line + ",address,meters\n");
+                        first = false;
+                        continue;
+                    }
+                    isPoint[i] = false;
+                    xs[i] = ys[i] = 0;
+                }
+                first = false;
+                batch.add(line);
+                if (batch.size() < batchSize) {
+                    continue;
+                }
+            }
+
+            int[] points = registry.getNearestAddressPoints(trim(xs, batch.size()), trim(ys, batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                out.write(batch.get(i));
+                if (isPoint[i] && points[i] != -1) {
+                    out.write(',' + quote(registry.getAddressOfPoint(points[i]).toString("oneLine")) + ','
+                            + Math.round(registry.getMetersToPoint(points[i], xs[i], ys[i])));
+                } else {
+                    out.write(",,");
+                }
+                out.write('\n');
+            }
+            count += batch.size();
+            batch.clear();
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Geocodes rows of addresses, writing every row with the graph node of the address, its "lat,lon" and how well it
+     * matched after it. The fields of a row are joined into one query, so the address can be in one field or split
+     * over several, like "street,number,postcode,city". A row that can't be looked up gets no match, like one that
+     * finds nothing, so every row of the input is a row of the output.
+     *
+     * @param in        the rows to geocode
+     * @param out       where the rows go with their graph node and coordinates
+     * @param hasHeader whether the first row is a header, which gets the names of the added columns
+     * @return the amount of rows geocoded
+     */
+    public long forward(BufferedReader in, Writer out, boolean hasHeader) throws IOException {
+        List<String> batch = new ArrayList<>(batchSize);
+        boolean first = hasHeader;
+        long count = 0;
+        String line;
+        while ((line = in.readLine()) != null || !batch.isEmpty()) {
+            if (line != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    out.write(line + ",graph_node,lat,lon,match\n");
+                    continue;
+                }
+                batch.add(line);
+                if (batch.size() < batchSize) {
+                    continue;
+                }
+            }
+
+            int size = batch.size();
+            int[] ids = new int[size];
+            int[] quality = new int[size];
+            IntStream.range(0, size).parallel().forEach(i -> {
+                int[] found = new int[2]; // a second address is all it takes to know the row is ambiguous
+                try {
+                    String query = normalize(batch.get(i));
+                    int matches = registry.findAddressIds(query, found);
+                    ids[i] = matches == 0 ? -1 : found[0];
+                    if (matches == 0) {
+                        quality[i] = 0;
+                    } else if (matches > 1) {
+                        quality[i] = 1;
+                    } else {
+                        quality[i] = hasWord(query, registry.getAddress(found[0]).getHouseNumber()) ? 3 : 2;
+                    }
+                } catch (RuntimeException e) { // one bad row shouldn't stop the rest of the file
+                    ids[i] = -1;
+                    quality[i] = 0;
+                }
+            });
+            for (int i = 0; i < size; i++) {
+                out.write(batch.get(i));
+                if (ids[i] == -1) {
+                    out.write(",,,,");
+                } else {
+                    int point = registry.getPointOfAddress(ids[i]);
+                    out.write("," + registry.getGraphNode(ids[i]) + ",");
+                    if (point != -1) { // back to lat,lon like the FileLoader reads them
+                        out.write((0 - registry.getPointY(point)) + "," + registry.getPointX(point) / 0.56);
+                    } else {
+                        out.write(",");
+                    }
+                }
+                out.write("," + matchQuality[quality[i]] + '\n');
+            }
+            count += size;
+            batch.clear();
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * The address of a row as a query: the fields joined by spaces, without quotes and punctuation, and in upper
+     * case with single spaces
+     */
+    static String normalize(String row) {
+        StringBuilder query = new StringBuilder(row.length());
+        boolean space = true; // so leading separators are dropped
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (Character.isWhitespace(c) || c == ',' || c == ';' || c == '"' || c == '.') {
+                if (!space) {
+                    query.append(' ');
+                    space = true;
+                }
+            } else {
+                query.append(Character.toUpperCase(c));
+                space = false;
+            }
+        }
+        int length = query.length();
+        return length > 0 && query.charAt(length - 1) == ' ' ? query.substring(0, length - 1) : query.toString();
+    }
+
+    private static boolean hasWord(String query, String word) {
+        for (String queryWord : query.split(" ")) {
+            if (queryWord.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double[] trim(double[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        double[] trimmed = new double[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    /**
+     * Quotes a CSV field if it has to be
+     */
+    static String quote(String field) {
+        if (field.indexOf(',') == -1 && field.indexOf('"') == -1 && field.indexOf('\n') == -1) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * @param args the mode, the snapshot of the map, the CSV to read and the CSV to write, and for forward
+     *             "header" if the CSV has one
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException, XMLStreamException {
+        boolean isReverse = args.length == 4 && args[0].equals("reverse");
+        boolean isForward = (args.length == 4 || args.length == 5 && args[4].equals("header"))
+                && args[0].equals("forward");
+        if (!isReverse && !isForward) {
+            System.out.println("Usage: reverse <snapshot.obj> <in.csv> <out.csv>");
+            System.out.println("       forward <snapshot.obj> <in.csv> <out.csv> [header]");
+            return;
+        }
+        BulkGeocoder geocoder = new BulkGeocoder(FileLoader.load(args[1]).getAddressRegistry());
+        long start = System.nanoTime(), count;
+        try (BufferedReader in = Files.newBufferedReader(Path.of(args[2]), StandardCharsets.UTF_8);
+                BufferedWriter out = Files.newBufferedWriter(Path.of(args[3]), StandardCharsets.UTF_8)) {
+            count = isReverse ? geocoder.reverse(in, out) : geocoder.forward(in, out, args.length == 5);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Geocoded " + count + " rows in " + Math.round(seconds * 10) / 10.0 + " seconds, "
+                + Math.round(count / Math.max(seconds, 1e-9)) + " rows per second");
+    }
+}
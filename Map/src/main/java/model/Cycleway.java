@@ -1,8 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
-
 import java.util.List;
 
 /**
@@ -16,6 +13,7 @@ public class Cycleway extends Road {
      * The zoom level of the cycleway
      */
     protected static final double zoomLevel = 0.2;
+    private static final SerializableColor color = new SerializableColor(75 / 255.0, 89 / 255.0, 110 / 255.0);
 
     /**
      * Constructs a Cycleway with the given nodes.
@@ -27,14 +25,19 @@ public class Cycleway extends Road {
     }
 
     /**
-     * Draws the Cycleway on the GraphicsContext using the specified stroke color.
+     * Draws the Cycleway with the MapRenderer using the specified stroke color.
      *
-     * @param gc The GraphicsContext to draw on.
+     * @param renderer The MapRenderer to draw with.
      */
     @Override
-    public void draw(GraphicsContext gc) {
-        gc.setStroke(Color.rgb(75, 89, 110, 1.0));
-        super.draw(gc);
+    public void draw(MapRenderer renderer, boolean darkmode, Decimator decimator) {
+        renderer.setStroke(color);
+        super.draw(renderer, darkmode, decimator);
+    }
+
+    @Override
+    public SerializableColor getColor() {
+        return color;
     }
 
     /**
@@ -2,8 +2,11 @@ package model.DataTypes;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -19,6 +22,7 @@ public class DPHT2DTree implements Serializable{
     
     private static final Comparator<Node> xWayComp = Comparator.comparingDouble((Node a) -> a.x);
     private static final Comparator<Node> yWayComp = Comparator.comparingDouble((Node a) -> a.y);
+    private static final int bulkQueriesPerTask = 4096; // below this many queries a bulk task stops splitting and just runs them
     
     /**
      * The internal Node class, which represents a binary tree node in that it has two children and a parent, any of whom may be null. 
@@ -164,6 +168,115 @@ public class DPHT2DTree implements Serializable{
     }
     
 
+    /**
+     * Bulk version of getClosestNodeID, running on the common ForkJoin pool. 
+     * @param xs the x-coordinates of the query points 
+     * @param ys the y-coordinates of the query points, same length as xs 
+     * @return an array where index i holds the ID of the point nearest to (xs[i], ys[i]) 
+     */
+    public int[] getClosestNodeIDs(double[] xs, double[] ys) {
+        return getClosestNodeIDs(xs, ys, ForkJoinPool.commonPool()); 
+    }
+
+    /**
+     * Bulk version of getClosestNodeID. The queries are first put into Z-order(morton order) so that queries that are 
+     * near each other in the plane are also near each other in the order we run them, meaning consecutive searches walk 
+     * mostly the same part of the tree and keep it in cache. The ordered queries are then split into chunks that run in 
+     * parallel on the given pool. Since a search only reads the tree, the searches don't need any synchronization, and every 
+     * result is written to the index of its query, so the output is the same as calling getClosestNodeID in a loop. 
+     * @param xs the x-coordinates of the query points 
+     * @param ys the y-coordinates of the query points, same length as xs 
+     * @param pool the pool to run the searches on 
+     * @return an array where index i holds the ID of the point nearest to (xs[i], ys[i]) 
+     */
+    public int[] getClosestNodeIDs(double[] xs, double[] ys, ForkJoinPool pool) {
+        if(xs.length != ys.length) { throw new IllegalArgumentException("Got " + xs.length + " x-coordinates but " + ys.length + " y-coordinates"); }
+        int[] result = new int[xs.length]; 
+        if(xs.length == 0) { return result; }
+
+        int[] order = spatialOrder(xs, ys); 
+        pool.invoke(new BulkClosestTask(xs, ys, order, result, 0, order.length)); 
+        return result; 
+    }
+
+    /**
+     * Sorts the indices of the given points along a Z-order curve. Each coordinate is scaled to 16 bits within the bounding box of 
+     * the points, and the bits are interleaved to a 32 bit morton code. The code goes in the upper bits of a long and the index in the 
+     * lower 31, so sorting the longs sorts the indices by code without any boxing. 
+     * @param xs the x-coordinates of the points 
+     * @param ys the y-coordinates of the points 
+     * @return the indices of the points in Z-order 
+     */
+    private static int[] spatialOrder(double[] xs, double[] ys) {
+        double minX = xs[0], maxX = xs[0], minY = ys[0], maxY = ys[0]; 
+        for(int i = 1; i < xs.length; i++) {
+            if(xs[i] < minX) { minX = xs[i]; }
+            if(xs[i] > maxX) { maxX = xs[i]; }
+            if(ys[i] < minY) { minY = ys[i]; }
+            if(ys[i] > maxY) { maxY = ys[i]; }
+        }
+        double xScale = maxX > minX ? 0xFFFF / (maxX - minX) : 0; 
+        double yScale = maxY > minY ? 0xFFFF / (maxY - minY) : 0; 
+
+        long[] keys = new long[xs.length]; 
+        for(int i = 0; i < xs.length; i++) {
+            long morton = spreadBits((int) ((xs[i] - minX) * xScale)) | (spreadBits((int) ((ys[i] - minY) * yScale)) << 1); 
+            keys[i] = (morton << 31) | i; 
+        }
+        Arrays.parallelSort(keys); 
+
+        int[] order = new int[keys.length]; 
+        for(int i = 0; i < keys.length; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE); 
+        }
+        return order; 
+    }
+
+    /**
+     * Spreads the lower 16 bits of the given value out to every other bit, so that two of them can be interleaved. 
+     * @param val the value to spread, only the lower 16 bits are used 
+     * @return the spread bits 
+     */
+    private static long spreadBits(int val) {
+        long bits = val & 0xFFFF; 
+        bits = (bits | (bits << 8)) & 0x00FF00FFL; 
+        bits = (bits | (bits << 4)) & 0x0F0F0F0FL; 
+        bits = (bits | (bits << 2)) & 0x33333333L; 
+        bits = (bits | (bits << 1)) & 0x55555555L; 
+        return bits; 
+    }
+
+    /**
+     * The task that runs a range of the spatially ordered queries, splitting itself in half untill the range is small enough. 
+     */
+    private class BulkClosestTask extends RecursiveAction {
+        private final double[] xs, ys; 
+        private final int[] order, result; 
+        private final int from, to; 
+
+        BulkClosestTask(double[] xs, double[] ys, int[] order, int[] result, int from, int to) {
+            this.xs = xs; 
+            this.ys = ys; 
+            this.order = order; 
+            this.result = result; 
+            this.from = from; 
+            this.to = to; 
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= bulkQueriesPerTask) {
+                for(int k = from; k < to; k++) {
+                    int i = order[k]; 
+                    result[i] = getClosestNodeID(xs[i], ys[i]); 
+                }
+                return; 
+            }
+            int mid = (from + to) >>> 1; 
+            invokeAll(new BulkClosestTask(xs, ys, order, result, from, mid), new BulkClosestTask(xs, ys, order, result, mid, to)); 
+        }
+    }
+
     /**
      * A utility function to perform the search, by allowing us to just pass everything. 
      * @param x the x-coordinate of the point we're trying to find a nearest neighbour to 
@@ -0,0 +1,241 @@
+package model.DataTypes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A set of words stored as a minimal automaton, a directed acyclic word graph, where words with the same ending share
+ * the states of it, so "SØNDERVEJ" and "NØRREVEJ" share the states of "VEJ" the way a trie only shares beginnings.
+ * Every word has an ordinal, its index in the sorted words, which is found while following the word through the
+ * graph, so the ordinal can index arrays of whatever the words stand for.
+ * <P>
+ * The graph is read straight from a ByteBuffer, which can be a memory mapped part of a file, so using it doesn't
+ * need it loaded onto the heap first. The layout is a header of the amount of states and transitions, then for every
+ * state an int of the words from it (shifted one left, with the lowest bit set if a word ends there) and where its
+ * transitions start, and for every transition its target, the words before it from the same state and its letter.
+ * The root is the last state.
+ */
+public class Dawg {
+    private final ByteBuffer buffer;
+    private final int states, transitions;
+    private final int info, first, target, before, label; // where the arrays start in the buffer
+
+    /**
+     * Reads the graph at the position of the buffer, which is moved past it. The buffer is used as it is, not copied.
+     */
+    public Dawg(ByteBuffer buffer) {
+        states = buffer.getInt(buffer.position());
+        transitions = buffer.getInt(buffer.position() + 4);
+        int length = 8 + 4 * states + 4 * (states + 1) + 8 * transitions + 2 * transitions;
+        ByteBuffer graph = buffer.duplicate();
+        graph.position(buffer.position()).limit(buffer.position() + length);
+        this.buffer = graph.slice();
+        buffer.position(buffer.position() + length);
+        info = 8;
+        first = info + 4 * states;
+        target = first + 4 * (states + 1);
+        before = target + 4 * transitions;
+        label = before + 4 * transitions;
+    }
+
+    /**
+     * @param sortedWords the words, sorted and without duplicates
+     * @return the graph of the words, on the heap
+     */
+    public static Dawg of(List<String> sortedWords) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(sortedWords, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // there is no IO when writing to memory
+        }
+        return new Dawg(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * @return the amount of words
+     */
+    public int size() {
+        return wordsFrom(states - 1);
+    }
+
+    /**
+     * @return the amount of states, which is what minimizing makes fewer
+     */
+    public int getStates() {
+        return states;
+    }
+
+    /**
+     * @return the bytes the graph takes up
+     */
+    public int byteSize() {
+        return buffer.limit();
+    }
+
+    /**
+     * @return the index of the word in the sorted words, or -1 if it isn't one of them
+     */
+    public int ordinal(CharSequence word) {
+        int state = states - 1, ordinal = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int t = findTransition(state, word.charAt(i));
+            if (t == -1) {
+                return -1;
+            }
+            ordinal += buffer.getInt(before + 4 * t);
+            state = buffer.getInt(target + 4 * t);
+        }
+        return isFinal(state) ? ordinal : -1;
+    }
+
+    private int wordsFrom(int state) {
+        return buffer.getInt(info + 4 * state) >>> 1;
+    }
+
+    private boolean isFinal(int state) {
+        return (buffer.getInt(info + 4 * state) & 1) == 1;
+    }
+
+    /**
+     * The transitions of a state are sorted by letter, so the letter is binary searched
+     */
+    private int findTransition(int state, char c) {
+        int lo = buffer.getInt(first + 4 * state), hi = buffer.getInt(first + 4 * (state + 1)) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char midLabel = buffer.getChar(label + 2 * mid);
+            if (midLabel < c) {
+                lo = mid + 1;
+            } else if (midLabel > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A state while building, before it is known whether it is the same as one already built
+     */
+    private static class State {
+        private boolean isFinal;
+        private final StringBuilder labels = new StringBuilder();
+        private final IntArrayList targets = new IntArrayList(); // the ids of the states, once they are registered
+
+        private String signature() {
+            StringBuilder signature = new StringBuilder().append(isFinal ? '1' : '0').append(labels).append(':');
+            for (int i = 0; i < targets.size(); i++) {
+                signature.append(targets.get(i)).append(',');
+            }
+            return signature.toString();
+        }
+    }
+
+    /**
+     * Builds the minimal graph of the words and writes it. The words come sorted, so when a word is added every state
+     * of the word before it past their common beginning is done, and is either the same as a state already built,
+     * which it is replaced by, or a new one. That way there is only ever one word of states that aren't done.
+     *
+     * @param sortedWords the words, sorted and without duplicates
+     */
+    public static void write(List<String> sortedWords, DataOutputStream out) throws IOException {
+        HashMap<String, Integer> register = new HashMap<>(); // the id of every state built, by what it is
+        IntArrayList words = new IntArrayList(), isFinal = new IntArrayList(), first = new IntArrayList();
+        IntArrayList targets = new IntArrayList(), before = new IntArrayList();
+        StringBuilder labels = new StringBuilder();
+        List<State> path = new ArrayList<>();
+        path.add(new State());
+        String previous = "";
+        for (String word : sortedWords) {
+            int common = 0;
+            while (common < previous.length() && common < word.length()
+                    && previous.charAt(common) == word.charAt(common)) {
+                common++;
+            }
+            registerPath(path, common, register, words, isFinal, first, targets, before, labels);
+            for (int i = common; i < word.length(); i++) {
+                State state = new State();
+                State parent = path.get(path.size() - 1);
+                parent.labels.append(word.charAt(i)); // its target is registered once the state is done
+                path.add(state);
+            }
+            path.get(path.size() - 1).isFinal = true;
+            previous = word;
+        }
+        registerPath(path, 0, register, words, isFinal, first, targets, before, labels);
+        register(path.get(0), register, words, isFinal, first, targets, before, labels, true);
+
+        int stateCount = words.size();
+        out.writeInt(stateCount);
+        out.writeInt(targets.size());
+        for (int i = 0; i < stateCount; i++) {
+            out.writeInt(words.get(i) << 1 | isFinal.get(i));
+        }
+        for (int i = 0; i < stateCount; i++) {
+            out.writeInt(first.get(i));
+        }
+        out.writeInt(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            out.writeInt(targets.get(i));
+        }
+        for (int i = 0; i < before.size(); i++) {
+            out.writeInt(before.get(i));
+        }
+        for (int i = 0; i < labels.length(); i++) {
+            out.writeChar(labels.charAt(i));
+        }
+        out.flush();
+    }
+
+    /**
+     * Registers the states of the path deeper than the given depth, deepest first, and drops them from the path
+     */
+    private static void registerPath(List<State> path, int depth, HashMap<String, Integer> register,
+            IntArrayList words, IntArrayList isFinal, IntArrayList first, IntArrayList targets, IntArrayList before,
+            StringBuilder labels) {
+        while (path.size() > depth + 1) {
+            State state = path.remove(path.size() - 1);
+            State parent = path.get(path.size() - 1);
+            parent.targets.add(register(state, register, words, isFinal, first, targets, before, labels, false));
+        }
+    }
+
+    /**
+     * Gives the id of the state, which is the id of the same state if one is already built
+     *
+     * @param isRoot the root is never the same as another state, nothing goes to it
+     */
+    private static int register(State state, HashMap<String, Integer> register, IntArrayList words,
+            IntArrayList isFinal, IntArrayList first, IntArrayList targets, IntArrayList before, StringBuilder labels,
+            boolean isRoot) {
+        String signature = state.signature();
+        Integer id = isRoot ? null : register.get(signature);
+        if (id != null) {
+            return id;
+        }
+        id = words.size();
+        int count = state.isFinal ? 1 : 0;
+        first.add(targets.size());
+        for (int i = 0; i < state.targets.size(); i++) {
+            int t = state.targets.get(i);
+            targets.add(t);
+            before.add(count); // the words that end here or go through the letters before
+            labels.append(state.labels.charAt(i));
+            count += words.get(t);
+        }
+        words.add(count);
+        isFinal.add(state.isFinal ? 1 : 0);
+        if (!isRoot) {
+            register.put(signature, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,210 @@
+package model.DataTypes;
+
+import java.io.Serializable;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A uniform grid over 2 dimensional points with integer ID's, for nearest neighbour and radius queries.
+ * The cell size is picked from the density of the points, so that a cell on average holds about pointsPerCell points.
+ * The cells are stored CSR style: the points are sorted by cell into one array, and cellStart[c] to cellStart[c+1] is the
+ * range of cell c in that array. This means the whole structure is 3 arrays of doubles and ints, instead of a node per point
+ * like in DPHT2DTree.
+ * A query looks at the cell the point is in, and then at rings of cells around it, until no closer point can exist in the
+ * next ring. With evenly spread points that's a constant amount of cells.
+ * Like DPHT2DTree it takes a DoublePointHashTable, since that is what the Graph stores its nodes in.
+ */
+public class DoublePointGrid implements Serializable {
+    private static final double pointsPerCell = 2;
+    private final double minX, minY;
+    private final double cellSize;
+    private final int cols, rows;
+    private final int[] cellStart; // the points of cell c are at index cellStart[c] up to cellStart[c+1]
+    private final int[] ids; // the ids of the points, sorted by cell
+    private final double[] xs, ys; // the coordinates of the points, in the same order as ids
+
+    /**
+     * Constructs the grid from the given table, in linear time.
+     * First we count the amount of points per cell, then turn the counts into offsets and lastly place every point at its offset.
+     * @param table the table to construct the grid from, the ID's of the grid are the ID's of the table
+     */
+    public DoublePointGrid(DoublePointHashTable table) {
+        this(coordinates(table, true), coordinates(table, false));
+    }
+
+    /**
+     * Constructs the grid from the given points, the ID of a point being its index. Unlike a DoublePointHashTable the
+     * points don't have to be distinct, like the addresses of the flats in a building.
+     * @param pointXs the x-coordinates of the points
+     * @param pointYs the y-coordinates of the points, same length as pointXs
+     */
+    public DoublePointGrid(double[] pointXs, double[] pointYs) {
+        if(pointXs.length != pointYs.length) { throw new IllegalArgumentException("Got " + pointXs.length + " x-coordinates but " + pointYs.length + " y-coordinates"); }
+        int size = pointXs.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < size; i++) {
+            double x = pointXs[i], y = pointYs[i];
+            if(x < minX) { minX = x; }
+            if(x > maxX) { maxX = x; }
+            if(y < minY) { minY = y; }
+            if(y > maxY) { maxY = y; }
+        }
+        if(size == 0) { minX = minY = maxX = maxY = 0; }
+        this.minX = minX;
+        this.minY = minY;
+
+        // aim for pointsPerCell points in every cell. If the points lie on a line the area is 0, so we also make sure that the
+        // longest side isn't cut into more cells than needed
+        double width = maxX - minX, height = maxY - minY;
+        double amtCells = Math.max(1, size / pointsPerCell);
+        double cellSize = Math.max(Math.sqrt(width * height / amtCells), Math.max(width, height) / amtCells);
+        if(cellSize == 0) { cellSize = 1; } // every point is the same point
+        // points on a diagonal line would still give a huge amount of mostly empty cells, so we cap the amount of cells
+        while(((long) (width / cellSize) + 1) * ((long) (height / cellSize) + 1) > 2 * amtCells + 1) { cellSize *= 2; }
+        this.cellSize = cellSize;
+        cols = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        // counting sort the points into the cells
+        cellStart = new int[cols * rows + 1];
+        int[] cellOf = new int[size];
+        for(int i = 0; i < size; i++) {
+            cellOf[i] = cell(col(pointXs[i]), row(pointYs[i]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for(int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        ids = new int[size];
+        xs = new double[size];
+        ys = new double[size];
+        for(int i = 0; i < size; i++) {
+            int index = next[cellOf[i]]++;
+            ids[index] = i;
+            xs[index] = pointXs[i];
+            ys[index] = pointYs[i];
+        }
+    }
+
+    private static double[] coordinates(DoublePointHashTable table, boolean x) {
+        double[] coordinates = new double[table.size()];
+        for(int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = x ? table.getXFromID(i) : table.getYFromID(i);
+        }
+        return coordinates;
+    }
+
+    /**
+     * @return the column of the given x-coordinate, clamped to the grid
+     */
+    private int col(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    /**
+     * @return the row of the given y-coordinate, clamped to the grid
+     */
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    private int cell(int col, int row) {
+        return row * cols + col;
+    }
+
+    public int size() { return ids.length; }
+
+    /**
+     * A nearest neighbour query. Like DPHT2DTree.getClosestNodeID it gives a nearest node, but when several are equally
+     * close the two may not pick the same one.
+     * We scan the rings of cells around the cell of the point, ring r being the cells exactly r cells away. Any point outside of
+     * the first r rings is at least r*cellSize away, so once the best distance is at most that we are done.
+     * If two points are equally close, the lowest ID is returned.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return the ID of the nearest point, or -1 if the grid is empty
+     */
+    public int getClosestNodeID(double x, double y) {
+        if(ids.length == 0) { return -1; }
+        int col = col(x), row = row(y);
+        int maxRing = Math.max(Math.max(col, cols - 1 - col), Math.max(row, rows - 1 - row));
+
+        double bestDist = Double.POSITIVE_INFINITY;
+        int bestID = -1;
+        for(int r = 0; r <= maxRing; r++) {
+            int fromRow = Math.max(0, row - r), toRow = Math.min(rows - 1, row + r);
+            int fromCol = Math.max(0, col - r), toCol = Math.min(cols - 1, col + r);
+            for(int cr = fromRow; cr <= toRow; cr++) {
+                boolean edgeRow = cr == row - r || cr == row + r;
+                // on the top and bottom row of the ring we take every column, otherwise only the leftmost and rightmost
+                int step = edgeRow ? 1 : 2 * r;
+                for(int cc = edgeRow ? fromCol : col - r; cc <= toCol; cc += step) {
+                    if(cc < 0) { continue; }
+                    int c = cell(cc, cr);
+                    for(int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        double dist = (xs[i] - x) * (xs[i] - x) + (ys[i] - y) * (ys[i] - y);
+                        if(dist < bestDist || (dist == bestDist && ids[i] < bestID)) { bestDist = dist; bestID = ids[i]; }
+                    }
+                }
+            }
+            double ringDist = r * cellSize;
+            if(bestDist <= ringDist * ringDist) { break; }
+        }
+        return bestID;
+    }
+
+    /**
+     * Bulk version of getClosestNodeID, which runs the queries in parallel. A query only reads the grid, and every result
+     * is written to the index of its query, so the output is the same as calling getClosestNodeID in a loop.
+     * @param pointXs the x-coordinates of the query points
+     * @param pointYs the y-coordinates of the query points, same length as pointXs
+     * @return an array where index i holds the ID of the point nearest to (pointXs[i], pointYs[i])
+     */
+    public int[] getClosestNodeIDs(double[] pointXs, double[] pointYs) {
+        if(pointXs.length != pointYs.length) { throw new IllegalArgumentException("Got " + pointXs.length + " x-coordinates but " + pointYs.length + " y-coordinates"); }
+        int[] result = new int[pointXs.length];
+        IntStream.range(0, result.length).parallel().forEach(i -> result[i] = getClosestNodeID(pointXs[i], pointYs[i]));
+        return result;
+    }
+
+    /**
+     * Gives every point within the given radius of the given point to the consumer, in no particular order.
+     * Only the cells overlapping the square around the circle are scanned.
+     * @param x the x-coordinate of the center
+     * @param y the y-coordinate of the center
+     * @param radius the radius, inclusive
+     * @param consumer is given the ID of every point in the circle
+     */
+    public void forEachWithin(double x, double y, double radius, IntConsumer consumer) {
+        if(ids.length == 0 || radius < 0) { return; }
+        if(x + radius < minX || y + radius < minY) { return; }
+        if(x - radius > minX + cols * cellSize || y - radius > minY + rows * cellSize) { return; }
+        int fromCol = col(x - radius), toCol = col(x + radius);
+        int fromRow = row(y - radius), toRow = row(y + radius);
+        double radiusSquared = radius * radius;
+        for(int cr = fromRow; cr <= toRow; cr++) {
+            for(int c = cell(fromCol, cr); c <= cell(toCol, cr); c++) {
+                for(int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    if((xs[i] - x) * (xs[i] - x) + (ys[i] - y) * (ys[i] - y) <= radiusSquared) { consumer.accept(ids[i]); }
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as forEachWithin, but collects the ID's into an array.
+     * @return the ID's of all the points within the radius of the point
+     */
+    public int[] getNodeIDsWithin(double x, double y, double radius) {
+        IntArrayList result = new IntArrayList();
+        forEachWithin(x, y, radius, result::add);
+        int[] array = new int[result.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = result.get(i);
+        }
+        return array;
+    }
+}
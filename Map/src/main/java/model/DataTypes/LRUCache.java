@@ -0,0 +1,97 @@
+package model.DataTypes;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache bounded by the total weight of its values rather than their amount, like the amount of bytes an image takes up.
+ * When a put would bring the total weight over the capacity, the least recently used values are evicted until it fits.
+ * Backed by a LinkedHashMap in access order, so both get and put are constant time.
+ * All methods are synchronized, so the cache can be shared between threads.
+ */
+public class LRUCache<K, V> {
+    private final LinkedHashMap<K, V> map;
+    private final LinkedHashMap<K, Long> weights;
+    private final long capacity;
+    private long weight;
+    private long hits, misses;
+
+    /**
+     * @param capacity the maximum total weight of the values in the cache
+     */
+    public LRUCache(long capacity) {
+        if(capacity < 0) { throw new IllegalArgumentException("Capacity cannot be negative, got " + capacity); }
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+        this.weights = new LinkedHashMap<>();
+        this.weight = 0;
+    }
+
+    /**
+     * Gets the value of the key, and marks it as the most recently used.
+     * @param key the key to look up
+     * @return the value, or null if it isn't in the cache
+     */
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if(value == null) { misses++; } else { hits++; }
+        return value;
+    }
+
+    /**
+     * Puts the value in the cache as the most recently used, replacing any value already there for the key.
+     * A value heavier than the whole capacity is not cached at all.
+     * @param key the key of the value
+     * @param value the value, not null
+     * @param valueWeight the weight of the value, like its size in bytes
+     */
+    public synchronized void put(K key, V value, long valueWeight) {
+        remove(key);
+        if(valueWeight > capacity) { return; }
+        map.put(key, value);
+        weights.put(key, valueWeight);
+        weight += valueWeight;
+        Iterator<Map.Entry<K, V>> eldest = map.entrySet().iterator();
+        while(weight > capacity) {
+            K evicted = eldest.next().getKey();
+            eldest.remove();
+            weight -= weights.remove(evicted);
+        }
+    }
+
+    /**
+     * @param key the key to remove
+     * @return the value that was removed, or null if there was none
+     */
+    public synchronized V remove(K key) {
+        V value = map.remove(key);
+        if(value != null) { weight -= weights.remove(key); }
+        return value;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weights.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() { return map.size(); }
+
+    /**
+     * @return the total weight of the values currently in the cache
+     */
+    public synchronized long getWeight() { return weight; }
+
+    public long getCapacity() { return capacity; }
+
+    /**
+     * @return the amount of gets that found a value, since the cache was created
+     */
+    public synchronized long getHits() { return hits; }
+
+    /**
+     * @return the amount of gets that found nothing, since the cache was created
+     */
+    public synchronized long getMisses() { return misses; }
+}
@@ -10,7 +10,6 @@ public class DebugConsole {
     private TextArea textArea;
 
     private DebugConsole() {
-        textArea = new TextArea();
     }
 
     public static DebugConsole getInstance() {
@@ -33,6 +32,9 @@ public class DebugConsole {
     }
 
     public TextArea getTextArea() {
+        if (textArea == null) { // made when it's needed, so logging works without the FX toolkit
+            textArea = new TextArea();
+        }
         return textArea;
     }
 
@@ -0,0 +1,128 @@
+package model;
+
+/**
+ * Drops the points of a line or polygon that are too close to the previous point to make a difference on screen,
+ * so zoomed out, where a road has dozens of points in the same pixel, the renderer only gets a few of them.
+ * The points that are kept go through a scratch buffer that is reused for every object, so decimating doesn't
+ * allocate anything once the buffer is as large as the largest object.
+ * An instance isn't thread safe, every thread drawing needs its own.
+ */
+public class Decimator {
+    public static final double pixelTolerance = 1; // points closer than this many pixels to the last one are dropped
+    private double tolerance; // the pixel tolerance in map units
+    private double[] xs = new double[64], ys = new double[64];
+
+    /**
+     * Sets the scale the next objects are drawn at, which is done once per frame.
+     *
+     * @param scale the pixels per map unit, like {@link MapRenderer#getScale()}
+     */
+    public void setScale(double scale) {
+        tolerance = pixelTolerance / scale;
+    }
+
+    /**
+     * @return the tolerance in map units
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Objects smaller than the tolerance would be drawn as less than a pixel, so they can be skipped altogether.
+     *
+     * @param object the object to check
+     * @return whether the object is large enough to draw
+     */
+    public boolean isVisible(MapObject object) {
+        return object.getSize() >= tolerance;
+    }
+
+    /**
+     * Adds the line to the current path of the renderer, with the points that make a difference at this scale.
+     *
+     * @param renderer    the renderer to draw with
+     * @param coordinates the points of the line, interleaved x and y
+     */
+    public void addLine(MapRenderer renderer, double[] coordinates) {
+        addLine(renderer, coordinates, 0, coordinates.length);
+    }
+
+    /**
+     * Like {@link #addLine(MapRenderer, double[])}, for the line stored in part of the array.
+     *
+     * @param from the index of the first x coordinate
+     * @param to   the index after the last y coordinate
+     */
+    public void addLine(MapRenderer renderer, double[] coordinates, int from, int to) {
+        int n = decimate(coordinates, from, to);
+        if (n < 2) {
+            return;
+        }
+        renderer.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < n; i++) {
+            renderer.lineTo(xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Fills the polygon, with the points that make a difference at this scale.
+     *
+     * @param renderer    the renderer to draw with
+     * @param coordinates the points of the polygon, interleaved x and y
+     */
+    public void fillPolygon(MapRenderer renderer, double[] coordinates) {
+        fillPolygon(renderer, coordinates, 0, coordinates.length);
+    }
+
+    /**
+     * Like {@link #fillPolygon(MapRenderer, double[])}, for the polygon stored in part of the array.
+     *
+     * @param from the index of the first x coordinate
+     * @param to   the index after the last y coordinate
+     */
+    public void fillPolygon(MapRenderer renderer, double[] coordinates, int from, int to) {
+        int n = decimate(coordinates, from, to);
+        if (n < 3) {
+            return;
+        }
+        renderer.fillPolygon(xs, ys, n);
+    }
+
+    /**
+     * Copies the points that are at least the tolerance from the last point kept into the scratch buffer. The first
+     * and last point are always kept, so lines still connect where they should.
+     *
+     * @param coordinates the points, interleaved x and y
+     * @param from        the index of the first x coordinate
+     * @param to          the index after the last y coordinate
+     * @return the amount of points kept
+     */
+    private int decimate(double[] coordinates, int from, int to) {
+        int points = (to - from) / 2;
+        if (points == 0) {
+            return 0;
+        }
+        if (xs.length < points) {
+            xs = new double[Math.max(points, xs.length * 2)];
+            ys = new double[xs.length];
+        }
+        double toleranceSquared = tolerance * tolerance;
+        double lastX = xs[0] = coordinates[from], lastY = ys[0] = coordinates[from + 1];
+        int n = 1;
+        for (int i = from + 2; i < to - 2; i += 2) {
+            double dx = coordinates[i] - lastX, dy = coordinates[i + 1] - lastY;
+            if (dx * dx + dy * dy >= toleranceSquared) {
+                lastX = xs[n] = coordinates[i];
+                lastY = ys[n] = coordinates[i + 1];
+                n++;
+            }
+        }
+        if (points > 1) {
+            xs[n] = coordinates[to - 2];
+            ys[n] = coordinates[to - 1];
+            n++;
+        }
+        return n;
+    }
+}
@@ -4,21 +4,43 @@ import javafx.scene.control.Label;
 
 
 public class FPSCounter {
+    private static final int window = 30; // the amount of frames the averages are over
+    private static final long idleNanos = 250_000_000L; // a longer gap between two frames means nothing was happening in between
     private static FPSCounter counter;
-    private double fpsToShow;
-    private double[] fpsStamps;
-    private double oldTime;
-    private double printTime;
-    private int i;
-    private Label fpsViewer;
+    private Window frameIntervals, renderTimes, inputLatencies;
+    private long lastPulse;
+    private long lastShown;
+    private Label fpsViewer, latencyViewer;
+
     /**
-     * Singleton that keeps track of frames per second when panning and zooming
+     * The last few measurements of something, in nanoseconds
+     */
+    private static class Window {
+        private final long[] values = new long[window];
+        private int count, next;
+
+        void add(long value) {
+            values[next] = value;
+            next = (next + 1) % window;
+            count = Math.min(count + 1, window);
+        }
+
+        double meanMillis() {
+            if (count == 0) { return 0; }
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += values[i];
+            }
+            return total / (double) count / 1e6;
+        }
+    }
+
+    /**
+     * Singleton that keeps track of frames per second when panning and zooming, how long the frames take to draw
+     * and how long it takes from input until the map shows it
      */
     private FPSCounter() {
-        fpsToShow = 0;
-        fpsStamps = new double[30];
-        oldTime = System.currentTimeMillis();
-        fpsViewer = new Label();
+        reset();
     }
 
     /**
@@ -32,30 +54,74 @@ public class FPSCounter {
     }
 
     /**
-     * Updates the fps counter and displays it on a label in UI
-     * @param curTime Current time in milliseconds
+     * Forgets all measurements so far
      */
-    public void updateFPS (double curTime) {
-        double delta = curTime - oldTime;
-        if (delta > 4) {
-            double fps_stamp = Math.round(1 / (delta / 1000));
-            fpsStamps[i] = (int) fps_stamp;
-            if (i == 29) { i = 0; } else { i++; }
-            if ((curTime - printTime) > 1000) {
-                double total = 0;
-                int count = 0;
-                for (double stamp : fpsStamps) {
-                    if (stamp < 100) {
-                        total += stamp;
-                        count++;
-                    }
-                }
-                fpsToShow = Math.round(total / count);
-                fpsViewer.setText(fpsToShow + "");
-                printTime = curTime;
-            }
+    public void reset() {
+        frameIntervals = new Window();
+        renderTimes = new Window();
+        inputLatencies = new Window();
+        lastPulse = -1;
+    }
+
+    /**
+     * Records a frame that was drawn. The fps comes from the time between pulses that drew something, so it only
+     * counts while the map is changing, idle time between two interactions isn't a slow frame.
+     * @param pulseNanos the time of the pulse the frame was drawn on, in System.nanoTime
+     * @param renderNanos how long drawing the frame took
+     */
+    public void recordFrame(long pulseNanos, long renderNanos) {
+        if (lastPulse >= 0 && pulseNanos - lastPulse < idleNanos) {
+            frameIntervals.add(pulseNanos - lastPulse);
+        }
+        lastPulse = pulseNanos;
+        renderTimes.add(renderNanos);
+        show(pulseNanos);
+    }
+
+    /**
+     * Records the time from an input event, like a drag or a scroll, until the frame showing it was drawn
+     * @param latencyNanos the latency in nanoseconds
+     */
+    public void recordInputLatency(long latencyNanos) {
+        inputLatencies.add(latencyNanos);
+    }
+
+    /**
+     * @return the frames per second over the last frames, 0 if there weren't any
+     */
+    public double getFPS() {
+        double interval = frameIntervals.meanMillis();
+        return interval == 0 ? 0 : 1000 / interval;
+    }
+
+    /**
+     * @return the average time it took to draw a frame, in milliseconds
+     */
+    public double getFrameTimeMillis() {
+        return renderTimes.meanMillis();
+    }
+
+    /**
+     * @return the average time from input to the frame showing it, in milliseconds
+     */
+    public double getInputLatencyMillis() {
+        return inputLatencies.meanMillis();
+    }
+
+    /**
+     * Updates the labels, at most once a second so they can be read
+     */
+    private void show(long now) {
+        if (now - lastShown < 1_000_000_000L) {
+            return;
+        }
+        lastShown = now;
+        if (fpsViewer != null) {
+            fpsViewer.setText(Math.round(getFPS()) + " (" + Math.round(getFrameTimeMillis()) + " ms)");
+        }
+        if (latencyViewer != null) {
+            latencyViewer.setText(Math.round(getInputLatencyMillis()) + " ms");
         }
-        oldTime = curTime;
     }
 
     /**
@@ -65,4 +131,12 @@ public class FPSCounter {
     public void setFPSViewer(Label label) {
         fpsViewer = label;
     }
+
+    /**
+     * Choosing which label should display the input latency
+     * @param label Label for displaying the input latency
+     */
+    public void setLatencyViewer(Label label) {
+        latencyViewer = label;
+    }
 }
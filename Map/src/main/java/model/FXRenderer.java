@@ -0,0 +1,107 @@
+package model;
+
+import javafx.geometry.Point2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.transform.NonInvertibleTransformException;
+
+/**
+ * A MapRenderer drawing on a JavaFX canvas through its GraphicsContext, with whatever transform the GraphicsContext has.
+ * Like anything else touching a canvas, it may only be used on the FX thread.
+ */
+public class FXRenderer implements MapRenderer {
+    private final GraphicsContext gc;
+
+    /**
+     * @param gc the graphics context to draw with
+     */
+    public FXRenderer(GraphicsContext gc) {
+        if (gc == null)
+            throw new NullPointerException("Cannot be null");
+        this.gc = gc;
+    }
+
+    public GraphicsContext getGraphicsContext() {
+        return gc;
+    }
+
+    @Override
+    public void setStroke(SerializableColor color) {
+        gc.setStroke(color.getFXColor());
+    }
+
+    @Override
+    public void setFill(SerializableColor color) {
+        gc.setFill(color.getFXColor());
+    }
+
+    @Override
+    public void setLineWidth(double lineWidth) {
+        gc.setLineWidth(lineWidth);
+    }
+
+    @Override
+    public double getLineWidth() {
+        return gc.getLineWidth();
+    }
+
+    @Override
+    public void beginPath() {
+        gc.beginPath();
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        gc.moveTo(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        gc.lineTo(x, y);
+    }
+
+    @Override
+    public void stroke() {
+        gc.stroke();
+    }
+
+    @Override
+    public void fillPolygon(double[] xs, double[] ys, int n) {
+        gc.fillPolygon(xs, ys, n);
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        gc.strokeLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        gc.strokeRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(double x, double y, double width, double height) {
+        gc.fillOval(x, y, width, height);
+    }
+
+    @Override
+    public double getScale() {
+        return Math.sqrt(gc.getTransform().determinant());
+    }
+
+    /**
+     * The view is the canvas transformed back to map coordinates.
+     */
+    @Override
+    public SerializableRectangle2D getView() {
+        try {
+            Point2D upperLeft = gc.getTransform().inverseTransform(0, 0);
+            Point2D lowerRight = gc.getTransform().inverseTransform(gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+            return new SerializableRectangle2D(upperLeft.getX(), upperLeft.getY(), lowerRight.getX() - upperLeft.getX(),
+                    lowerRight.getY() - upperLeft.getY());
+        } catch (NonInvertibleTransformException e) {
+            // only happens with a scale of 0
+            throw new IllegalStateException("The transform of the canvas can't be inverted", e);
+        }
+    }
+}
@@ -9,13 +9,21 @@ import model.DataTypes.IntArrayList;
 import model.DataTypes.LongArrayList;
 import model.DataTypes.LongToIntMap;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.zip.ZipInputStream;
 
 public class FileLoader extends ResourceLoader implements Loader, Serializable {
+    // a snapshot ends with where the section of the address registry starts and this, after the section. Snapshots
+    // from before the registry had a section end differently and have to be made again from the .osm file
+    private static final int sectionMagic = 0x41445231;
+    private static final int trailerSize = Long.BYTES + Integer.BYTES;
 
     private final String filename;
     private double minlat, maxlat, minlon, maxlon;
@@ -35,9 +43,14 @@ public class FileLoader extends ResourceLoader implements Loader, Serializable {
     public static FileLoader load(String filePath)
             throws IOException, ClassNotFoundException, XMLStreamException, FactoryConfigurationError {
         if (filePath.endsWith(".obj")) {
+            FileLoader loader;
             try (var in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
-                return (FileLoader) in.readObject();
+                loader = (FileLoader) in.readObject();
+            } catch (InvalidClassException e) {
+                throw outdated(filePath, e);
             }
+            loader.mapSection(filePath);
+            return loader;
         }
         return new FileLoader(filePath);
     }
@@ -46,9 +59,26 @@ public class FileLoader extends ResourceLoader implements Loader, Serializable {
             throws IOException, ClassNotFoundException, XMLStreamException, FactoryConfigurationError {
         FileLoader qwe = new FileLoader();
         if (name.endsWith(".obj")) {
-            try (var in = new ObjectInputStream(new BufferedInputStream(qwe.getResourceStream(name)))) {
-                return (FileLoader) in.readObject();
+            // a resource can't be mapped, so the section is read onto the heap with the rest
+            byte[] snapshot;
+            try (var in = qwe.getResourceStream(name)) {
+                snapshot = in.readAllBytes();
             }
+            if (snapshot.length < trailerSize) {
+                throw outdated(name, null);
+            }
+            long sectionStart = sectionStart(ByteBuffer.wrap(snapshot, snapshot.length - trailerSize, trailerSize),
+                    snapshot.length, name);
+            FileLoader loader;
+            try (var in = new ObjectInputStream(new ByteArrayInputStream(snapshot, 0, (int) sectionStart))) {
+                loader = (FileLoader) in.readObject();
+            } catch (InvalidClassException e) {
+                throw outdated(name, e);
+            }
+            loader.addressRegistry.mapSection(
+                    ByteBuffer.wrap(snapshot, (int) sectionStart, snapshot.length - trailerSize - (int) sectionStart)
+                            .slice());
+            return loader;
         } else {
             throw new IllegalArgumentException("Tried to load a non .obj resource file \"" + name + "\"");
         }
@@ -414,27 +444,79 @@ public class FileLoader extends ResourceLoader implements Loader, Serializable {
         idToNodeIndex = null;
         System.out.println(
                 "GRAPH CONSTRUCTION DONE\nSTARTING ADDRESS CONSTRUCTION w. " + addresses.size() + " addresses ");
+        double[] addressX = new double[addresses.size()];
+        double[] addressY = new double[addresses.size()];
         for (int i = 0; i < addresses.size(); i++) {
-            int graphPoint = graph.getSmallestDistanceNodeID(addressPoints.get(i).getX(), addressPoints.get(i).getY());
-            addresses.get(i).setClosestGraphPoint(graphPoint);
-            addressRegistry.addAddress(addresses.get(i));
+            addressX[i] = addressPoints.get(i).getX();
+            addressY[i] = addressPoints.get(i).getY();
         }
+        // snap every address in one parallel batch, but insert them in file order so the registry comes out the same
+        int[] graphPoints = graph.getSmallestDistanceNodeIDs(addressX, addressY);
+        for (int i = 0; i < addresses.size(); i++) {
+            addresses.get(i).setClosestGraphPoint(graphPoints[i]);
+            addressRegistry.addAddress(addresses.get(i), addressX[i], addressY[i]);
+        }
+        addressRegistry.freeze();
         graph.rmBestDistTree();
         addresses = null;
         System.out.println("ADDRESS CONSTRUCTION DONE, " + objects.size() + " MapObjects created");
     }
 
     /**
-     * Saves the object as a binary file
+     * Saves the object as a binary file. The frozen address registry goes after the serialized object in a section
+     * of its own, which is memory mapped when loading instead of deserialized.
      * 
      * @param filePath the path of the file to witch the .obj should be added
      */
     private void save(String filePath) throws IOException {
-        try (var out = new ObjectOutputStream(new FileOutputStream(filePath))) {
+        try (var file = new FileOutputStream(filePath)) {
+            var out = new ObjectOutputStream(file);
             out.writeObject(this);
+            out.flush();
+            long sectionStart = file.getChannel().position();
+            var section = new DataOutputStream(new BufferedOutputStream(file));
+            addressRegistry.writeSection(section);
+            section.writeLong(sectionStart);
+            section.writeInt(sectionMagic);
+            section.flush();
         }
     }
 
+    /**
+     * Maps the section of the address registry in a snapshot. The mapping outlives the channel, and the pages of it
+     * are only read when a search uses them.
+     */
+    private void mapSection(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < trailerSize) {
+                throw outdated(filePath, null);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(trailerSize);
+            channel.read(trailer, size - trailerSize);
+            trailer.flip();
+            long sectionStart = sectionStart(trailer, size, filePath);
+            addressRegistry.mapSection(
+                    channel.map(FileChannel.MapMode.READ_ONLY, sectionStart, size - trailerSize - sectionStart));
+        }
+    }
+
+    /**
+     * Where the section of the address registry starts, read from the trailer at the end of the snapshot
+     */
+    private static long sectionStart(ByteBuffer trailer, long size, String name) throws IOException {
+        long sectionStart = trailer.getLong();
+        if (trailer.getInt() != sectionMagic || sectionStart < 0 || sectionStart > size - trailerSize) {
+            throw outdated(name, null);
+        }
+        return sectionStart;
+    }
+
+    private static IOException outdated(String name, Exception cause) {
+        return new IOException("The snapshot " + name + " is from an older version of the program, "
+                + "load the .osm file again to make a new one", cause);
+    }
+
     /*
      * private void writeObject(java.io.ObjectOutputStream out) throws IOException {
      * System.out.println("Writing objects to binary");
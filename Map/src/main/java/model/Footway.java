@@ -1,8 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
-
 import java.util.List;
 
 /**
@@ -16,6 +13,7 @@ public class Footway extends Road {
      * The zoom-level for footways
      */
     protected static final double zoomLevel = 0.1;
+    private static final SerializableColor color = new SerializableColor(75 / 255.0, 89 / 255.0, 110 / 255.0);
 
     /**
      * Creates a new Footway object with the given list of nodes.
@@ -30,12 +28,17 @@ public class Footway extends Road {
      * Overrides the draw method to set the stroke color to a specific value for
      * footways.
      *
-     * @param gc the graphics context on which to draw the footway
+     * @param renderer the renderer with which to draw the footway
      */
     @Override
-    public void draw(GraphicsContext gc) {
-        gc.setStroke(Color.rgb(75, 89, 110, 1.0));
-        super.draw(gc);
+    public void draw(MapRenderer renderer, boolean darkmode, Decimator decimator) {
+        renderer.setStroke(color);
+        super.draw(renderer, darkmode, decimator);
+    }
+
+    @Override
+    public SerializableColor getColor() {
+        return color;
     }
 
     /**
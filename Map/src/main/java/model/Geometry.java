@@ -0,0 +1,161 @@
+package model;
+
+/**
+ * Static helpers for exact geometry on coordinate arrays. Like MapObject.coordinates, all the arrays are
+ * interleaved, so point i is (coords[2*i], coords[2*i+1]).
+ */
+public class Geometry {
+    /**
+     * Both axes of the map are scaled so that one unit is roughly one degree of latitude, which is about this many meters.
+     * Good enough for distances within Denmark.
+     */
+    public static final double metersPerMapUnit = 111320;
+
+    private Geometry() {}
+
+    /**
+     * @param meters a distance in meters
+     * @return the distance in map coordinates
+     */
+    public static double metersToMapUnits(double meters) {
+        return meters / metersPerMapUnit;
+    }
+
+    /**
+     * @return the squared distance from (x, y) to the segment from (ax, ay) to (bx, by)
+     */
+    public static double segmentDistanceSquared(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t)); // the closest point has to be on the segment
+        double px = ax + t * dx - x, py = ay + t * dy - y;
+        return px * px + py * py;
+    }
+
+    /**
+     * @return the squared distance from (x, y) to the closest point on the line through the given points.
+     * A single point is just the distance to that point
+     */
+    public static double polylineDistanceSquared(double[] coords, double x, double y) {
+        double best = Math.pow(coords[0] - x, 2) + Math.pow(coords[1] - y, 2);
+        for(int i = 2; i + 1 < coords.length; i += 2) {
+            best = Math.min(best, segmentDistanceSquared(x, y, coords[i - 2], coords[i - 1], coords[i], coords[i + 1]));
+        }
+        return best;
+    }
+
+    /**
+     * Even-odd test on whether the point is inside the polygon. The polygon is closed implicitly, so the last point
+     * doesn't need to be the same as the first.
+     * @return if (x, y) is inside the polygon
+     */
+    public static boolean polygonContains(double[] polygon, double x, double y) {
+        boolean inside = false;
+        int n = polygon.length / 2;
+        for(int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = polygon[2 * i], yi = polygon[2 * i + 1], xj = polygon[2 * j], yj = polygon[2 * j + 1];
+            if((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) { inside = !inside; }
+        }
+        return inside;
+    }
+
+    /**
+     * @return if the segment from (ax, ay) to (bx, by) and the segment from (cx, cy) to (dx, dy) have a point in common, touching included
+     */
+    public static boolean segmentsIntersect(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double d1 = cross(cx, cy, dx, dy, ax, ay), d2 = cross(cx, cy, dx, dy, bx, by);
+        double d3 = cross(ax, ay, bx, by, cx, cy), d4 = cross(ax, ay, bx, by, dx, dy);
+        if(((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) { return true; }
+        // the collinear and touching cases
+        return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay)) || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by))
+                || (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy)) || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+    }
+
+    /**
+     * @return if any segment of the line through coords crosses or touches any edge of the polygon
+     */
+    public static boolean polylineCrossesPolygon(double[] coords, double[] polygon) {
+        int n = polygon.length / 2;
+        for(int i = 2; i + 1 < coords.length; i += 2) {
+            for(int k = 0, j = n - 1; k < n; j = k++) {
+                if(segmentsIntersect(coords[i - 2], coords[i - 1], coords[i], coords[i + 1],
+                        polygon[2 * j], polygon[2 * j + 1], polygon[2 * k], polygon[2 * k + 1])) { return true; }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the bounding box of the given points
+     */
+    public static SerializableRectangle2D bounds(double[] coords) {
+        double minX = coords[0], maxX = coords[0], minY = coords[1], maxY = coords[1];
+        for(int i = 2; i + 1 < coords.length; i += 2) {
+            minX = Math.min(minX, coords[i]);
+            maxX = Math.max(maxX, coords[i]);
+            minY = Math.min(minY, coords[i + 1]);
+            maxY = Math.max(maxY, coords[i + 1]);
+        }
+        return new SerializableRectangle2D(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Douglas-Peucker simplification: keeps the first and last point, then the point furthest from the line between
+     * them if it is further than the tolerance, and does the same for the two halves. Every point dropped is within
+     * the tolerance of the simplified line. Done with a stack rather than recursion, so long lines can't overflow it.
+     * @param coords the points to simplify
+     * @param tolerance how far in map coordinates a point may be from the simplified line
+     * @return the points that are kept, in order
+     */
+    public static double[] simplify(double[] coords, double tolerance) {
+        int n = coords.length / 2;
+        if(n < 3) { return coords.clone(); }
+        boolean[] keep = new boolean[n];
+        keep[0] = keep[n - 1] = true;
+        int kept = 2;
+        double toleranceSquared = tolerance * tolerance;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while(top > 0) {
+            int last = stack[--top], first = stack[--top];
+            double furthest = toleranceSquared;
+            int index = -1;
+            for(int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(coords[2 * i], coords[2 * i + 1], coords[2 * first],
+                        coords[2 * first + 1], coords[2 * last], coords[2 * last + 1]);
+                if(distance > furthest) {
+                    furthest = distance;
+                    index = i;
+                }
+            }
+            if(index < 0) { continue; }
+            keep[index] = true;
+            kept++;
+            stack[top++] = first;
+            stack[top++] = index;
+            stack[top++] = index;
+            stack[top++] = last;
+        }
+        double[] simplified = new double[2 * kept];
+        for(int i = 0, j = 0; i < n; i++) {
+            if(keep[i]) {
+                simplified[j++] = coords[2 * i];
+                simplified[j++] = coords[2 * i + 1];
+            }
+        }
+        return simplified;
+    }
+
+    // the cross product of (b - a) and (c - a), which is positive if c is to the left of the line from a to b
+    private static double cross(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    // if c, which is known to be on the line through a and b, is between a and b
+    private static boolean onSegment(double ax, double ay, double bx, double by, double cx, double cy) {
+        return Math.min(ax, bx) <= cx && cx <= Math.max(ax, bx) && Math.min(ay, by) <= cy && cy <= Math.max(ay, by);
+    }
+}
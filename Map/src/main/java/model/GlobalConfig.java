@@ -12,10 +12,18 @@ public class GlobalConfig {
         ADRESS_DEBUG_INFO, 
         DRAW_GRAPH, 
         DRAW_MAP,
-        TOGGLE_DARKMODE
+        TOGGLE_DARKMODE,
+        TILE_CACHE,
+        SOFTWARE_RASTER,
+        STYLE_BATCHING,
+        DECIMATION,
+        BLIT_PAN, // only when the map isn't drawn from the tile cache, which pans by drawing the cached tiles instead
+        PROGRESSIVE
     }
     public enum Constant {
-        MAX_AMT_ADDRESSES
+        MAX_AMT_ADDRESSES,
+        TILE_CACHE_MB,
+        FRAME_BUDGET_MS
     }
 
     public enum BackgroundColor {
@@ -37,8 +45,16 @@ public class GlobalConfig {
         config[Options.DRAW_GRAPH.ordinal()] = false;
         config[Options.DRAW_MAP.ordinal()] = true;
         config[Options.TOGGLE_DARKMODE.ordinal()] = true;
+        config[Options.TILE_CACHE.ordinal()] = true;
+        config[Options.SOFTWARE_RASTER.ordinal()] = true;
+        config[Options.STYLE_BATCHING.ordinal()] = true;
+        config[Options.DECIMATION.ordinal()] = true;
+        config[Options.BLIT_PAN.ordinal()] = true;
+        config[Options.PROGRESSIVE.ordinal()] = true;
         constants = new int[Constant.values().length];
         constants[Constant.MAX_AMT_ADDRESSES.ordinal()] = 8;
+        constants[Constant.TILE_CACHE_MB.ordinal()] = 256;
+        constants[Constant.FRAME_BUDGET_MS.ordinal()] = 10;
         colors = new Color[2];
         colors[BackgroundColor.CANVAS_BACKGROUND.ordinal()] = Color.rgb(50, 50, 50);
     }
@@ -66,6 +82,10 @@ public class GlobalConfig {
         config[option.ordinal()] = value; 
     }
 
+    public void setConstant(Constant constant, int value) {
+        constants[constant.ordinal()] = value;
+    }
+
     public void setBackgroundColor(BackgroundColor bgColor, Color color) {
         colors[bgColor.ordinal()] = color;
     }
@@ -2,6 +2,7 @@ package model;
 
 import model.DataTypes.DPHT2DTree;
 import model.DataTypes.DoubleArrayList;
+import model.DataTypes.DoublePointGrid;
 import model.DataTypes.DoublePointHashTable;
 import model.DataTypes.LongToIntMap;
 
@@ -31,6 +32,7 @@ public class Graph implements Serializable{
 
     DoublePointHashTable coordinates;
     DPHT2DTree bestDistTree;
+    transient DoublePointGrid nodeGrid; // rebuilt on first use, see getNodeGrid
     LongToIntMap nodeIdToNodeCoordsIndex;
     List<Edge> edges;
     List<List<Edge>> adjacencyLists;
@@ -38,6 +40,7 @@ public class Graph implements Serializable{
 
     public Graph() {
         bestDistTree = null;
+        nodeGrid = null;
         nodeIdToNodeCoordsIndex = new LongToIntMap(); 
         edges = new ArrayList<>();
         adjacencyLists = new ArrayList<>();
@@ -107,6 +110,44 @@ public class Graph implements Serializable{
         return bestDistTree.getClosestNodeID(x, y);
     }
 
+    /**
+     * Bulk version of getSmallestDistanceNodeID, which runs the queries in parallel. 
+     * @param xs the x-coordinates of the query points
+     * @param ys the y-coordinates of the query points
+     * @return an array where index i holds the ID of the node nearest to (xs[i], ys[i])
+     */
+    public int[] getSmallestDistanceNodeIDs(double[] xs, double[] ys) {
+        if(xs.length == 0) { return new int[0]; }
+        if(bestDistTree == null) { bestDistTree = new DPHT2DTree(coordinates); }
+        return bestDistTree.getClosestNodeIDs(xs, ys);
+    }
+
+    /**
+     * Like getSmallestDistanceNodeID, but uses a grid over the nodes instead of the 2D tree, which only has to look at a 
+     * few cells around the point. Meant for single lookups like clicking on the map, the grid is built on first use. 
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the ID of a node nearest to the point, ties may be broken differently than getSmallestDistanceNodeID
+     */
+    public int getNearestNodeID(double x, double y) {
+        return getNodeGrid().getClosestNodeID(x, y);
+    }
+
+    /**
+     * @param x the x coordinate of the center
+     * @param y the y coordinate of the center
+     * @param radius the radius in map coordinates
+     * @return the ID's of all the nodes within the radius of the point
+     */
+    public int[] getNodeIDsWithin(double x, double y, double radius) {
+        return getNodeGrid().getNodeIDsWithin(x, y, radius);
+    }
+
+    private DoublePointGrid getNodeGrid() {
+        if(nodeGrid == null || nodeGrid.size() != coordinates.size()) { nodeGrid = new DoublePointGrid(coordinates); }
+        return nodeGrid;
+    }
+
     //method for memory cleanup 
     public void rmBestDistTree() {
         bestDistTree = null; 
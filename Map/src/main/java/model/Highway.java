@@ -1,7 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-
 import java.util.List;
 
 /**
@@ -46,16 +44,36 @@ public class Highway extends Road {
     }
 
     /**
-     * Draws the highway on the specified `GraphicsContext`.
+     * Draws the highway with the specified `MapRenderer`.
      *
-     * @param gc The `GraphicsContext` on which to draw the highway.
+     * @param renderer The `MapRenderer` with which to draw the highway.
      */
     @Override
-    public void draw(GraphicsContext gc) {
-        gc.setLineWidth(gc.getLineWidth() * info.getStrokeWidth());
-        gc.setStroke(info.getColor().getFXColor());
-        super.draw(gc);
-        gc.setLineWidth(gc.getLineWidth() / info.getStrokeWidth());
+    public void draw(MapRenderer renderer, boolean darkmode, Decimator decimator) {
+        renderer.setLineWidth(renderer.getLineWidth() * info.getStrokeWidth());
+        renderer.setStroke(info.getColor(darkmode));
+        super.draw(renderer, darkmode, decimator);
+        renderer.setLineWidth(renderer.getLineWidth() / info.getStrokeWidth());
+    }
+
+    @Override
+    public Object getStyleKey() {
+        return info;
+    }
+
+    @Override
+    public SerializableColor getColor() {
+        return info.getColor();
+    }
+
+    @Override
+    public SerializableColor getColor(boolean darkmode) {
+        return info.getColor(darkmode);
+    }
+
+    @Override
+    public double getStrokeWidth() {
+        return info.getStrokeWidth();
     }
 
     /**
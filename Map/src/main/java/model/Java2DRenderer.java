@@ -0,0 +1,194 @@
+package model;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A MapRenderer drawing on a BufferedImage with Java2D. It doesn't need JavaFX or a screen, so it works headless, on any
+ * thread and on a server, for benchmarks, for comparing renders against a known good image and for generating tiles.
+ * Lines are drawn with square caps and miter joins like on a canvas.
+ * An instance is not thread safe, but every thread can have its own.
+ */
+public class Java2DRenderer implements MapRenderer {
+    private final BufferedImage image;
+    private final Graphics2D g;
+    private double scale = 1, translateX = 0, translateY = 0;
+    private Color stroke = Color.BLACK, fill = Color.BLACK;
+    private double lineWidth = 1;
+    private BasicStroke basicStroke; // made again when the line width changes
+    // reused shapes, so drawing doesn't allocate
+    private final Path2D.Double path = new Path2D.Double();
+    private final Path2D.Double polygon = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+    private final Line2D.Double line = new Line2D.Double();
+    private final Rectangle2D.Double rect = new Rectangle2D.Double();
+    private final Ellipse2D.Double oval = new Ellipse2D.Double();
+
+    /**
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public Java2DRenderer(int width, int height) {
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /**
+     * @param image the image to draw on
+     */
+    public Java2DRenderer(BufferedImage image) {
+        this.image = image;
+        this.g = image.createGraphics();
+        setAntialiasing(true);
+    }
+
+    /**
+     * Sets the transform from map coordinates to pixels, which is pixel = coordinate * scale + translate.
+     */
+    public void setTransform(double scale, double translateX, double translateY) {
+        this.scale = scale;
+        this.translateX = translateX;
+        this.translateY = translateY;
+        g.setTransform(new AffineTransform(scale, 0, 0, scale, translateX, translateY));
+    }
+
+    /**
+     * @param antialiasing whether edges should be smoothed, which a canvas always does
+     */
+    public void setAntialiasing(boolean antialiasing) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+    }
+
+    /**
+     * Fills every pixel with the given color, without blending.
+     */
+    public void clear(SerializableColor color) {
+        AffineTransform transform = g.getTransform();
+        g.setTransform(new AffineTransform());
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(new Color(color.getARGB(), true));
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setTransform(transform);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Frees the resources of the Graphics2D, the renderer can't be used afterwards.
+     */
+    public void dispose() {
+        g.dispose();
+    }
+
+    @Override
+    public void setStroke(SerializableColor color) {
+        stroke = new Color(color.getARGB(), true);
+    }
+
+    @Override
+    public void setFill(SerializableColor color) {
+        fill = new Color(color.getARGB(), true);
+    }
+
+    @Override
+    public void setLineWidth(double lineWidth) {
+        if (lineWidth != this.lineWidth) {
+            basicStroke = null;
+        }
+        this.lineWidth = lineWidth;
+    }
+
+    @Override
+    public double getLineWidth() {
+        return lineWidth;
+    }
+
+    @Override
+    public void beginPath() {
+        path.reset();
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        path.moveTo(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        path.lineTo(x, y);
+    }
+
+    @Override
+    public void stroke() {
+        if (path.getCurrentPoint() == null) {
+            return;
+        }
+        draw(path);
+    }
+
+    @Override
+    public void fillPolygon(double[] xs, double[] ys, int n) {
+        if (n < 3) {
+            return;
+        }
+        polygon.reset();
+        polygon.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < n; i++) {
+            polygon.lineTo(xs[i], ys[i]);
+        }
+        polygon.closePath();
+        g.setColor(fill);
+        g.fill(polygon);
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        line.setLine(x1, y1, x2, y2);
+        draw(line);
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        rect.setRect(x, y, width, height);
+        draw(rect);
+    }
+
+    @Override
+    public void fillOval(double x, double y, double width, double height) {
+        oval.setFrame(x, y, width, height);
+        g.setColor(fill);
+        g.fill(oval);
+    }
+
+    private void draw(Shape shape) {
+        if (basicStroke == null) {
+            basicStroke = new BasicStroke((float) lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER);
+        }
+        g.setStroke(basicStroke);
+        g.setColor(stroke);
+        g.draw(shape);
+    }
+
+    @Override
+    public double getScale() {
+        return scale;
+    }
+
+    @Override
+    public SerializableRectangle2D getView() {
+        return new SerializableRectangle2D(-translateX / scale, -translateY / scale, image.getWidth() / scale,
+                image.getHeight() / scale);
+    }
+}
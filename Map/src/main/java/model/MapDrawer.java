@@ -1,14 +1,15 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
-import javafx.geometry.Point2D;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
-import javafx.scene.transform.NonInvertibleTransformException;
 import model.GlobalConfig.Options;
 import model.DataTypes.DoubleArrayList;
 
@@ -17,9 +18,21 @@ import model.DataTypes.DoubleArrayList;
  * that should be on the map such as the shortest path or points of interest.
  */
 public class MapDrawer {
-    private GraphicsContext gc;
+    private static final SerializableColor black = new SerializableColor(0, 0, 0);
+    private static final SerializableColor red = new SerializableColor(1, 0, 0);
+    private static final SerializableColor green = new SerializableColor(0, 0.5, 0);
+    private static final SerializableColor purple = new SerializableColor(0.5, 0, 0.5);
+    private MapRenderer renderer;
     private SerializableRectangle2D bounds;
     private RTree tree;
+    private ViewportQuery viewportQuery;
+    private StyleBatcher styleBatcher;
+    private final Set<MapObject> regionObjects = new LinkedHashSet<>(); // an object can be in more than one region
+    private static final int sliceSize = 512; // the objects drawn between looking at the clock
+    private final List<MapObject> pass = new ArrayList<>(); // the objects of the view being drawn, most important first
+    private final List<MapObject> touchUp = new ArrayList<>();
+    private int passIndex, firstSliceEnd;
+    private TileCache tileCache;
     private List<SerializablePoint2D> pointsOfInterest;
     private DoubleArrayList graphX, graphY;
     private List<Graph.Edge> graphEdges;
@@ -27,7 +40,7 @@ public class MapDrawer {
     private ValueChangeSubject<Double> zoomLevel;
 
     /**
-     * The constructor for the MapDrawer
+     * The constructor for the MapDrawer, drawing on a canvas
      * 
      * @param gc         the graphic context that should be used to draw
      * @param objects    all loaded objects, the map drawer will handle any sorting
@@ -38,11 +51,29 @@ public class MapDrawer {
      */
     public MapDrawer(GraphicsContext gc, List<MapObject> objects, SerializableRectangle2D bounds,
             DoubleArrayList graphX, DoubleArrayList graphY, List<Graph.Edge> graphEdges) {
-        if (bounds == null || gc == null)
+        this(new FXRenderer(gc), objects, bounds, graphX, graphY, graphEdges);
+    }
+
+    /**
+     * The constructor for the MapDrawer, drawing with any renderer
+     * 
+     * @param renderer   the renderer that should be used to draw
+     * @param objects    all loaded objects, the map drawer will handle any sorting
+     * @param bounds     the smallest square that contains all loaded objects
+     * @param graphX     all x coordinates from the graph
+     * @param graphY     all y coordinates from the graph
+     * @param graphEdges all edges from the graph
+     */
+    public MapDrawer(MapRenderer renderer, List<MapObject> objects, SerializableRectangle2D bounds,
+            DoubleArrayList graphX, DoubleArrayList graphY, List<Graph.Edge> graphEdges) {
+        if (bounds == null || renderer == null)
             throw new NullPointerException("Cannot be null");
-        this.gc = gc;
+        this.renderer = renderer;
         this.bounds = bounds;
         tree = new RTree(bounds, objects);
+        viewportQuery = new ViewportQuery(tree);
+        styleBatcher = new StyleBatcher();
+        tileCache = new TileCache(tree, GlobalConfig.getInstance().getConstant(GlobalConfig.Constant.TILE_CACHE_MB) * 1024L * 1024L);
         this.graphX = graphX;
         this.graphY = graphY;
         this.graphEdges = graphEdges;
@@ -86,102 +117,239 @@ public class MapDrawer {
     }
 
     private void drawPointOfInterest() {
-        double radius = 5 / Math.sqrt(gc.getTransform().determinant()); // nice scales
+        double radius = 5 / renderer.getScale(); // nice scales
         for (SerializablePoint2D point : pointsOfInterest) {
-            gc.setFill(Color.RED); // set the fill color
-            gc.fillOval(point.getX() - radius, point.getY() - radius, 2 * radius, 2 * radius); // draw the circle
+            renderer.setFill(red); // set the fill color
+            renderer.fillOval(point.getX() - radius, point.getY() - radius, 2 * radius, 2 * radius); // draw the circle
         }
     }
 
     /**
      * The function that is responsible for drawing the entire map, depending on
-     * zoom level.
-     * It calculates the current view, retrieves the objects from the RTree within
-     * that view (and zoom level) and draws them.
+     * zoom level. Draws the map objects and then everything on top of them.
      */
     public void draw() {
-        gc.setFill(GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND));
-        SerializableRectangle2D view = bounds;
-        try {
-            Point2D upperLeft, lowerRight;
-
-            if (GlobalConfig.getInstance().getOption(Options.DEBUG_ZOOM)) {
-                upperLeft = gc.getTransform().inverseTransform(480, 270);
-                lowerRight = gc.getTransform().inverseTransform(gc.getCanvas().getWidth() - 480,
-                        gc.getCanvas().getHeight() - 270);
-            } else {
-                upperLeft = gc.getTransform().inverseTransform(0, 0);
-                lowerRight = gc.getTransform().inverseTransform(gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
-            }
-
-            view = new SerializableRectangle2D(upperLeft.getX(), upperLeft.getY(), lowerRight.getX() - upperLeft.getX(),
-                    lowerRight.getY() - upperLeft.getY());
-
-            double differenceOfX = view.getMaxX() - view.getMinX();
-            double differenceOfY = view.getMaxY() - view.getMinY();
-            double hypotenuse = Math.sqrt(differenceOfX + differenceOfY);
-            zoomLevel.setValue(Math.min(1, Math.round(hypotenuse * 100.0) / 100.0));
-            gc.setStroke(Color.BLACK);
+        drawMap();
+        while (isRefining()) {
+            continueMap();
+        }
+        drawOverlays();
+    }
 
-        } catch (NonInvertibleTransformException e) {
-            // never gonna happen (don't jinx)
-            e.printStackTrace();
+    /**
+     * The view that is drawn, which is what the renderer shows unless debug zoom is on
+     */
+    private SerializableRectangle2D currentView() {
+        SerializableRectangle2D view = renderer.getView();
+        if (GlobalConfig.getInstance().getOption(Options.DEBUG_ZOOM)) {
+            // only look at the middle of the screen, to see what is culled
+            double insetX = 480 / renderer.getScale(), insetY = 270 / renderer.getScale();
+            view = new SerializableRectangle2D(view.getMinX() + insetX, view.getMinY() + insetY,
+                    view.getWidth() - 2 * insetX, view.getHeight() - 2 * insetY);
         }
+        return view;
+    }
+
+    /**
+     * Whether the map objects are drawn as images from the tile cache, which only works when drawing on a canvas
+     */
+    public boolean drawsFromTileCache() {
+        return GlobalConfig.getInstance().getOption(Options.DRAW_MAP) && GlobalConfig.getInstance().getOption(Options.TILE_CACHE)
+                && !GlobalConfig.getInstance().getOption(Options.DEBUG_ZOOM) && renderer instanceof FXRenderer;
+    }
 
-        List<MapObject> toDraw = new ArrayList<>();
+    /**
+     * Draws the map objects. It calculates the current view, retrieves the
+     * objects from the RTree within that view (and zoom level) and draws them.
+     * With progressive drawing on, it only draws as many as fit in the frame
+     * budget, and continueMap draws the rest on the following frames.
+     */
+    public void drawMap() {
+        pass.clear(); // whatever was left of the last view is stale now
+        passIndex = 0;
+        SerializableRectangle2D view = currentView();
+        zoomLevel.setValue(zoomLevelOf(view.getMaxX() - view.getMinX(), view.getMaxY() - view.getMinY()));
+        renderer.setStroke(black);
 
         double zoomLvl = zoomLevel.getValue();
-        if (GlobalConfig.getInstance().getOption(Options.DRAW_MAP)) {
-            tree.getObjectsInSquare(view, toDraw, zoomLvl); // null;//
+        if (drawsFromTileCache()) {
+            tileCache.draw(((FXRenderer) renderer).getGraphicsContext(), view);
+        } else if (GlobalConfig.getInstance().getOption(Options.DRAW_MAP)) {
+            // when panning, the viewport query only looks at the strips that entered or left the view
+            Collection<MapObject> toDraw = viewportQuery.query(view, zoomLvl);
             if (GlobalConfig.getInstance().getOption(Options.PRINT_DRAW_INFO)) {
                 DebugConsole.getInstance().log("@ zoomlvl: " + zoomLvl + " drawing " + toDraw.size() + "objects");
             }
-            if (toDraw != null) { // happens if we call it before we do the panning stuff;
-                for (MapObject object : toDraw) {
-                    if (object != null) {
-                        object.draw(gc);
-                    }
+            if (GlobalConfig.getInstance().getOption(Options.PROGRESSIVE) && toDraw != null) {
+                startPass(toDraw);
+                continueMap();
+            } else {
+                drawObjects(toDraw);
+            }
+        }
+    }
+
+    /**
+     * Starts drawing the objects in slices, the most important first. Those are the objects with the highest zoom
+     * level, the ones that are still drawn when zoomed furthest out, so the large areas and major roads come first,
+     * then water and the smaller roads, and the buildings last.
+     */
+    private void startPass(Collection<MapObject> toDraw) {
+        for (MapObject object : toDraw) {
+            if (object != null) {
+                pass.add(object);
+            }
+        }
+        pass.sort(Comparator.comparingDouble(MapObject::getZoomLevel).reversed());
+    }
+
+    /**
+     * Draws the next objects of the pass, until the frame budget is spent. Every call draws at least one slice, so a
+     * pass always finishes.
+     */
+    public void continueMap() {
+        if (!isRefining()) {
+            return;
+        }
+        long deadline = System.nanoTime()
+                + GlobalConfig.getInstance().getConstant(GlobalConfig.Constant.FRAME_BUDGET_MS) * 1_000_000L;
+        boolean first = passIndex == 0;
+        do {
+            int end = Math.min(pass.size(), passIndex + sliceSize);
+            drawObjects(pass.subList(passIndex, end));
+            passIndex = end;
+        } while (passIndex < pass.size() && System.nanoTime() < deadline);
+        if (first) {
+            firstSliceEnd = passIndex;
+        }
+        if (passIndex < pass.size()) {
+            return;
+        }
+        if (!first) {
+            // areas drawn in later slices can cover the major roads drawn in the first one, like water at a bridge
+            for (MapObject object : pass.subList(0, firstSliceEnd)) {
+                if (!object.isFilled()) {
+                    touchUp.add(object);
                 }
             }
+            drawObjects(touchUp);
+            touchUp.clear();
+        }
+        pass.clear(); // so the objects aren't kept alive
+        passIndex = 0;
+    }
+
+    /**
+     * Whether the map of the current view isn't done, and continueMap has more to draw. The view has to be the same as
+     * when drawMap was called, if it changed drawMap should start over.
+     */
+    public boolean isRefining() {
+        return passIndex < pass.size();
+    }
+
+    /**
+     * Draws the map objects in the given parts of the view only, at the zoom level of the last call to drawMap. Used
+     * when the rest of the map is still on screen from the last frame, like when panning. Objects reaching outside the
+     * regions are drawn whole, so the renderer should be clipped to them.
+     *
+     * @param regions the parts of the view to draw, in map coordinates
+     */
+    public void drawMapRegions(SerializableRectangle2D... regions) {
+        if (zoomLevel.getValue() == null) {
+            return;
+        }
+        renderer.setStroke(black);
+        if (drawsFromTileCache()) {
+            for (SerializableRectangle2D region : regions) {
+                tileCache.draw(((FXRenderer) renderer).getGraphicsContext(), region);
+            }
+        } else if (GlobalConfig.getInstance().getOption(Options.DRAW_MAP)) {
+            for (SerializableRectangle2D region : regions) {
+                tree.getObjectsIntersecting(region, regionObjects, zoomLevel.getValue());
+            }
+            drawObjects(regionObjects);
+            regionObjects.clear();
         }
+    }
+
+    /**
+     * Draws the objects, grouped by style if style batching is on. Decimation is its own option either way
+     */
+    private void drawObjects(Collection<MapObject> toDraw) {
+        if (toDraw == null) { // happens if we call it before we do the panning stuff;
+            return;
+        }
+        if (GlobalConfig.getInstance().getOption(Options.STYLE_BATCHING)) {
+            styleBatcher.draw(renderer, toDraw);
+        } else {
+            styleBatcher.drawEach(renderer, toDraw);
+        }
+    }
 
+    /**
+     * Draws everything that goes on top of the map objects, like points of
+     * interest and the route.
+     */
+    public void drawOverlays() {
+        SerializableRectangle2D view = currentView();
+        double zoomLvl = zoomLevel.getValue() == null ? 1 : zoomLevel.getValue();
         if (GlobalConfig.getInstance().getOption(Options.DEBUG_OUTLINE))
-            tree.debugOutline(gc, view, zoomLvl);
+            tree.debugOutline(renderer, view, zoomLvl);
         if (GlobalConfig.getInstance().getOption(Options.DEBUG_ZOOM)) {
-            gc.setStroke(Color.PURPLE);
-            gc.setLineWidth(5 / Math.sqrt(gc.getTransform().determinant()));
-            gc.strokeRect(view.getMinX(), view.getMinY(), view.getWidth(), view.getHeight());
+            renderer.setStroke(purple);
+            renderer.setLineWidth(5 / renderer.getScale());
+            renderer.strokeRect(view.getMinX(), view.getMinY(), view.getWidth(), view.getHeight());
         }
 
         drawPointOfInterest();
 
         if (GlobalConfig.getInstance().getOption(Options.DRAW_GRAPH)) {
-            double radius = 2 / Math.sqrt(gc.getTransform().determinant());
-            gc.setStroke(Color.GREEN);
-            gc.setLineWidth(3 / Math.sqrt(gc.getTransform().determinant()));
-            gc.setFill(Color.GREEN);
+            double radius = 2 / renderer.getScale();
+            renderer.setStroke(green);
+            renderer.setLineWidth(3 / renderer.getScale());
+            renderer.setFill(green);
 
             Random rnd = new Random();
             for (Graph.Edge edge : graphEdges) {
-                gc.setStroke(Color.rgb(rnd.nextInt(255), rnd.nextInt(255), rnd.nextInt(255)));
-                gc.strokeLine(graphX.get(edge.fromNode), graphY.get(edge.fromNode), graphX.get(edge.toNode),
+                renderer.setStroke(new SerializableColor(rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble()));
+                renderer.strokeLine(graphX.get(edge.fromNode), graphY.get(edge.fromNode), graphX.get(edge.toNode),
                         graphY.get(edge.toNode));
             }
-            gc.setFill(Color.BLACK);
+            renderer.setFill(black);
             for (int i = 0; i < graphX.size(); i++) {
-                gc.fillOval(graphX.get(i) - radius, graphY.get(i) - radius, 2 * radius, 2 * radius);
+                renderer.fillOval(graphX.get(i) - radius, graphY.get(i) - radius, 2 * radius, 2 * radius);
             }
         }
         if (path == null) {
             return;
         }
-        gc.setStroke(Color.RED);
-        gc.setLineWidth(5 / Math.sqrt(gc.getTransform().determinant()));
+        renderer.setStroke(red);
+        renderer.setLineWidth(5 / renderer.getScale());
         for (Graph.Edge e : path) {
-            gc.strokeLine(graphX.get(e.fromNode), graphY.get(e.fromNode), graphX.get(e.toNode), graphY.get(e.toNode));
+            renderer.strokeLine(graphX.get(e.fromNode), graphY.get(e.fromNode), graphX.get(e.toNode), graphY.get(e.toNode));
         }
     }
 
+    /**
+     * The zoom level that objects are picked at for a view of the given size, the larger the view the fewer the objects.
+     * 
+     * @param viewWidth  the width of the view in map coordinates
+     * @param viewHeight the height of the view in map coordinates
+     * @return the zoom level, at most 1
+     */
+    public static double zoomLevelOf(double viewWidth, double viewHeight) {
+        double hypotenuse = Math.sqrt(viewWidth + viewHeight);
+        return Math.min(1, Math.round(hypotenuse * 100.0) / 100.0);
+    }
+
+    public MapRenderer getRenderer() {
+        return renderer;
+    }
+
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
     public SerializableRectangle2D getBounds() {
         return bounds;
     }
@@ -1,7 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-
 import java.io.Serializable;
 import java.util.List;
 
@@ -14,6 +12,23 @@ public abstract class MapObject implements Serializable {
     protected SerializableRectangle2D culBounds;
     protected double sz;
     protected static final double zoomLevel = 1; // draw if zoomlevel is less than this, zoomlevel can at most be
+    protected static final SerializableColor black = new SerializableColor(0, 0, 0);
+    /**
+     * The tolerances of the simplified levels, in map units. A view at zoom level z is z^2 map units wide plus high
+     * (see MapDrawer.zoomLevelOf), so on a 1920x1080 screen a pixel is z^2 / 3000. The levels are the pixel sizes at
+     * the zoom levels the RTree layers start at, from 0.4 and zoomDiffPerLevel apart.
+     */
+    public static final double[] levelTolerances = new double[4];
+    static {
+        for (int level = 0; level < levelTolerances.length; level++) {
+            double zoom = 0.4 + level * RTree.zoomDiffPerLevel;
+            levelTolerances[level] = zoom * zoom / (1920 + 1080);
+        }
+    }
+    // the simplified levels after each other, null if no level has fewer points than the coordinates
+    protected double[] levels;
+    // the start and end of every level in levels, a level that isn't simpler than the coordinates starts at -1
+    protected int[] levelOffsets;
 
     /**
      * Constructor for MapObject class.
@@ -48,14 +63,184 @@ public abstract class MapObject implements Serializable {
         }
         this.culBounds = new SerializableRectangle2D(minX, minY, maxX - minX, maxY - minY);
         sz = Math.sqrt(Math.pow(culBounds.getWidth(), 2) + Math.pow(culBounds.getHeight(), 2));
+        buildLevels();
+    }
+
+    /**
+     * Simplifies the coordinates once for every level tolerance and stores the levels that have fewer points than the
+     * coordinates. A level that turns out the same as the one before it shares its points.
+     */
+    private void buildLevels() {
+        int[] offsets = new int[2 * levelTolerances.length];
+        double[][] simplified = new double[levelTolerances.length][];
+        int length = 0, previous = coordinates.length;
+        for (int level = 0; level < levelTolerances.length; level++) {
+            double[] points = Geometry.simplify(coordinates, levelTolerances[level]);
+            if (points.length == coordinates.length) {
+                offsets[2 * level] = offsets[2 * level + 1] = -1;
+            } else if (points.length == previous) {
+                offsets[2 * level] = offsets[2 * level - 2];
+                offsets[2 * level + 1] = offsets[2 * level - 1];
+            } else {
+                simplified[level] = points;
+                offsets[2 * level] = length;
+                offsets[2 * level + 1] = length += points.length;
+            }
+            previous = points.length;
+        }
+        if (length == 0) {
+            return;
+        }
+        levels = new double[length];
+        for (int level = 0; level < levelTolerances.length; level++) {
+            if (simplified[level] != null) {
+                System.arraycopy(simplified[level], 0, levels, offsets[2 * level], simplified[level].length);
+            }
+        }
+        levelOffsets = offsets;
+    }
+
+    /**
+     * The coarsest level whose tolerance is at most the given one, so it can't be told apart from the full
+     * coordinates when a pixel is that large.
+     *
+     * @param tolerance The size of a pixel in map units
+     * @return The index of the level in levelOffsets, or -1 for the full coordinates
+     */
+    protected int levelFor(double tolerance) {
+        if (levelOffsets == null) {
+            return -1;
+        }
+        int chosen = -1;
+        for (int level = 0; level < levelTolerances.length && levelTolerances[level] <= tolerance; level++) {
+            if (levelOffsets[2 * level] >= 0) {
+                chosen = level;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Get how many points the object is drawn with when a pixel is the given size.
+     *
+     * @param tolerance The size of a pixel in map units
+     * @return The amount of points of the level that would be drawn
+     */
+    public int getPointCount(double tolerance) {
+        int level = levelFor(tolerance);
+        if (level < 0) {
+            return coordinates.length / 2;
+        }
+        return (levelOffsets[2 * level + 1] - levelOffsets[2 * level]) / 2;
+    }
+
+    /**
+     * Draws the map object with a renderer, which can be a
+     * canvas or one of the renderers that work without JavaFX,
+     * in the theme of the options and with every point.
+     *
+     * @param renderer The renderer to draw with
+     */
+    public void draw(MapRenderer renderer) {
+        draw(renderer, GlobalConfig.getInstance().getOption(GlobalConfig.Options.TOGGLE_DARKMODE), null);
+    }
+
+    /**
+     * Abstract method for drawing the map object in the given theme, instead of
+     * the one in the options, with the points the decimator keeps.
+     *
+     * @param renderer  The renderer to draw with
+     * @param darkmode  Whether the map is drawn in dark mode
+     * @param decimator The decimator for the current scale, or null to draw every point
+     */
+    public abstract void draw(MapRenderer renderer, boolean darkmode, Decimator decimator);
+
+    /**
+     * Adds the shape of the object to what the renderer is drawing, without
+     * touching the style. Lines are added to the current path as a new line,
+     * so several objects can be stroked at once.
+     *
+     * @param renderer The renderer to add the shape to
+     */
+    public void addShape(MapRenderer renderer) {
+        addShape(renderer, null);
     }
 
     /**
-     * Abstract method for drawing the map object on the graphics context.
+     * Adds the shape of the object like {@link #addShape(MapRenderer)}, from the
+     * coarsest level that is fine enough for the scale of the decimator, and
+     * leaving out the points it finds too close together to be seen.
      *
-     * @param gc The graphics context to draw on
+     * @param renderer  The renderer to add the shape to
+     * @param decimator The decimator for the current scale, or null to add every point
      */
-    public abstract void draw(GraphicsContext gc);
+    public void addShape(MapRenderer renderer, Decimator decimator) {
+        if (coordinates.length < 2) {
+            return;
+        }
+        if (decimator != null) {
+            int level = levelFor(decimator.getTolerance());
+            if (level < 0) {
+                decimator.addLine(renderer, coordinates, 0, coordinates.length);
+            } else {
+                decimator.addLine(renderer, levels, levelOffsets[2 * level], levelOffsets[2 * level + 1]);
+            }
+            return;
+        }
+        renderer.moveTo(coordinates[0], coordinates[1]);
+        for (int i = 2; i < coordinates.length; i += 2) {
+            renderer.lineTo(coordinates[i], coordinates[i + 1]);
+        }
+    }
+
+    /**
+     * Objects with the same style key are drawn with the same color and width,
+     * which lets them be drawn together. By default that is every object of the
+     * same class.
+     *
+     * @return The style key of the object
+     */
+    public Object getStyleKey() {
+        return getClass();
+    }
+
+    /**
+     * Get the color the object is drawn in, in the current theme.
+     *
+     * @return The color of the object
+     */
+    public SerializableColor getColor() {
+        return black;
+    }
+
+    /**
+     * Get the color the object is drawn in, in the given theme. Used off the FX thread, where the options mustn't
+     * be read.
+     *
+     * @param darkmode whether the map is drawn in dark mode
+     * @return The color of the object
+     */
+    public SerializableColor getColor(boolean darkmode) {
+        return getColor();
+    }
+
+    /**
+     * Get how many times the normal line width the object is drawn with.
+     *
+     * @return The stroke width of the object
+     */
+    public double getStrokeWidth() {
+        return 1;
+    }
+
+    /**
+     * Whether the object is filled rather than stroked.
+     *
+     * @return true if the object is filled
+     */
+    public boolean isFilled() {
+        return false;
+    }
 
     /**
      * Abstract method for getting the zoom level of the map object.
@@ -82,4 +267,29 @@ public abstract class MapObject implements Serializable {
     public double getSize() {
         return sz;
     }
+
+    /**
+     * Exact test on whether any part of the object is within the given distance of the point, using its coordinates
+     * rather than its bounds.
+     *
+     * @param x        the x coordinate of the point
+     * @param y        the y coordinate of the point
+     * @param distance the distance in map coordinates
+     * @return whether the object is within the distance of the point
+     */
+    public boolean isWithinDistance(double x, double y, double distance) {
+        return Geometry.polylineDistanceSquared(coordinates, x, y) <= distance * distance;
+    }
+
+    /**
+     * Exact test on whether the object intersects the polygon, which is the case if one of its points is inside the
+     * polygon or one of its segments crosses an edge of the polygon.
+     *
+     * @param polygon the points of the polygon, interleaved like the coordinates
+     * @return whether the object intersects the polygon
+     */
+    public boolean intersectsPolygon(double[] polygon) {
+        return Geometry.polygonContains(polygon, coordinates[0], coordinates[1])
+                || Geometry.polylineCrossesPolygon(coordinates, polygon);
+    }
 }
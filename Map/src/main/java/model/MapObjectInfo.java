@@ -43,7 +43,17 @@ public class MapObjectInfo implements Serializable {
      * @return the fill color as a SerializableColor object
      */
     public SerializableColor getColor() {
-        if (GlobalConfig.getInstance().getOption(GlobalConfig.Options.TOGGLE_DARKMODE)) {
+        return getColor(GlobalConfig.getInstance().getOption(GlobalConfig.Options.TOGGLE_DARKMODE));
+    }
+
+    /**
+     * Gets fill color for the MapObject in the given theme, for threads that mustn't read the options.
+     * 
+     * @param darkmode whether the map is drawn in dark mode
+     * @return the fill color as a SerializableColor object
+     */
+    public SerializableColor getColor(boolean darkmode) {
+        if (darkmode) {
             return colors[1];
         } else {
             return colors[0];
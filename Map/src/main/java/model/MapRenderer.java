@@ -0,0 +1,72 @@
+package model;
+
+/**
+ * The drawing operations the map is drawn with, so the MapObjects and the MapDrawer don't care what they draw on.
+ * There is a renderer for a JavaFX canvas (FXRenderer), one for a BufferedImage with Java2D (Java2DRenderer) and the
+ * SoftwareRasterizer, which draws into an int[] of pixels. The last two don't need the FX thread, or a screen at all.
+ * All coordinates are map coordinates, the renderer knows the transform to pixels. Line widths are in map coordinates
+ * too, like on a GraphicsContext with a transform.
+ */
+public interface MapRenderer {
+    /**
+     * @param color the color lines are stroked with from now on
+     */
+    void setStroke(SerializableColor color);
+
+    /**
+     * @param color the color shapes are filled with from now on
+     */
+    void setFill(SerializableColor color);
+
+    /**
+     * @param lineWidth the width of lines from now on, in map coordinates
+     */
+    void setLineWidth(double lineWidth);
+
+    double getLineWidth();
+
+    /**
+     * Throws away the current path and starts a new one.
+     */
+    void beginPath();
+
+    /**
+     * Starts a new line of the path at the point.
+     */
+    void moveTo(double x, double y);
+
+    /**
+     * Adds a segment from the last point of the path to the point.
+     */
+    void lineTo(double x, double y);
+
+    /**
+     * Strokes the current path with the stroke color and line width. The path is kept until the next beginPath.
+     */
+    void stroke();
+
+    /**
+     * Fills the polygon with the fill color. The polygon is closed implicitly.
+     *
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @param n  the amount of points
+     */
+    void fillPolygon(double[] xs, double[] ys, int n);
+
+    void strokeLine(double x1, double y1, double x2, double y2);
+
+    void strokeRect(double x, double y, double width, double height);
+
+    void fillOval(double x, double y, double width, double height);
+
+    /**
+     * @return how many pixels a map unit is
+     */
+    double getScale();
+
+    /**
+     * @return the part of the map that is visible, in map coordinates
+     */
+    SerializableRectangle2D getView();
+}
@@ -2,10 +2,14 @@ package model;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
 
 /**
  * RTree is a spatial data structure for getting objects in multi-dimensional space in an effective way.
@@ -23,6 +27,7 @@ public class RTree implements Serializable{
     private double zoomLevel;
     public final static int objPerSquare = 25;
     public final static double zoomDiffPerLevel = 0.2;
+    private final static SerializableColor debugBlue = new SerializableColor(0, 0, 1), debugRed = new SerializableColor(1, 0, 0);
 
 
     /**
@@ -33,11 +38,25 @@ public class RTree implements Serializable{
      The bounds of the root node is set to the max and min bounds of all the MapObjects.
      The structore of the RTree is constructed bottom-up. It stats from the leaves and goes up towards the root.
      It is constructed by combining columns pairwise.
+     The construction runs on the common ForkJoinPool, see {@link #RTree(SerializableRectangle2D, List, ForkJoinPool)}.
      * @param bounds the surrounding bounds, within whom all objects exist 
      * @param objects the list of all objects to include in the tree 
      */
     public RTree(SerializableRectangle2D bounds, List<MapObject> objects) {
-        objects.sort(new MapObjectComparator(true));
+        this(bounds, objects, ForkJoinPool.commonPool());
+    }
+
+    /**
+     Same as {@link #RTree(SerializableRectangle2D, List)}, but the construction is spread over the given pool.
+     The columns don't know about each other until they are merged, so every column is sorted and cut into leafs in its own task, 
+     and every pair of columns in a merge layer is merged in its own task. Every task writes to its own index, 
+     so the resulting tree is identical to the one built on a single thread, no matter the amount of cores. 
+     * @param bounds the surrounding bounds, within whom all objects exist 
+     * @param objects the list of all objects to include in the tree 
+     * @param pool the pool to construct the tree on, only used during construction
+     */
+    public RTree(SerializableRectangle2D bounds, List<MapObject> objects, ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(() -> parallelSort(objects, new MapObjectComparator(true))));
 
         distToCenter = 0; // this is the root node 
         parent = null; // this is the root node
@@ -47,158 +66,47 @@ public class RTree implements Serializable{
 
         int objPerColumn = objPerSquare * iterations;
 
-        double minX = objects.get(0).getBounds().getMinX(); 
-        double maxX = objects.get(objects.size() - 1).getBounds().getMaxX(); 
-        double absMinX = minX; 
+        double absMinX = objects.get(0).getBounds().getMinX(); 
         double absMaxY = -999, absMinY = 9999999;
-         
-        int x = 0, y = 0, amtObjects = 0; 
 
         // Here we loop over the entire objects list, sorted along maxX. 
         // We subdivide this list to objects.size() / objPerColumn sublists, which represents our columns
-        // We then sort these columns by maxY
+        // We then sort these columns by maxY, each column in its own task 
         int amtXIt = Math.min(objects.size() / objPerColumn + 1, iterations);
         RTree[][] leafs = new RTree[amtXIt][];
-        for(int i = 0; i < amtXIt; i += 1) {
-            x = i * objPerColumn; 
+        // the extremes of every column, combined after all the columns are done 
+        double[] colMinX = new double[amtXIt], colMinY = new double[amtXIt], colMaxY = new double[amtXIt], colMaxX = new double[amtXIt];
+        int maxLeafsPerColumn = iterations;
+        pool.invoke(new RangeTask(0, amtXIt, i -> {
+            int x = i * objPerColumn; 
             int xEnd = Math.min(objects.size(), x + objPerColumn);
-            List<MapObject> subList = objects.subList(x, xEnd);
-
-            minX = maxX = subList.get(subList.size() - 1).getBounds().getMaxX(); 
-
-            subList.sort(new MapObjectComparator(false));
-
-            double minY = subList.get(0).getBounds().getMinY();
-            
-            // Loop over the column we just created and subdivide it into leafs. The column is sorted by maxY
-            // These leafs have the size of <=objPerSquare.  
-            int amtYIt = subList.size() / objPerSquare + (subList.size() % objPerSquare == 0 ? 0 : 1);
-            amtYIt = Math.min(iterations, subList.size() / objPerSquare + 1);
-            y = 0;
-            List<RTree> newColumn = new ArrayList<>(); 
-            for(int k = 0; k < amtYIt; k += 1) {
-                y = k * objPerSquare; 
-                int yEnd = Math.min(subList.size(), y + objPerSquare);
-                List<MapObject> subSubList = subList.subList(y, yEnd); // the list representing this column
-
-                // we know exactly what maxY is since the sublist is sorted by it 
-                double maxY = subSubList.get(subSubList.size() - 1).getBounds().getMaxY();
-
-                // we cant really say anything about what minX, minY and maxX are in this particular subSubList, so we need to run through and find them
-                minY = subSubList.get(0).getBounds().getMinY();
-                minX = subSubList.get(0).getBounds().getMinX();
-                maxX = subSubList.get(0).getBounds().getMaxX();
-                for(int j = 1; j < subSubList.size(); j++) {
-                    if(subSubList.get(j).getBounds().getMinY() < minY) { minY = subSubList.get(j).getBounds().getMinY(); }
-                    if(subSubList.get(j).getBounds().getMinX() < minX) { minX = subSubList.get(j).getBounds().getMinX(); }
-                    if(subSubList.get(j).getBounds().getMaxX() > maxX) { maxX = subSubList.get(j).getBounds().getMaxX(); }
-                }
-
-                // keep track of the absolute coordinates, used for the bounds of the root node 
-                if(minY < absMinY) { absMinY = minY; } 
-                if(maxY > absMaxY) { absMaxY = maxY; }
-                if(minX < absMinX) { absMinX = minX; }
-
-                // create the new leaf, with the particular bounds we know are true for this set of objects, and the objects 
-                newColumn.add(new RTree(minX, maxX, minY, maxY, subSubList));
-            }
-            leafs[i] = newColumn.toArray(new RTree[0]); // we have completed this column, and add it to the top level array
+            leafs[i] = buildColumn(objects.subList(x, xEnd), maxLeafsPerColumn, i, colMinX, colMinY, colMaxY, colMaxX);
+        }));
+
+        // keep track of the absolute coordinates, used for the bounds of the root node 
+        for(int i = 0; i < amtXIt; i++) {
+            if(colMinY[i] < absMinY) { absMinY = colMinY[i]; } 
+            if(colMaxY[i] > absMaxY) { absMaxY = colMaxY[i]; }
+            if(colMinX[i] < absMinX) { absMinX = colMinX[i]; }
         }
+        double maxX = colMaxX[amtXIt - 1]; // the maxX of the very last leaf
         // we set the bounds of the root node to the maximum/minimum bounds for all the objects. 
         this.bounds = new SerializableRectangle2D(absMinX, absMinY, maxX - absMinX, Math.abs(absMaxY - absMinY));
 
         RTree[][] activeLayer = leafs; // activeLayer is the layer/level of the tree that we are currently going over 
         double curLayerZoomLevel = 0.4; 
         while(activeLayer.length > 1) {
-            List<RTree[]> newLayer = new ArrayList<>(); // the next "layer"/"level" of the tree that we are going to construct
-
-            int i = 1; // since we go in increments of 2, remember 'i' so we can fix any off-by-one error at the end
-            for(; i < activeLayer.length; i += 2) { // we loop over the active layer in pairs of 2 
-                RTree[] minColumn; // column with the lowest amount of rows, equivalently the one with the tallest rows
-                RTree[] otherColumn; // and the other columns
-                
-                // set the arrays to the appropiate columns 
-                if(activeLayer[i].length < activeLayer[i-1].length) { 
-                    minColumn = activeLayer[i]; 
-                    otherColumn = activeLayer[i-1]; 
-                } else {
-                    minColumn = activeLayer[i-1]; 
-                    otherColumn = activeLayer[i]; 
-                }
-
-                int j = 0; // how far column "B" we are, need to remember this independently of the minColumn loop 
-                List<RTree> newCol = new ArrayList<>();  // the new column of combined rows
-
-                // here we loop over the minColumn and combine the rows by combining each row of the minColumn with all the rows from j to the one with the smallest 
-                // difference in maxY coordinate This works since we know both columns are sorted by maxY.  
-                for (RTree rTree : minColumn) {
-                    // we initialize minDiff to the maximum difference between any two rows,
-                    double minDiff = Math.max(Math.abs(otherColumn[otherColumn.length - 1].bounds.getMaxY() - minColumn[0].bounds.getMinY())
-                            , Math.abs(minColumn[minColumn.length - 1].bounds.getMaxY() - otherColumn[0].bounds.getMinY()));
-
-
-                    List<MapObject> escalatedObjects = new ArrayList<>(); // the objects that have a higher zoom level, that we add to the new layer we create
-
-                    List<RTree> newLeaf = new ArrayList<>(); // the new column we will construct
-                    handleLeaf(rTree, newLeaf, escalatedObjects, curLayerZoomLevel);
-                    // grab some preliminary bounds, if any of them are inaccurate they will be corrected
-                    double minY = rTree.bounds.getMinY();
-                    double maxY = rTree.bounds.getMaxY();
-                    minX = rTree.bounds.getMinX();
-                    maxX = rTree.bounds.getMaxX();
-
-                    // now we run the parallel loop over otherColumn, from j to whichever row is the closest, in terms of maxY
-                    for (; j < otherColumn.length; j++) {
-                        double diff = Math.abs(rTree.bounds.getMaxY() - otherColumn[j].bounds.getMaxY());
-                        if (minDiff >= diff) {
-                            minDiff = diff;
-                            handleLeaf(otherColumn[j], newLeaf, escalatedObjects, curLayerZoomLevel);
-                            if (otherColumn[j].bounds.getMaxY() > maxY) {
-                                maxY = otherColumn[j].bounds.getMaxY();
-                            }
-                            if (otherColumn[j].bounds.getMinY() < minY) {
-                                minY = otherColumn[j].bounds.getMinY();
-                            }
-                            if (otherColumn[j].bounds.getMinX() < minX) {
-                                minX = otherColumn[j].bounds.getMinX();
-                            }
-                            if (otherColumn[j].bounds.getMaxX() > maxX) {
-                                maxX = otherColumn[j].bounds.getMaxX();
-                            }
-                            continue;
-                        }
-                        break; // we might not get all of otherColumn's children into newCol, so we'll need to handle that
-                    }
-                    newCol.add(new RTree(newLeaf.toArray(new RTree[0]), new SerializableRectangle2D(minX, minY, maxX - minX, maxY - minY), escalatedObjects));
-                }
-
-                if(j < otherColumn.length) { // iff we didn't combine all the elements of otherColumn. 
-                    // we just add all the remaining columns in one new leaf.
-                    List<MapObject> escalatedObjects = new ArrayList<>(); // obviously need another container for all the leftover objects
-
-
-                    RTree[] leftOvers = new RTree[otherColumn.length - j];
-                    List<RTree> leftOver = new ArrayList<>(); 
-                    minX = otherColumn[j].bounds.getMinX(); 
-                    maxX = otherColumn[j].bounds.getMaxX(); 
-                    double minY = otherColumn[j].bounds.getMinY(), maxY = otherColumn[j].bounds.getMaxY(); 
-                    for(; j < otherColumn.length; j++) {
-                        handleLeaf(otherColumn[j], leftOver, escalatedObjects, curLayerZoomLevel);
-                        if(otherColumn[j].bounds.getMinX() < minX) { minX = otherColumn[j].bounds.getMinX(); }
-                        if(otherColumn[j].bounds.getMinY() < minY) { minY = otherColumn[j].bounds.getMinY(); }
-                        if(otherColumn[j].bounds.getMaxX() > maxX) { maxX = otherColumn[j].bounds.getMaxX(); }
-                        if(otherColumn[j].bounds.getMaxY() > maxY) { maxY = otherColumn[j].bounds.getMaxY(); }
-                    }
-                    newCol.add(new RTree(leftOver.toArray(new RTree[0]), new SerializableRectangle2D(minX, minY, maxX - minX, maxY - minY), escalatedObjects));
-                }
-                newLayer.add(newCol.toArray(new RTree[0]));
-            }
+            // the next "layer"/"level" of the tree that we are going to construct, every pair of columns becomes one column
+            RTree[][] newLayer = new RTree[(activeLayer.length + 1) / 2][];
+            RTree[][] layer = activeLayer;
+            double layerZoomLevel = curLayerZoomLevel;
+            pool.invoke(new RangeTask(0, activeLayer.length / 2, pair -> 
+                newLayer[pair] = mergeColumns(layer[2 * pair], layer[2 * pair + 1], layerZoomLevel)));
 
             if(activeLayer.length % 2 != 0 ) { // if activeLayer isn't divisible by 2, the last column wasn't combined with anyone
-                newLayer.add(activeLayer[i - 1]); // so we just add it straight ahead
+                newLayer[newLayer.length - 1] = activeLayer[activeLayer.length - 1]; // so we just add it straight ahead
             }
-
-            activeLayer = newLayer.toArray(new RTree[0][0]); 
+            activeLayer = newLayer; 
             curLayerZoomLevel += zoomDiffPerLevel; 
         }
         // now we just have a single column, and can just make that the children of root
@@ -209,7 +117,188 @@ public class RTree implements Serializable{
             afterEverythingTotalObjects += this.children[i].recursiveSetParent(this);
         }
         this.zoomLevel = 1;
-        objects = null; 
+    }
+
+    /**
+     * Sorts the given list like List.sort would, but with Arrays.parallelSort. Both are stable, so the result is the same.
+     * When called from inside a pool, the sort runs on that pool. 
+     * @param list the list to sort
+     * @param comparator the comparator to sort by
+     */
+    private static void parallelSort(List<MapObject> list, Comparator<MapObject> comparator) {
+        MapObject[] sorted = list.toArray(new MapObject[0]);
+        Arrays.parallelSort(sorted, comparator);
+        ListIterator<MapObject> it = list.listIterator();
+        for(MapObject object : sorted) {
+            it.next();
+            it.set(object);
+        }
+    }
+
+    /**
+     * Sorts a single column by maxY and subdivides it into leafs of size <=objPerSquare.
+     * The extremes of the column are written to index i of the given arrays, so they can be combined once all the columns are done. 
+     * @param subList the objects of the column, a part of the list sorted by maxX
+     * @param iterations the maximum amount of leafs in the column
+     * @param i the index of the column
+     * @param colMinX the array to write the smallest minX of the column's leafs to
+     * @param colMinY the array to write the smallest minY of the column's leafs to
+     * @param colMaxY the array to write the largest maxY of the column's leafs to
+     * @param colMaxX the array to write the maxX of the last leaf of the column to
+     * @return the leafs of the column, sorted by maxY
+     */
+    private static RTree[] buildColumn(List<MapObject> subList, int iterations, int i, double[] colMinX, double[] colMinY, double[] colMaxY, double[] colMaxX) {
+        subList.sort(new MapObjectComparator(false));
+
+        double absMinX = Double.POSITIVE_INFINITY, absMinY = Double.POSITIVE_INFINITY, absMaxY = Double.NEGATIVE_INFINITY; 
+        double minX = 0, maxX = 0;
+        
+        // Loop over the column we just created and subdivide it into leafs. The column is sorted by maxY
+        // These leafs have the size of <=objPerSquare.  
+        int amtYIt = Math.min(iterations, subList.size() / objPerSquare + 1);
+        RTree[] newColumn = new RTree[amtYIt]; 
+        for(int k = 0; k < amtYIt; k += 1) {
+            int y = k * objPerSquare; 
+            int yEnd = Math.min(subList.size(), y + objPerSquare);
+            List<MapObject> subSubList = subList.subList(y, yEnd); // the list representing this column
+
+            // we know exactly what maxY is since the sublist is sorted by it 
+            double maxY = subSubList.get(subSubList.size() - 1).getBounds().getMaxY();
+
+            // we cant really say anything about what minX, minY and maxX are in this particular subSubList, so we need to run through and find them
+            double minY = subSubList.get(0).getBounds().getMinY();
+            minX = subSubList.get(0).getBounds().getMinX();
+            maxX = subSubList.get(0).getBounds().getMaxX();
+            for(int j = 1; j < subSubList.size(); j++) {
+                if(subSubList.get(j).getBounds().getMinY() < minY) { minY = subSubList.get(j).getBounds().getMinY(); }
+                if(subSubList.get(j).getBounds().getMinX() < minX) { minX = subSubList.get(j).getBounds().getMinX(); }
+                if(subSubList.get(j).getBounds().getMaxX() > maxX) { maxX = subSubList.get(j).getBounds().getMaxX(); }
+            }
+
+            if(minY < absMinY) { absMinY = minY; } 
+            if(maxY > absMaxY) { absMaxY = maxY; }
+            if(minX < absMinX) { absMinX = minX; }
+
+            // create the new leaf, with the particular bounds we know are true for this set of objects, and the objects 
+            newColumn[k] = new RTree(minX, maxX, minY, maxY, subSubList);
+        }
+        colMinX[i] = absMinX;
+        colMinY[i] = absMinY;
+        colMaxY[i] = absMaxY;
+        colMaxX[i] = maxX;
+        return newColumn;
+    }
+
+    /**
+     * Combines two neighbouring columns of a layer into a single column of the next layer. 
+     * Only touches the nodes of the two columns, so pairs of columns can be merged at the same time.
+     * @param left the left column
+     * @param right the right column
+     * @param curLayerZoomLevel the zoom cutoff of the layer that is being constructed, see handleLeaf
+     * @return the combined column
+     */
+    private static RTree[] mergeColumns(RTree[] left, RTree[] right, double curLayerZoomLevel) {
+        RTree[] minColumn; // column with the lowest amount of rows, equivalently the one with the tallest rows
+        RTree[] otherColumn; // and the other columns
+        
+        // set the arrays to the appropiate columns 
+        if(right.length < left.length) { 
+            minColumn = right; 
+            otherColumn = left; 
+        } else {
+            minColumn = left; 
+            otherColumn = right; 
+        }
+
+        int j = 0; // how far column "B" we are, need to remember this independently of the minColumn loop 
+        List<RTree> newCol = new ArrayList<>();  // the new column of combined rows
+
+        // here we loop over the minColumn and combine the rows by combining each row of the minColumn with all the rows from j to the one with the smallest 
+        // difference in maxY coordinate This works since we know both columns are sorted by maxY.  
+        for (RTree rTree : minColumn) {
+            // we initialize minDiff to the maximum difference between any two rows,
+            double minDiff = Math.max(Math.abs(otherColumn[otherColumn.length - 1].bounds.getMaxY() - minColumn[0].bounds.getMinY())
+                    , Math.abs(minColumn[minColumn.length - 1].bounds.getMaxY() - otherColumn[0].bounds.getMinY()));
+
+
+            List<MapObject> escalatedObjects = new ArrayList<>(); // the objects that have a higher zoom level, that we add to the new layer we create
+
+            List<RTree> newLeaf = new ArrayList<>(); // the new column we will construct
+            handleLeaf(rTree, newLeaf, escalatedObjects, curLayerZoomLevel);
+            // grab some preliminary bounds, if any of them are inaccurate they will be corrected
+            double minY = rTree.bounds.getMinY();
+            double maxY = rTree.bounds.getMaxY();
+            double minX = rTree.bounds.getMinX();
+            double maxX = rTree.bounds.getMaxX();
+
+            // now we run the parallel loop over otherColumn, from j to whichever row is the closest, in terms of maxY
+            for (; j < otherColumn.length; j++) {
+                double diff = Math.abs(rTree.bounds.getMaxY() - otherColumn[j].bounds.getMaxY());
+                if (minDiff >= diff) {
+                    minDiff = diff;
+                    handleLeaf(otherColumn[j], newLeaf, escalatedObjects, curLayerZoomLevel);
+                    if (otherColumn[j].bounds.getMaxY() > maxY) {
+                        maxY = otherColumn[j].bounds.getMaxY();
+                    }
+                    if (otherColumn[j].bounds.getMinY() < minY) {
+                        minY = otherColumn[j].bounds.getMinY();
+                    }
+                    if (otherColumn[j].bounds.getMinX() < minX) {
+                        minX = otherColumn[j].bounds.getMinX();
+                    }
+                    if (otherColumn[j].bounds.getMaxX() > maxX) {
+                        maxX = otherColumn[j].bounds.getMaxX();
+                    }
+                    continue;
+                }
+                break; // we might not get all of otherColumn's children into newCol, so we'll need to handle that
+            }
+            newCol.add(new RTree(newLeaf.toArray(new RTree[0]), new SerializableRectangle2D(minX, minY, maxX - minX, maxY - minY), escalatedObjects));
+        }
+
+        if(j < otherColumn.length) { // iff we didn't combine all the elements of otherColumn. 
+            // we just add all the remaining columns in one new leaf.
+            List<MapObject> escalatedObjects = new ArrayList<>(); // obviously need another container for all the leftover objects
+
+            List<RTree> leftOver = new ArrayList<>(); 
+            double minX = otherColumn[j].bounds.getMinX(); 
+            double maxX = otherColumn[j].bounds.getMaxX(); 
+            double minY = otherColumn[j].bounds.getMinY(), maxY = otherColumn[j].bounds.getMaxY(); 
+            for(; j < otherColumn.length; j++) {
+                handleLeaf(otherColumn[j], leftOver, escalatedObjects, curLayerZoomLevel);
+                if(otherColumn[j].bounds.getMinX() < minX) { minX = otherColumn[j].bounds.getMinX(); }
+                if(otherColumn[j].bounds.getMinY() < minY) { minY = otherColumn[j].bounds.getMinY(); }
+                if(otherColumn[j].bounds.getMaxX() > maxX) { maxX = otherColumn[j].bounds.getMaxX(); }
+                if(otherColumn[j].bounds.getMaxY() > maxY) { maxY = otherColumn[j].bounds.getMaxY(); }
+            }
+            newCol.add(new RTree(leftOver.toArray(new RTree[0]), new SerializableRectangle2D(minX, minY, maxX - minX, maxY - minY), escalatedObjects));
+        }
+        return newCol.toArray(new RTree[0]);
+    }
+
+    /**
+     * Runs the given body for every index in [lo, hi), splitting the range in halves until every index has its own task.
+     * Used for the columns and the merge layers during construction, where every index writes to its own slot. 
+     */
+    private static class RangeTask extends RecursiveAction {
+        private final int lo, hi;
+        private final IntConsumer body;
+
+        RangeTask(int lo, int hi, IntConsumer body) {
+            this.lo = lo;
+            this.hi = hi;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if(hi - lo <= 1) {
+                if(hi > lo) { body.accept(lo); }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new RangeTask(lo, mid, body), new RangeTask(mid, hi, body));
+        }
     }
 
     /**
@@ -424,6 +513,122 @@ public class RTree implements Serializable{
         }
     }
 
+    /**
+     * Like getObjectsInSquare, but where getObjectsInSquare adds every object of a visible node, this only adds the objects whose own bounds 
+     * intersect the view. That makes the result depend only on the view and the zoomlevel, and not on how the objects happen to be grouped 
+     * into nodes, which is what lets a ViewportQuery update it incrementally. 
+     * @param view the view against which to check the nodes and objects bounds
+     * @param objects the collection to which the visible objects will be added
+     * @param zoomLvl the zoomlevel to compare with the nodes zoomlevels, same as for getObjectsInSquare
+     */
+    public void getObjectsIntersecting(SerializableRectangle2D view, Collection<MapObject> objects, double zoomLvl) {
+        if(!inBounds(view) || zoomLvl > zoomLevel) { return; }
+
+        if(data != null) {
+            for(MapObject object : data) {
+                if(view.intersects(object.getBounds())) { objects.add(object); }
+            }
+        }
+
+        if(children == null) { return; }
+
+        for(RTree child : children) {
+            child.getObjectsIntersecting(view, objects, zoomLvl);
+        }
+    }
+
+    /**
+     * Gives every object that is accepted by the filter and has some part within the given distance of the point to the consumer, 
+     * like "all buildings within 300 m of this point". The nodes and objects are pruned by their bounds, and the remaining objects 
+     * are tested exactly on their coordinates, see MapObject.isWithinDistance. Zoom levels are ignored, every object is considered.
+     * Runs on the common ForkJoinPool, see {@link #forEachIntersecting(SerializableRectangle2D, Predicate, Consumer, ForkJoinPool)}.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param distance the distance in map coordinates, Geometry.metersToMapUnits converts from meters
+     * @param filter a cheap test run before the exact geometry, like checking the type of the object
+     * @param consumer is given the objects as they are found. Might be called from several threads at once
+     */
+    public void forEachWithinDistance(double x, double y, double distance, Predicate<? super MapObject> filter, Consumer<? super MapObject> consumer) {
+        SerializableRectangle2D region = new SerializableRectangle2D(x - distance, y - distance, 2 * distance, 2 * distance);
+        forEachIntersecting(region, object -> filter.test(object) && object.isWithinDistance(x, y, distance), consumer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Gives every object that is accepted by the filter and intersects the polygon to the consumer, like "all highways intersecting this polygon".
+     * Like forEachWithinDistance the objects are tested exactly, see MapObject.intersectsPolygon, and zoom levels are ignored.
+     * @param polygon the points of the polygon, interleaved like MapObject.coordinates. It's closed implicitly
+     * @param filter a cheap test run before the exact geometry, like checking the type of the object
+     * @param consumer is given the objects as they are found. Might be called from several threads at once
+     */
+    public void forEachIntersectingPolygon(double[] polygon, Predicate<? super MapObject> filter, Consumer<? super MapObject> consumer) {
+        forEachIntersecting(Geometry.bounds(polygon), object -> filter.test(object) && object.intersectsPolygon(polygon), consumer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * The range query that the other forEach methods are built on. Walks the tree from this node, skipping any node and object whose bounds 
+     * don't intersect the region, and gives the remaining objects that pass the test to the consumer, without collecting them anywhere. 
+     * The first levels of the tree fork a task for every child that intersects the region, so a large region is searched in parallel, while 
+     * a small region usually only intersects one child per level and stays on a single thread.
+     * @param region the bounds of the region, used for pruning
+     * @param test the test an object within the region has to pass
+     * @param consumer is given the objects that pass the test. Might be called from several threads at once
+     * @param pool the pool to run the query on
+     */
+    public void forEachIntersecting(SerializableRectangle2D region, Predicate<? super MapObject> test, Consumer<? super MapObject> consumer, ForkJoinPool pool) {
+        pool.invoke(new RangeQueryTask(this, region, test, consumer, 0));
+    }
+
+    /**
+     * A task searching a single subtree for forEachIntersecting. The node itself is assumed to intersect the region, 
+     * which also means that the root, whose bounds aren't exact, is never pruned.
+     */
+    private static class RangeQueryTask extends RecursiveAction {
+        private static final int parallelDepth = 3; // below this depth the subtrees are searched on the current thread
+        private final RTree node;
+        private final SerializableRectangle2D region;
+        private final Predicate<? super MapObject> test;
+        private final Consumer<? super MapObject> consumer;
+        private final int depth;
+
+        RangeQueryTask(RTree node, SerializableRectangle2D region, Predicate<? super MapObject> test, Consumer<? super MapObject> consumer, int depth) {
+            this.node = node;
+            this.region = region;
+            this.test = test;
+            this.consumer = consumer;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if(depth >= parallelDepth) {
+                search(node);
+                return;
+            }
+            acceptObjects(node);
+            if(node.children == null) { return; }
+            List<RangeQueryTask> tasks = new ArrayList<>();
+            for(RTree child : node.children) {
+                if(region.intersects(child.bounds)) { tasks.add(new RangeQueryTask(child, region, test, consumer, depth + 1)); }
+            }
+            invokeAll(tasks);
+        }
+
+        private void search(RTree node) {
+            acceptObjects(node);
+            if(node.children == null) { return; }
+            for(RTree child : node.children) {
+                if(region.intersects(child.bounds)) { search(child); }
+            }
+        }
+
+        private void acceptObjects(RTree node) {
+            if(node.data == null) { return; }
+            for(MapObject object : node.data) {
+                if(region.intersects(object.getBounds()) && test.test(object)) { consumer.accept(object); }
+            }
+        }
+    }
+
     /**
      * Returns a list of MapObjects.
      * @return the list of MapObjects
@@ -601,20 +806,20 @@ public class RTree implements Serializable{
      * @param view the view to check the nodes bounds against 
      * @param zoomLvl the zoomlevel to compare with the nodes 
      */
-    public void debugOutline(GraphicsContext gc, SerializableRectangle2D view, double zoomLvl) {
+    public void debugOutline(MapRenderer renderer, SerializableRectangle2D view, double zoomLvl) {
         if(!inBounds(view) || zoomLvl > zoomLevel) { return; }
 
         if(data == null) {
-            gc.setStroke(Color.BLUE);
+            renderer.setStroke(debugBlue);
         } else {
-            gc.setStroke(Color.RED);
-            gc.strokeRect(bounds.getMinX(), bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
+            renderer.setStroke(debugRed);
+            renderer.strokeRect(bounds.getMinX(), bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
         }
         if(children == null) {
             return; 
         }
         for(RTree chud : children) {
-            chud.debugOutline(gc, view, zoomLvl);
+            chud.debugOutline(renderer, view, zoomLvl);
         }
     }
 }
@@ -1,7 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-
 import java.util.List;
 
 /**
@@ -22,23 +20,20 @@ public class Road extends MapObject {
     }
 
     /**
-     * Draws the road on the given graphics context gc.
+     * Draws the road with the given renderer, in its current stroke color.
      * If the road has less than 2 coordinates, the function is returned and nothing
      * is drawn.
      * 
-     * @param gc the graphics context on which to draw the road
+     * @param renderer the renderer with which to draw the road
      */
     @Override
-    public void draw(GraphicsContext gc) {
+    public void draw(MapRenderer renderer, boolean darkmode, Decimator decimator) {
         if (coordinates.length < 2) {
             return;
         }
-        gc.beginPath();
-        gc.moveTo(coordinates[0], coordinates[1]);
-        for (int i = 2; i < coordinates.length; i += 2) {
-            gc.lineTo(coordinates[i], coordinates[i + 1]);
-        }
-        gc.stroke();
+        renderer.beginPath();
+        addShape(renderer, decimator);
+        renderer.stroke();
     }
 
     /**
@@ -49,4 +49,13 @@ public class SerializableColor implements Serializable
     {
         return new Color(red, green, blue, alpha);
     }
+
+    /**
+     * @return the color packed into an int as ARGB, 8 bits per channel
+     */
+    public int getARGB()
+    {
+        return ((int) Math.round(alpha * 255) << 24) | ((int) Math.round(red * 255) << 16)
+                | ((int) Math.round(green * 255) << 8) | (int) Math.round(blue * 255);
+    }
 }
@@ -0,0 +1,356 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A small software rasteriser that draws into an int[] of ARGB pixels, so tiles can be rendered on any thread rather than
+ * only on the FX thread like with a GraphicsContext. It supports what the MapObjects need: polylines with a width, filled
+ * polygons and solid colors, with colors that aren't opaque blended onto what's already there. Nothing is antialiased.
+ * Coordinates and widths are given in map coordinates and transformed by a scale and a translation, like the Affine of
+ * the canvas. Being a MapRenderer, the MapObjects draw on it the same way they draw on a canvas.
+ * An instance is not thread safe, but every thread can have its own.
+ */
+public class SoftwareRasterizer implements MapRenderer {
+    private final int width, height;
+    private final int[] pixels;
+    private double scale = 1, translateX = 0, translateY = 0;
+    private int strokeColor = 0xFF000000, fillColor = 0xFF000000;
+    private int color; // the color of what is being drawn right now, either the stroke or the fill color
+    private double lineWidth = 1;
+    private double[] path = new double[64]; // the points of the current path, interleaved
+    private int pathSize; // the amount of doubles used in path
+    private int[] subpaths = new int[8]; // where in path every moveTo started a new line
+    private int subpathCount;
+    private double[] screen = new double[64]; // scratch buffer for points transformed to pixels
+    private double[] crossings = new double[16]; // scratch buffer for the scanline fill
+    private final double[] quad = new double[8]; // scratch buffer for a single thick segment
+    private final double[] clipP = new double[4], clipQ = new double[4]; // scratch buffers for clipping thin lines
+
+    /**
+     * @param width the width in pixels
+     * @param height the height in pixels
+     */
+    public SoftwareRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    /**
+     * Sets the transform from map coordinates to pixels, which is pixel = coordinate * scale + translate.
+     */
+    public void setTransform(double scale, double translateX, double translateY) {
+        this.scale = scale;
+        this.translateX = translateX;
+        this.translateY = translateY;
+    }
+
+    @Override
+    public double getScale() { return scale; }
+
+    /**
+     * Fills every pixel with the given color, without blending.
+     */
+    public void clear(int argb) {
+        Arrays.fill(pixels, argb);
+    }
+
+    /**
+     * Sets both the stroke and the fill color.
+     */
+    public void setColor(int argb) {
+        this.strokeColor = argb;
+        this.fillColor = argb;
+    }
+
+    @Override
+    public void setStroke(SerializableColor color) { this.strokeColor = color.getARGB(); }
+
+    @Override
+    public void setFill(SerializableColor color) { this.fillColor = color.getARGB(); }
+
+    /**
+     * @param lineWidth the width of lines in map coordinates
+     */
+    @Override
+    public void setLineWidth(double lineWidth) { this.lineWidth = lineWidth; }
+
+    @Override
+    public double getLineWidth() { return lineWidth; }
+
+    /**
+     * @return the pixels, row by row
+     */
+    public int[] getPixels() { return pixels; }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    @Override
+    public SerializableRectangle2D getView() {
+        return new SerializableRectangle2D(-translateX / scale, -translateY / scale, width / scale, height / scale);
+    }
+
+    /**
+     * Transforms n interleaved points, starting at the given offset, into the screen buffer.
+     */
+    private void toScreen(double[] coords, int offset, int n) {
+        if(screen.length < 2 * n) { screen = new double[Math.max(2 * n, 2 * screen.length)]; }
+        for(int i = 0; i < 2 * n; i += 2) {
+            screen[i] = coords[offset + i] * scale + translateX;
+            screen[i + 1] = coords[offset + i + 1] * scale + translateY;
+        }
+    }
+
+    /**
+     * Fills the polygon with the fill color, using the even-odd rule. The polygon is closed implicitly.
+     * @param coords the points of the polygon in map coordinates, interleaved like MapObject.coordinates
+     */
+    public void fillPolygon(double[] coords) {
+        int n = coords.length / 2;
+        if(n < 3) { return; }
+        toScreen(coords, 0, n);
+        color = fillColor;
+        scanFill(screen, n);
+    }
+
+    @Override
+    public void fillPolygon(double[] xs, double[] ys, int n) {
+        if(n < 3) { return; }
+        if(screen.length < 2 * n) { screen = new double[Math.max(2 * n, 2 * screen.length)]; }
+        for(int i = 0; i < n; i++) {
+            screen[2 * i] = xs[i] * scale + translateX;
+            screen[2 * i + 1] = ys[i] * scale + translateY;
+        }
+        color = fillColor;
+        scanFill(screen, n);
+    }
+
+    /**
+     * Strokes the line through the points with the stroke color and line width.
+     * @param coords the points of the line in map coordinates, interleaved like MapObject.coordinates
+     */
+    public void strokePolyline(double[] coords) {
+        strokePolyline(coords, 0, coords.length / 2);
+    }
+
+    /**
+     * Strokes the line through n interleaved points starting at the offset. Lines up to a pixel wide are drawn a pixel
+     * at a time, wider lines as a quad per segment with a disc at every joint, which gives round joins.
+     */
+    private void strokePolyline(double[] coords, int offset, int n) {
+        if(n < 2) { return; }
+        toScreen(coords, offset, n);
+        color = strokeColor;
+        double[] pts = screen;
+        double pixelWidth = lineWidth * scale;
+        if(pixelWidth <= 1) {
+            for(int i = 2; i < 2 * n; i += 2) {
+                drawThinLine(pts[i - 2], pts[i - 1], pts[i], pts[i + 1]);
+            }
+            return;
+        }
+        double half = pixelWidth / 2;
+        for(int i = 2; i < 2 * n; i += 2) {
+            double x0 = pts[i - 2], y0 = pts[i - 1], x1 = pts[i], y1 = pts[i + 1];
+            double length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+            if(length == 0) { continue; }
+            if(!overlapsRaster(Math.min(x0, x1) - half, Math.min(y0, y1) - half, Math.max(x0, x1) + half, Math.max(y0, y1) + half)) { continue; }
+            double nx = -(y1 - y0) / length * half, ny = (x1 - x0) / length * half; // the normal, half a line width long
+            quad[0] = x0 + nx; quad[1] = y0 + ny;
+            quad[2] = x1 + nx; quad[3] = y1 + ny;
+            quad[4] = x1 - nx; quad[5] = y1 - ny;
+            quad[6] = x0 - nx; quad[7] = y0 - ny;
+            scanFill(quad, 4);
+            if(i + 2 < 2 * n) { fillDisc(x1, y1, half); }
+        }
+    }
+
+    @Override
+    public void beginPath() {
+        pathSize = 0;
+        subpathCount = 0;
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        if(subpathCount == subpaths.length) { subpaths = Arrays.copyOf(subpaths, 2 * subpaths.length); }
+        subpaths[subpathCount++] = pathSize;
+        lineTo(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        if(subpathCount == 0) { // a line without a moveTo starts at its own point, like on a canvas
+            moveTo(x, y);
+            return;
+        }
+        if(pathSize + 2 > path.length) { path = Arrays.copyOf(path, 2 * path.length); }
+        path[pathSize++] = x;
+        path[pathSize++] = y;
+    }
+
+    @Override
+    public void stroke() {
+        for(int i = 0; i < subpathCount; i++) {
+            int from = subpaths[i], to = i + 1 < subpathCount ? subpaths[i + 1] : pathSize;
+            strokePolyline(path, from, (to - from) / 2);
+        }
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        beginPath();
+        moveTo(x1, y1);
+        lineTo(x2, y2);
+        stroke();
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double width, double height) {
+        beginPath();
+        moveTo(x, y);
+        lineTo(x + width, y);
+        lineTo(x + width, y + height);
+        lineTo(x, y + height);
+        lineTo(x, y);
+        stroke();
+    }
+
+    @Override
+    public void fillOval(double x, double y, double width, double height) {
+        double cx = (x + width / 2) * scale + translateX, cy = (y + height / 2) * scale + translateY;
+        double rx = width / 2 * scale, ry = height / 2 * scale;
+        if(rx <= 0 || ry <= 0 || !overlapsRaster(cx - rx, cy - ry, cx + rx, cy + ry)) { return; }
+        color = fillColor;
+        int fromRow = Math.max(0, (int) Math.ceil(cy - ry - 0.5)), toRow = Math.min(this.height - 1, (int) Math.floor(cy + ry - 0.5));
+        for(int row = fromRow; row <= toRow; row++) {
+            double dy = (row + 0.5 - cy) / ry;
+            double halfSpan = rx * Math.sqrt(Math.max(0, 1 - dy * dy));
+            fillSpan(row, (int) Math.ceil(cx - halfSpan - 0.5), (int) Math.ceil(cx + halfSpan - 0.5) - 1);
+        }
+    }
+
+    private boolean overlapsRaster(double minX, double minY, double maxX, double maxY) {
+        return maxX >= 0 && maxY >= 0 && minX <= width && minY <= height;
+    }
+
+    /**
+     * Scanline fill of a polygon in pixel coordinates. Every row is sampled at the center of its pixels, and the points where
+     * the edges cross that line are sorted, between every other pair of crossings is inside.
+     */
+    private void scanFill(double[] pts, int n) {
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < 2 * n; i += 2) {
+            minX = Math.min(minX, pts[i]);
+            maxX = Math.max(maxX, pts[i]);
+            minY = Math.min(minY, pts[i + 1]);
+            maxY = Math.max(maxY, pts[i + 1]);
+        }
+        if(!overlapsRaster(minX, minY, maxX, maxY)) { return; }
+        if(crossings.length < n) { crossings = new double[Math.max(n, 2 * crossings.length)]; }
+        int fromRow = Math.max(0, (int) Math.ceil(minY - 0.5)), toRow = Math.min(height - 1, (int) Math.floor(maxY - 0.5));
+        for(int y = fromRow; y <= toRow; y++) {
+            double sy = y + 0.5;
+            int count = 0;
+            for(int i = 0, j = n - 1; i < n; j = i++) {
+                double yi = pts[2 * i + 1], yj = pts[2 * j + 1];
+                if((yi <= sy) != (yj <= sy)) {
+                    double xi = pts[2 * i], xj = pts[2 * j];
+                    crossings[count++] = xi + (sy - yi) * (xj - xi) / (yj - yi);
+                }
+            }
+            // insertion sort, there are only a few crossings per row
+            for(int k = 1; k < count; k++) {
+                double c = crossings[k];
+                int m = k - 1;
+                while(m >= 0 && crossings[m] > c) { crossings[m + 1] = crossings[m]; m--; }
+                crossings[m + 1] = c;
+            }
+            for(int k = 0; k + 1 < count; k += 2) {
+                fillSpan(y, (int) Math.ceil(crossings[k] - 0.5), (int) Math.ceil(crossings[k + 1] - 0.5) - 1);
+            }
+        }
+    }
+
+    /**
+     * Fills a disc of the given radius around the point, in pixel coordinates.
+     */
+    private void fillDisc(double cx, double cy, double radius) {
+        if(!overlapsRaster(cx - radius, cy - radius, cx + radius, cy + radius)) { return; }
+        int fromRow = Math.max(0, (int) Math.ceil(cy - radius - 0.5)), toRow = Math.min(height - 1, (int) Math.floor(cy + radius - 0.5));
+        for(int y = fromRow; y <= toRow; y++) {
+            double dy = y + 0.5 - cy;
+            double halfSpan = Math.sqrt(Math.max(0, radius * radius - dy * dy));
+            fillSpan(y, (int) Math.ceil(cx - halfSpan - 0.5), (int) Math.ceil(cx + halfSpan - 0.5) - 1);
+        }
+    }
+
+    /**
+     * A line one pixel wide, stepping one pixel at a time along the longest axis. The line is first clipped to the raster,
+     * so a segment running far outside of it doesn't cost anything.
+     */
+    private void drawThinLine(double x0, double y0, double x1, double y1) {
+        // Liang-Barsky clipping against the raster, with a pixel to spare
+        double t0 = 0, t1 = 1, dx = x1 - x0, dy = y1 - y0;
+        double[] p = clipP, q = clipQ;
+        p[0] = -dx; p[1] = dx; p[2] = -dy; p[3] = dy;
+        q[0] = x0 + 1; q[1] = width + 1 - x0; q[2] = y0 + 1; q[3] = height + 1 - y0;
+        for(int i = 0; i < 4; i++) {
+            if(p[i] == 0) {
+                if(q[i] < 0) { return; }
+            } else {
+                double t = q[i] / p[i];
+                if(p[i] < 0) { t0 = Math.max(t0, t); } else { t1 = Math.min(t1, t); }
+            }
+        }
+        if(t0 > t1) { return; }
+        double sx = x0 + t0 * dx, sy = y0 + t0 * dy;
+        double ex = x0 + t1 * dx, ey = y0 + t1 * dy;
+        int steps = (int) Math.ceil(Math.max(Math.abs(ex - sx), Math.abs(ey - sy)));
+        if(steps == 0) {
+            plot((int) Math.floor(sx), (int) Math.floor(sy));
+            return;
+        }
+        double stepX = (ex - sx) / steps, stepY = (ey - sy) / steps;
+        for(int i = 0; i <= steps; i++) {
+            plot((int) Math.floor(sx + stepX * i), (int) Math.floor(sy + stepY * i));
+        }
+    }
+
+    private void plot(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height) { return; }
+        pixels[y * width + x] = blend(pixels[y * width + x]);
+    }
+
+    private void fillSpan(int y, int fromX, int toX) {
+        fromX = Math.max(0, fromX);
+        toX = Math.min(width - 1, toX);
+        if(fromX > toX) { return; }
+        int row = y * width;
+        if(color >>> 24 == 255) {
+            Arrays.fill(pixels, row + fromX, row + toX + 1, color);
+            return;
+        }
+        for(int x = fromX; x <= toX; x++) {
+            pixels[row + x] = blend(pixels[row + x]);
+        }
+    }
+
+    /**
+     * Puts the current color on top of the given pixel, source over.
+     */
+    private int blend(int dst) {
+        int alpha = color >>> 24;
+        if(alpha == 255) { return color; }
+        if(alpha == 0) { return dst; }
+        int inv = 255 - alpha;
+        int r = (((color >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inv) / 255;
+        int g = (((color >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inv) / 255;
+        int b = ((color & 0xFF) * alpha + (dst & 0xFF) * inv) / 255;
+        int a = alpha + ((dst >>> 24) * inv) / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,166 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws map objects grouped by their style instead of one at a time in the order the RTree gives them. Every group is
+ * the objects sharing a style key, so the renderer gets its color and line width set once per group rather than once
+ * per object, and all the lines of a group are stroked as a single path. The colors of the groups are only looked up
+ * again when the theme changes.
+ * The groups are drawn in layers: areas below lines, the large areas like forests before water and buildings, and the
+ * minor roads before the major ones so those end up on top.
+ * Zoomed out, objects smaller than a pixel are skipped and the points of the rest thinned out by a {@link Decimator}.
+ * An instance remembers its groups between frames and isn't thread safe, every thread drawing needs its own.
+ */
+public class StyleBatcher {
+    // keyed on identity, the style keys are the shared MapObjectInfo's or classes
+    private final Map<Object, Batch> batches = new IdentityHashMap<>();
+    private final List<Batch> layers = new ArrayList<>();
+    private final Decimator decimator = new Decimator();
+    private boolean darkmode;
+
+    private static final Comparator<Batch> layerOrder = (a, b) -> {
+        if (a.filled != b.filled) {
+            return a.filled ? -1 : 1;
+        }
+        // large areas are visible further out, lines the other way around
+        return a.filled ? Double.compare(b.zoomLevel, a.zoomLevel) : Double.compare(a.zoomLevel, b.zoomLevel);
+    };
+
+    /**
+     * The objects sharing a style, and that style.
+     */
+    private static class Batch {
+        final MapObject sample; // the colors are looked up on this one
+        final boolean filled;
+        final double zoomLevel, strokeWidth;
+        final List<MapObject> objects = new ArrayList<>();
+        SerializableColor color;
+
+        Batch(MapObject sample, boolean darkmode) {
+            this.sample = sample;
+            this.filled = sample.isFilled();
+            this.zoomLevel = sample.getZoomLevel();
+            this.strokeWidth = sample.getStrokeWidth();
+            this.color = sample.getColor(darkmode);
+        }
+    }
+
+    /**
+     * Draws the objects, with the line width of the renderer as the width of a normal line.
+     *
+     * @param renderer the renderer to draw with
+     * @param objects  the objects to draw, nulls are skipped
+     */
+    public void draw(MapRenderer renderer, Collection<MapObject> objects) {
+        draw(renderer, objects, GlobalConfig.getInstance().getOption(GlobalConfig.Options.DECIMATION),
+                GlobalConfig.getInstance().getOption(GlobalConfig.Options.TOGGLE_DARKMODE));
+    }
+
+    /**
+     * Draws the objects with the given options instead of the ones in GlobalConfig, which is only changed on the FX
+     * thread, so other threads get the options from it.
+     *
+     * @param renderer the renderer to draw with
+     * @param objects  the objects to draw, nulls are skipped
+     * @param decimate whether to skip tiny objects and thin out the points of the rest
+     * @param darkmode whether to draw in the colors of dark mode
+     */
+    public void draw(MapRenderer renderer, Collection<MapObject> objects, boolean decimate, boolean darkmode) {
+        checkTheme(darkmode);
+        // the scale is looked up once per frame, getting it from a canvas copies its transform
+        Decimator decimator = decimate ? this.decimator : null;
+        if (decimator != null) {
+            decimator.setScale(renderer.getScale());
+        }
+        for (MapObject object : objects) {
+            if (object == null || decimator != null && !decimator.isVisible(object)) {
+                continue;
+            }
+            Batch batch = batches.get(object.getStyleKey());
+            if (batch == null) {
+                batch = new Batch(object, darkmode);
+                batches.put(object.getStyleKey(), batch);
+                layers.add(batch);
+                layers.sort(layerOrder);
+            }
+            batch.objects.add(object);
+        }
+
+        double lineWidth = renderer.getLineWidth();
+        for (Batch batch : layers) {
+            if (batch.objects.isEmpty()) {
+                continue;
+            }
+            if (batch.filled) {
+                renderer.setFill(batch.color);
+                for (MapObject object : batch.objects) {
+                    object.addShape(renderer, decimator);
+                }
+            } else {
+                renderer.setStroke(batch.color);
+                renderer.setLineWidth(lineWidth * batch.strokeWidth);
+                renderer.beginPath();
+                for (MapObject object : batch.objects) {
+                    object.addShape(renderer, decimator);
+                }
+                renderer.stroke();
+            }
+            batch.objects.clear(); // so the objects aren't kept alive until the next frame
+        }
+        renderer.setLineWidth(lineWidth);
+    }
+
+    /**
+     * Draws the objects one at a time in the order they are given, each setting its own style, for when style
+     * batching is off. Tiny objects are still skipped and the points of the rest thinned out, the same as when they
+     * are grouped.
+     *
+     * @param renderer the renderer to draw with
+     * @param objects  the objects to draw, nulls are skipped
+     */
+    public void drawEach(MapRenderer renderer, Collection<MapObject> objects) {
+        drawEach(renderer, objects, GlobalConfig.getInstance().getOption(GlobalConfig.Options.DECIMATION),
+                GlobalConfig.getInstance().getOption(GlobalConfig.Options.TOGGLE_DARKMODE));
+    }
+
+    /**
+     * Like {@link #drawEach(MapRenderer, Collection)} with the given options instead of the ones in GlobalConfig.
+     */
+    public void drawEach(MapRenderer renderer, Collection<MapObject> objects, boolean decimate, boolean darkmode) {
+        Decimator decimator = decimate ? this.decimator : null;
+        if (decimator != null) {
+            decimator.setScale(renderer.getScale());
+        }
+        for (MapObject object : objects) {
+            if (object != null && (decimator == null || decimator.isVisible(object))) {
+                object.draw(renderer, darkmode, decimator);
+            }
+        }
+    }
+
+    /**
+     * Looks up the colors of all the groups again if the theme changed since the last frame.
+     */
+    private void checkTheme(boolean curDarkmode) {
+        if (curDarkmode == darkmode) {
+            return;
+        }
+        darkmode = curDarkmode;
+        for (Batch batch : layers) {
+            batch.color = batch.sample.getColor(curDarkmode);
+        }
+    }
+
+    /**
+     * @return the amount of different styles seen so far
+     */
+    public int getStyleCount() {
+        return layers.size();
+    }
+}
@@ -0,0 +1,334 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+import model.DataTypes.LRUCache;
+
+/**
+ * A pyramid of map tiles, which lets the map be drawn as a handful of images instead of redrawing every object.
+ * Every zoom level is twice the scale of the previous, and is cut into tiles of tileSize*tileSize pixels. A tile is
+ * rasterised the first time it is needed and kept in an LRU cache bounded by the amount of memory the images take up,
+ * so panning over an area that has already been seen is just a drawImage per tile.
+ * The tiles only contain the map objects, anything that changes often like the route is drawn on top by the MapDrawer.
+ * Tiles are either drawn on an offscreen canvas on the FX thread, or with the SOFTWARE_RASTER option rendered into int[] 
+ * buffers by a pool of worker threads and uploaded to images on the FX thread when they are done.
+ */
+public class TileCache {
+    public static final int tileSize = 256;
+    private static final double baseScale = 256; // pixels per map unit at level 0
+    public static final int maxLevel = 24; // any further and the tile coordinates could overflow the key
+    private static final double edgeMargin = 4; // pixels around the tile to include objects from, so wide lines on the edge aren't cut off
+    private static final long tileBytes = 4L * tileSize * tileSize;
+
+    private final RTree tree;
+    private final LRUCache<Long, WritableImage> tiles;
+    private Canvas tileCanvas;
+    private FXRenderer tileRenderer;
+    private final StyleBatcher tileBatcher = new StyleBatcher(); // only used on the FX thread, the workers make their own
+    private boolean darkmode;
+    private Color background;
+    private int backgroundARGB;
+    // the options the workers draw with, read on the FX thread when the tiles are requested
+    private boolean batching, decimation;
+    // the state of the worker threads, only changed on the FX thread
+    private ThreadPoolExecutor workers;
+    // the queued tiles, with the last frame that wanted them. The workers skip the ones no frame since has wanted
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private int generation;
+    private volatile long requestSequence;
+    private boolean redrawScheduled;
+    private Runnable onTileReady;
+
+    /**
+     * @param tree the tree to get the objects of a tile from
+     * @param capacityInBytes the maximum amount of memory the cached tiles may use
+     */
+    public TileCache(RTree tree, long capacityInBytes) {
+        this.tree = tree;
+        this.tiles = new LRUCache<>(capacityInBytes);
+    }
+
+    /**
+     * @param scale the scale of the view, in pixels per map unit
+     * @return the lowest level whose scale is at least the given, so tiles are only ever scaled down
+     */
+    public static int levelOf(double scale) {
+        int level = (int) Math.ceil(Math.log(scale / baseScale) / Math.log(2));
+        return Math.max(0, Math.min(maxLevel, level));
+    }
+
+    /**
+     * @return the scale of the given level, in pixels per map unit
+     */
+    public static double scaleOf(int level) {
+        return baseScale * Math.pow(2, level);
+    }
+
+    /**
+     * @return a key that is unique for every tile up to maxLevel
+     */
+    public static long key(int level, long tx, long ty) {
+        return ((long) level << 58) | ((tx & 0x1FFFFFFFL) << 29) | (ty & 0x1FFFFFFFL);
+    }
+
+    /**
+     * Draws the tiles covering the view, rasterising the ones that aren't cached yet.
+     * The tiles are drawn with the current transform of gc, so they line up with anything drawn on top afterwards.
+     * With the SOFTWARE_RASTER option, missing tiles are rendered on the worker threads instead, and until they arrive
+     * the part of a coarser cached tile covering them is drawn in their place. The tiles around the view are also
+     * queued, so they are usually ready by the time they are panned into view.
+     * @param gc the graphics context of the map, with the transform of the view
+     * @param view the part of the map that is visible, in map coordinates
+     */
+    public void draw(GraphicsContext gc, SerializableRectangle2D view) {
+        checkTheme();
+        boolean async = GlobalConfig.getInstance().getOption(GlobalConfig.Options.SOFTWARE_RASTER);
+        batching = GlobalConfig.getInstance().getOption(GlobalConfig.Options.STYLE_BATCHING);
+        decimation = GlobalConfig.getInstance().getOption(GlobalConfig.Options.DECIMATION);
+        int level = levelOf(Math.sqrt(gc.getTransform().determinant()));
+        double tileWorld = tileSize / scaleOf(level); // the size of a tile in map units
+        // the zoom level the objects are picked at, as if the whole canvas was showing this level
+        double zoomLvl = MapDrawer.zoomLevelOf(gc.getCanvas().getWidth() / scaleOf(level), gc.getCanvas().getHeight() / scaleOf(level));
+
+        long fromX = (long) Math.floor(view.getMinX() / tileWorld), toX = (long) Math.floor(view.getMaxX() / tileWorld);
+        long fromY = (long) Math.floor(view.getMinY() / tileWorld), toY = (long) Math.floor(view.getMaxY() / tileWorld);
+        requestSequence++;
+        for(long ty = fromY; ty <= toY; ty++) {
+            for(long tx = fromX; tx <= toX; tx++) {
+                long key = key(level, tx, ty);
+                WritableImage tile = tiles.get(key);
+                if(tile == null && async) {
+                    requestTile(level, tx, ty, zoomLvl, true);
+                    drawPlaceholder(gc, level, tx, ty);
+                    continue;
+                }
+                if(tile == null) {
+                    tile = renderTile(level, tx, ty, zoomLvl);
+                    tiles.put(key, tile, tileBytes);
+                }
+                gc.drawImage(tile, tx * tileWorld, ty * tileWorld, tileWorld, tileWorld);
+            }
+        }
+        if(!async) { return; }
+        // prefetch a ring of tiles around the view
+        for(long ty = fromY - 1; ty <= toY + 1; ty++) {
+            for(long tx = fromX - 1; tx <= toX + 1; tx++) {
+                if(ty >= fromY && ty <= toY && tx >= fromX && tx <= toX) { continue; }
+                if(tiles.get(key(level, tx, ty)) == null) { requestTile(level, tx, ty, zoomLvl, false); }
+            }
+        }
+    }
+
+    /**
+     * Draws the part of the closest coarser cached tile that covers the given tile, if there is one.
+     */
+    private void drawPlaceholder(GraphicsContext gc, int level, long tx, long ty) {
+        double tileWorld = tileSize / scaleOf(level);
+        for(int up = 1; up <= 3 && level - up >= 0; up++) {
+            long parentX = Math.floorDiv(tx, 1L << up), parentY = Math.floorDiv(ty, 1L << up);
+            WritableImage parent = tiles.get(key(level - up, parentX, parentY));
+            if(parent == null) { continue; }
+            double part = tileSize / (double) (1L << up); // the size of the tile in the pixels of the parent
+            gc.drawImage(parent, (tx - parentX * (1L << up)) * part, (ty - parentY * (1L << up)) * part, part, part,
+                    tx * tileWorld, ty * tileWorld, tileWorld, tileWorld);
+            return;
+        }
+    }
+
+    /**
+     * Queues a tile for the worker threads, unless it's already queued, in which case it's marked as still wanted.
+     * Visible tiles go before prefetched ones, and newer requests before older ones, so the queue follows the view.
+     */
+    private void requestTile(int level, long tx, long ty, double zoomLvl, boolean visible) {
+        long key = key(level, tx, ty);
+        if(pending.put(key, requestSequence) != null) { return; }
+        if(workers == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1); // leave a core for the FX thread
+            workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "tile-rasterizer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        workers.execute(new TileJob(key, level, tx, ty, zoomLvl, generation, backgroundARGB, batching, decimation, darkmode,
+                requestSequence * 2 + (visible ? 1 : 0)));
+    }
+
+    /**
+     * Renders a tile into an int[] of ARGB pixels with the software rasterizer. Only reads the tree and not the options,
+     * which are given instead, so it can run on any thread.
+     * @return the pixels of the tile, row by row
+     */
+    public int[] rasterizeTile(int level, long tx, long ty, double zoomLvl, int background, boolean batching, boolean decimation,
+            boolean darkmode) {
+        double scale = scaleOf(level);
+        double minX = tx * tileSize / scale, minY = ty * tileSize / scale;
+        SoftwareRasterizer raster = new SoftwareRasterizer(tileSize, tileSize);
+        raster.setTransform(scale, -minX * scale, -minY * scale);
+        raster.setLineWidth(1 / scale);
+        raster.clear(background);
+
+        double margin = edgeMargin / scale;
+        List<MapObject> objects = new ArrayList<>();
+        tree.getObjectsIntersecting(new SerializableRectangle2D(minX - margin, minY - margin, tileSize / scale + 2 * margin, tileSize / scale + 2 * margin), objects, zoomLvl);
+        drawObjects(raster, objects, new StyleBatcher(), batching, decimation, darkmode);
+        return raster.getPixels();
+    }
+
+    /**
+     * Draws the objects of a tile, grouped by style unless the STYLE_BATCHING option is off.
+     */
+    public static void drawObjects(MapRenderer renderer, List<MapObject> objects, StyleBatcher batcher) {
+        GlobalConfig config = GlobalConfig.getInstance();
+        drawObjects(renderer, objects, batcher, config.getOption(GlobalConfig.Options.STYLE_BATCHING),
+                config.getOption(GlobalConfig.Options.DECIMATION), config.getOption(GlobalConfig.Options.TOGGLE_DARKMODE));
+    }
+
+    /**
+     * Draws the objects of a tile with the given options instead of the ones in GlobalConfig, for the worker threads.
+     */
+    public static void drawObjects(MapRenderer renderer, List<MapObject> objects, StyleBatcher batcher, boolean batching,
+            boolean decimation, boolean darkmode) {
+        if(batching) {
+            batcher.draw(renderer, objects, decimation, darkmode);
+            return;
+        }
+        batcher.drawEach(renderer, objects, decimation, darkmode);
+    }
+
+    /**
+     * Uploads the pixels of a finished tile into an image and caches it, on the FX thread.
+     * Tiles rendered for an old theme are thrown away. A single redraw is scheduled for all the tiles arriving together.
+     */
+    private void upload(TileJob job, int[] pixels) {
+        pending.remove(job.key);
+        if(job.generation != generation) { return; }
+        WritableImage tile = new WritableImage(tileSize, tileSize);
+        tile.getPixelWriter().setPixels(0, 0, tileSize, tileSize, PixelFormat.getIntArgbInstance(), pixels, 0, tileSize);
+        tiles.put(job.key, tile, tileBytes);
+        if(onTileReady != null && !redrawScheduled) {
+            redrawScheduled = true;
+            Platform.runLater(() -> {
+                redrawScheduled = false;
+                onTileReady.run();
+            });
+        }
+    }
+
+    /**
+     * @param onTileReady is run on the FX thread when tiles rendered by the worker threads are ready to be drawn, typically a redraw
+     */
+    public void setOnTileReady(Runnable onTileReady) {
+        this.onTileReady = onTileReady;
+    }
+
+    /**
+     * A tile waiting to be rendered by the worker threads, with the options at the time it was requested. Ordered by
+     * priority, highest first.
+     */
+    private class TileJob implements Runnable, Comparable<TileJob> {
+        final long key, tx, ty, priority;
+        final int level, generation, background;
+        final double zoomLvl;
+        final boolean batching, decimation, darkmode;
+
+        TileJob(long key, int level, long tx, long ty, double zoomLvl, int generation, int background, boolean batching,
+                boolean decimation, boolean darkmode, long priority) {
+            this.key = key;
+            this.level = level;
+            this.tx = tx;
+            this.ty = ty;
+            this.zoomLvl = zoomLvl;
+            this.generation = generation;
+            this.background = background;
+            this.batching = batching;
+            this.decimation = decimation;
+            this.darkmode = darkmode;
+            this.priority = priority;
+        }
+
+        /**
+         * Renders the tile, unless the view has moved on since the last frame that wanted it, like when zooming
+         * through levels, in which case it's dropped. If it's wanted again it is queued anew.
+         */
+        @Override
+        public void run() {
+            Long wanted = pending.get(key);
+            if(wanted == null) { return; } // thrown away by clear()
+            // only dropped if no frame wanted it in the meantime, otherwise it's rendered after all
+            if(wanted < requestSequence && pending.remove(key, wanted)) { return; }
+            int[] pixels = rasterizeTile(level, tx, ty, zoomLvl, background, batching, decimation, darkmode);
+            Platform.runLater(() -> upload(this, pixels));
+        }
+
+        @Override
+        public int compareTo(TileJob other) {
+            return Long.compare(other.priority, priority);
+        }
+    }
+
+    /**
+     * Rasterises a single tile by drawing its objects on an offscreen canvas and taking a snapshot of it.
+     * Has to run on the FX thread, like all other drawing on a canvas.
+     */
+    private WritableImage renderTile(int level, long tx, long ty, double zoomLvl) {
+        if(tileCanvas == null) { tileCanvas = new Canvas(tileSize, tileSize); }
+        double scale = scaleOf(level);
+        double minX = tx * tileSize / scale, minY = ty * tileSize / scale;
+
+        GraphicsContext tgc = tileCanvas.getGraphicsContext2D();
+        tgc.setTransform(new Affine());
+        tgc.setFill(background);
+        tgc.fillRect(0, 0, tileSize, tileSize);
+        tgc.setTransform(new Affine(scale, 0, -minX * scale, 0, scale, -minY * scale));
+        tgc.setLineWidth(1 / scale);
+        tgc.setStroke(Color.BLACK);
+        if(tileRenderer == null) { tileRenderer = new FXRenderer(tgc); }
+
+        double margin = edgeMargin / scale;
+        List<MapObject> objects = new ArrayList<>();
+        tree.getObjectsIntersecting(new SerializableRectangle2D(minX - margin, minY - margin, tileSize / scale + 2 * margin, tileSize / scale + 2 * margin), objects, zoomLvl);
+        drawObjects(tileRenderer, objects, tileBatcher);
+        return tileCanvas.snapshot(null, new WritableImage(tileSize, tileSize));
+    }
+
+    /**
+     * The colors of the tiles depend on the theme, so all the tiles are thrown away when it changes.
+     */
+    private void checkTheme() {
+        boolean curDarkmode = GlobalConfig.getInstance().getOption(GlobalConfig.Options.TOGGLE_DARKMODE);
+        Color curBackground = GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND);
+        if(curDarkmode != darkmode || !curBackground.equals(background)) {
+            clear();
+            darkmode = curDarkmode;
+            background = curBackground;
+            backgroundARGB = new SerializableColor(curBackground).getARGB();
+        }
+    }
+
+    /**
+     * Throws away all the tiles, for when the objects they show change.
+     */
+    public void clear() {
+        tiles.clear();
+        generation++; // any tile being rendered now is outdated
+        pending.clear();
+        if(workers != null) { workers.getQueue().clear(); }
+    }
+
+    public LRUCache<Long, WritableImage> getTiles() {
+        return tiles;
+    }
+}
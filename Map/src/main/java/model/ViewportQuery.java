@@ -0,0 +1,125 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A viewport query session on an RTree. It remembers the last view and zoom level it was queried with, and the objects that were visible
+ * in it. When the next view is just a pan of the last one, with the same zoom level, most of the visible objects stay the same, so
+ * instead of querying the whole view again it only queries the strips that entered and left the view, and updates the visible set from those.
+ * <P>
+ * An object is visible if its own bounds intersect the view and its node passes the zoom level check, see RTree.getObjectsIntersecting.
+ * Since an object that enters the view must intersect the part of the new view that is outside the old one, and an object that
+ * leaves must intersect the part of the old view that is outside the new one, querying those strips is enough to keep the set exact.
+ */
+public class ViewportQuery {
+    private final RTree tree;
+    private final Set<MapObject> visible;
+    private final Collection<MapObject> visibleView;
+    private final List<MapObject> candidates;
+    private SerializableRectangle2D lastView;
+    private double lastZoomLvl;
+    // if the new view overlaps less than this fraction of the old one, the strips cover most of the view anyway, so just query all of it
+    private static final double minOverlapForIncremental = 0.5;
+
+    /**
+     * Creates a new session, which will do a full query the first time it's used
+     * 
+     * @param tree the tree to query
+     */
+    public ViewportQuery(RTree tree) {
+        this.tree = tree;
+        this.visible = new LinkedHashSet<>();
+        this.visibleView = Collections.unmodifiableCollection(visible);
+        this.candidates = new ArrayList<>();
+        this.lastView = null;
+    }
+
+    /**
+     * Finds the objects that are visible in the given view at the given zoom level, reusing the result of the last query if possible.
+     * 
+     * @param view    the view in map coordinates
+     * @param zoomLvl the zoom level, as used by RTree.getObjectsInSquare
+     * @return the visible objects. This is a read only view of the sessions internal set, so it changes on the next query
+     */
+    public Collection<MapObject> query(SerializableRectangle2D view, double zoomLvl) {
+        if (lastView == null || zoomLvl != lastZoomLvl || overlap(view, lastView) < minOverlapForIncremental * area(view)) {
+            visible.clear();
+            tree.getObjectsIntersecting(view, visible, zoomLvl);
+        } else {
+            // objects in the strips that left the view are removed, unless they still reach into the new view
+            for (SerializableRectangle2D strip : difference(lastView, view)) {
+                tree.getObjectsIntersecting(strip, candidates, zoomLvl);
+            }
+            for (MapObject object : candidates) {
+                if (!view.intersects(object.getBounds())) {
+                    visible.remove(object);
+                }
+            }
+            candidates.clear();
+
+            // and everything in the strips that entered the view is added, the set takes care of duplicates
+            for (SerializableRectangle2D strip : difference(view, lastView)) {
+                tree.getObjectsIntersecting(strip, candidates, zoomLvl);
+            }
+            visible.addAll(candidates);
+            candidates.clear();
+        }
+        lastView = view;
+        lastZoomLvl = zoomLvl;
+        return visibleView;
+    }
+
+    /**
+     * Forgets the last view, so the next query will be a full one
+     */
+    public void reset() {
+        lastView = null;
+        visible.clear();
+    }
+
+    /**
+     * Splits the part of rectangle a that is outside of rectangle b into at most 4 rectangles; a band above b, a band below b,
+     * and the parts to the left and right of b inbetween those bands.
+     * 
+     * @param a the rectangle to subtract from
+     * @param b the rectangle to subtract
+     * @return the rectangles that together cover a minus b
+     */
+    static List<SerializableRectangle2D> difference(SerializableRectangle2D a, SerializableRectangle2D b) {
+        List<SerializableRectangle2D> strips = new ArrayList<>(4);
+        if (!a.intersects(b)) {
+            strips.add(a);
+            return strips;
+        }
+        double midMinY = Math.max(a.getMinY(), b.getMinY());
+        double midMaxY = Math.min(a.getMaxY(), b.getMaxY());
+        if (a.getMinY() < b.getMinY()) {
+            strips.add(new SerializableRectangle2D(a.getMinX(), a.getMinY(), a.getWidth(), b.getMinY() - a.getMinY()));
+        }
+        if (a.getMaxY() > b.getMaxY()) {
+            strips.add(new SerializableRectangle2D(a.getMinX(), b.getMaxY(), a.getWidth(), a.getMaxY() - b.getMaxY()));
+        }
+        if (a.getMinX() < b.getMinX()) {
+            strips.add(new SerializableRectangle2D(a.getMinX(), midMinY, b.getMinX() - a.getMinX(), midMaxY - midMinY));
+        }
+        if (a.getMaxX() > b.getMaxX()) {
+            strips.add(new SerializableRectangle2D(b.getMaxX(), midMinY, a.getMaxX() - b.getMaxX(), midMaxY - midMinY));
+        }
+        return strips;
+    }
+
+    private static double overlap(SerializableRectangle2D a, SerializableRectangle2D b) {
+        double w = Math.min(a.getMaxX(), b.getMaxX()) - Math.max(a.getMinX(), b.getMinX());
+        double h = Math.min(a.getMaxY(), b.getMaxY()) - Math.max(a.getMinY(), b.getMinY());
+        return w <= 0 || h <= 0 ? 0 : w * h;
+    }
+
+    private static double area(SerializableRectangle2D r) {
+        return r.getWidth() * r.getHeight();
+    }
+}
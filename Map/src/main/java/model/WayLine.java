@@ -1,7 +1,5 @@
 package model;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
 import java.util.List;
 
 /**
@@ -24,22 +22,17 @@ public class WayLine extends MapObject {
     /**
      * Draw method for drawing the wayline
      * 
-     * @param gc the graphic contect to draw on
+     * @param renderer the renderer to draw with
      */
     @Override
-    public void draw(GraphicsContext gc) {
+    public void draw(MapRenderer renderer, boolean darkmode, Decimator decimator) {
         if (coordinates.length < 2) {
             return;
         }
-        gc.beginPath();
-        gc.moveTo(coordinates[0], coordinates[1]);
-        // System.out.println("Drawing @ (" + coordinates[0] + ", " + coordinates[1] +
-        // ")");
-        for (int i = 2; i < coordinates.length; i += 2) {
-            gc.lineTo(coordinates[i], coordinates[i + 1]);
-        }
-        gc.setStroke(Color.BLACK);
-        gc.stroke();
+        renderer.beginPath();
+        addShape(renderer, decimator);
+        renderer.setStroke(black);
+        renderer.stroke();
     }
 
     /**
@@ -2,6 +2,8 @@ module view {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.xml;
+    requires java.desktop;
+    requires jdk.httpserver;
 
 
     opens view to javafx.fxml;
@@ -6,6 +6,7 @@ import java.util.List;
 
 import controller.KeyboardInputController;
 import controller.PanZoomController;
+import controller.SearchController;
 import javafx.application.Application;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
@@ -149,6 +150,7 @@ public class App extends Application {
 
         PanZoomController con = new PanZoomController(mapView, graph);
         KeyboardInputController kbCon = new KeyboardInputController(canvas, uiView, mapView);
+        SearchController searchCon = new SearchController(uiView, mapView, addressRegistry);
         Benchmarking.endTime();
     }
 }
@@ -4,14 +4,25 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import model.AStar;
+import model.Address;
+import model.AddressRegistry;
 import model.Dijkstra;
 import model.FileLoader;
+import model.GlobalConfig;
 import model.Graph;
+import model.Java2DRenderer;
+import model.MapDrawer;
 import model.MapObject;
 import model.RTree;
 import model.SerializableRectangle2D;
+import model.SoftwareRasterizer;
+import model.StyleBatcher;
 import model.DataTypes.DPHT2DTree;
 import model.DataTypes.DoubleArrayList;
 import model.DataTypes.DoubleIndexMinPQ;
@@ -134,11 +145,13 @@ public class Benchmark {
         List<MapObject> objs;
         SerializableRectangle2D bounds;
         Graph graph;
+        AddressRegistry registry;
         try {
             FileLoader f = FileLoader.load("src/data/bornholm.osm");
             objs = f.getObjects();
             bounds = f.getBounds();
             graph = f.getGraph();
+            registry = f.getAddressRegistry();
         } catch (Exception e) {
             throw new RuntimeException(
                     "lalalalalaalal ualalalalalala quueruerueruehrieqgrhliqewgrhljkewgrhjkewghrjlkegqwrhjlkqwegrhjklqwegrhjklqwegrhjleqghrlhleqwjreq");
@@ -148,6 +161,105 @@ public class Benchmark {
         RTree rTree = new RTree(bounds, objs);
         System.out.println("RTree construction time w. bornholm: " + (System.currentTimeMillis() - start));
 
+        // RTree construction on a large input, with an increasing amount of cores
+        List<MapObject> largeObjs = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            largeObjs.addAll(objs);
+        }
+        for (int cores = 1; cores <= Runtime.getRuntime().availableProcessors(); cores *= 2) {
+            System.out.println("RTree construction time w. " + largeObjs.size() + " objects on " + cores + " cores: "
+                    + benchmarkRTreeConstruction(bounds, largeObjs, cores, 5));
+        }
+
+        // headless rendering of all of bornholm, Java2D vs the software rasterizer
+        int imageSize = 1024;
+        double renderScale = imageSize / Math.max(bounds.getWidth(), bounds.getHeight());
+        List<MapObject> visible = new ArrayList<>();
+        rTree.getObjectsIntersecting(bounds, visible, MapDrawer.zoomLevelOf(bounds.getWidth(), bounds.getHeight()));
+        Java2DRenderer java2D = new Java2DRenderer(imageSize, imageSize);
+        java2D.setTransform(renderScale, -bounds.getMinX() * renderScale, -bounds.getMinY() * renderScale);
+        SoftwareRasterizer raster = new SoftwareRasterizer(imageSize, imageSize);
+        raster.setTransform(renderScale, -bounds.getMinX() * renderScale, -bounds.getMinY() * renderScale);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            java2D.setLineWidth(1 / renderScale);
+            for (MapObject object : visible) {
+                object.draw(java2D);
+            }
+        }
+        defaultTime = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            raster.setLineWidth(1 / renderScale);
+            for (MapObject object : visible) {
+                object.draw(raster);
+            }
+        }
+        ourTime = System.currentTimeMillis() - start;
+        StyleBatcher batcher = new StyleBatcher();
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.DECIMATION, false);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            java2D.setLineWidth(1 / renderScale);
+            batcher.draw(java2D, visible);
+        }
+        long batchedTime = System.currentTimeMillis() - start;
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.DECIMATION, true);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            java2D.setLineWidth(1 / renderScale);
+            batcher.draw(java2D, visible);
+        }
+        long decimatedTime = System.currentTimeMillis() - start;
+        java2D.dispose();
+        System.out.println("10x rendering " + visible.size() + " objects headless, Java2D time: " + defaultTime
+                + " software rasterizer time: " + ourTime + " Java2D grouped by " + batcher.getStyleCount()
+                + " styles time: " + batchedTime + " grouped and decimated time: " + decimatedTime);
+        long fullPoints = 0, levelPoints = 0;
+        for (MapObject object : visible) {
+            fullPoints += object.getPointCount(0);
+            levelPoints += object.getPointCount(1 / renderScale);
+        }
+        System.out.println("Points of the whole map: " + fullPoints + ", of the simplified level for its scale: " + levelPoints);
+
+        // 2D tree vs grid for click-to-route, finding the nearest graph node to random clicks on bornholm
+        int amtClicks = (int) Math.pow(10, 6);
+        double[] clickX = new double[amtClicks], clickY = new double[amtClicks];
+        for (int i = 0; i < amtClicks; i++) {
+            clickX[i] = bounds.getMinX() + rnd.nextDouble() * bounds.getWidth();
+            clickY[i] = bounds.getMinY() + rnd.nextDouble() * bounds.getHeight();
+        }
+        start = System.currentTimeMillis();
+        graph.getSmallestDistanceNodeID(clickX[0], clickY[0]); // builds the tree
+        System.out.print("Nearest node: 2D tree construction time: " + (System.currentTimeMillis() - start));
+        start = System.currentTimeMillis();
+        for (int i = 0; i < amtClicks; i++) {
+            graph.getSmallestDistanceNodeID(clickX[i], clickY[i]);
+        }
+        defaultTime = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        graph.getNearestNodeID(clickX[0], clickY[0]); // builds the grid
+        System.out.println(" grid construction time: " + (System.currentTimeMillis() - start));
+        start = System.currentTimeMillis();
+        for (int i = 0; i < amtClicks; i++) {
+            graph.getNearestNodeID(clickX[i], clickY[i]);
+        }
+        ourTime = System.currentTimeMillis() - start;
+        System.out.println(amtClicks + " clicks, 2D tree time: " + defaultTime + " grid time: " + ourTime);
+        graph.rmBestDistTree();
+
+        // address searches on an increasing amount of threads, like the search endpoint of the map server gets them
+        List<String> queries = new ArrayList<>();
+        for (char first = 'A'; first <= 'Z'; first++) {
+            for (Address address : registry.complete(String.valueOf(first), 8)) {
+                queries.add(address.getStreet() + " " + address.getHouseNumber() + " " + address.getPostCode());
+            }
+        }
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            System.out.println("Address searches per second w. " + queries.size() + " queries on " + threads
+                    + " threads: " + benchmarkAddressSearch(registry, queries, threads, 1000));
+        }
+
         // Djikstra vs Astar
         int startNode = 21095, endNode = 21456; // long route
         start = System.currentTimeMillis();
@@ -165,4 +277,61 @@ public class Benchmark {
         System.out.println(" and 100x A* time: " + defaultTime);
     }
 
+    /**
+     * Times the construction of an RTree on a pool with the given amount of cores.
+     * The list is copied for every run, since the RTree sorts the list it is given.
+     * 
+     * @param bounds the bounds of the objects
+     * @param objs   the objects to build the tree of
+     * @param cores  the amount of cores to construct the tree on
+     * @param runs   the amount of trees to build
+     * @return the average construction time in milliseconds
+     */
+    public long benchmarkRTreeConstruction(SerializableRectangle2D bounds, List<MapObject> objs, int cores, int runs) {
+        ForkJoinPool pool = new ForkJoinPool(cores);
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            List<MapObject> copy = new ArrayList<>(objs);
+            long start = System.currentTimeMillis();
+            new RTree(bounds, copy, pool);
+            total += System.currentTimeMillis() - start;
+        }
+        pool.shutdown();
+        return total / runs;
+    }
+
+    /**
+     * Searches the registry from several threads at once, every thread going through all the queries.
+     *
+     * @param registry the addresses to search in
+     * @param queries  the queries to search for
+     * @param threads  the amount of threads searching
+     * @param runs     the amount of times every thread goes through the queries
+     * @return the searches per second of all the threads together
+     */
+    public long benchmarkAddressSearch(AddressRegistry registry, List<String> queries, int threads, int runs) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> searchers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            searchers.add(pool.submit(() -> {
+                int[] found = new int[8];
+                for (int i = 0; i < runs; i++) {
+                    for (String query : queries) {
+                        registry.findAddressIds(query, found);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> searcher : searchers) {
+                searcher.get();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+        return (long) threads * runs * queries.size() * 1_000_000_000L / Math.max(1, nanos);
+    }
 }
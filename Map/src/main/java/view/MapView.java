@@ -1,11 +1,11 @@
 package view;
 
-import java.util.Random;
-
+import javafx.animation.AnimationTimer;
 import javafx.geometry.Point2D;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.transform.Affine;
@@ -19,6 +19,12 @@ public class MapView {
     private GraphicsContext gc;
     private Affine trans;
     private boolean poiMode = false;
+    private final ValueChangeSubject<SerializablePoint2D> clickedPoint = new ValueChangeSubject<>();
+    private boolean dirty = false; // set when something changed, the next pulse draws the map again
+    private long inputTime = -1; // when the oldest input not yet on screen happened, -1 if there is none
+    private boolean fullRedraw = true; // set by anything but a pan, then the last frame can't just be moved
+    private double panX, panY; // how far the map was panned since the last frame was drawn, in pixels
+    private WritableImage lastFrame; // the map without what is on top of it, as it was last frame, null if it isn't kept
     MapDrawer drawer;
 
     /**
@@ -46,7 +52,18 @@ public class MapView {
         pan(-drawer.getBounds().getMinX() + drawer.getBounds().getWidth() / 2,
                 -drawer.getBounds().getMinY() + drawer.getBounds().getHeight());
         zoom(0, 0, canvas.getHeight() / (drawer.getBounds().getMaxX() - drawer.getBounds().getMinX()));
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (dirty) {
+                    render(now);
+                } else if (drawer.isRefining()) {
+                    refine(now);
+                }
+            }
+        }.start();
         draw();
+        drawer.getTileCache().setOnTileReady(this::draw); // tiles rendered in the background need a redraw to show up
         canvas.setOnMouseClicked(event -> handleMouseClick(event));
     }
 
@@ -73,6 +90,22 @@ public class MapView {
         return this.poiMode;
     }
 
+    /**
+     * Getting ValueChangeSubject of the last point of interest clicked on the map, in map coordinates
+     */
+    public ValueChangeSubject<SerializablePoint2D> getClickedPoint() {
+        return clickedPoint;
+    }
+
+    /**
+     * Getting the point of the map in the middle of the screen, in map coordinates
+     */
+    public SerializablePoint2D getCenter() {
+        double scale = trans.getMxx();
+        return new SerializablePoint2D((canvas.getWidth() / 2 - trans.getTx()) / scale,
+                (canvas.getHeight() / 2 - trans.getTy()) / scale);
+    }
+
     /**
      * Handles mouseclick for point of interests
      * 
@@ -85,6 +118,7 @@ public class MapView {
                                                                                     // coordinates
                 SerializablePoint2D newPoint = new SerializablePoint2D(point.getX(), point.getY());
                 drawer.setPointOfInterest(newPoint);
+                clickedPoint.setValue(newPoint);
                 draw();
             }
         } catch (NonInvertibleTransformException e) {
@@ -100,32 +134,161 @@ public class MapView {
     }
 
     /**
-     * Initiates a draw-call to the map drawer.
-     * Cleans out the canvas before drawing
+     * Asks for the map to be drawn again. The drawing happens on the next pulse, so any amount of calls in between,
+     * like a drag event per mouse move, only draws it once
      */
     public void draw() {
-        gc.setTransform(new Affine());
-        Random rnd = new Random();
-        Color color = GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND);
-        gc.setFill(color);
-        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
-        gc.setTransform(trans);
+        fullRedraw = true;
+        dirty = true;
+    }
+
+    /**
+     * Draws the map, cleaning out the canvas first. Called from the animation timer when the map is dirty.
+     * If the map was only panned since the last frame, that frame is moved instead and only the strips it doesn't
+     * cover are drawn
+     *
+     * @param pulse The time of the pulse, in System.nanoTime
+     */
+    private void render(long pulse) {
+        dirty = false;
+        long start = System.nanoTime();
+        double dx = Math.round(panX), dy = Math.round(panY);
+        // a map that wasn't finished can't be moved, the rest of it would be missing
+        if (!fullRedraw && lastFrame != null && !drawer.isRefining()
+                && Math.abs(dx) < canvas.getWidth() && Math.abs(dy) < canvas.getHeight()) {
+            // only whole pixels are moved, so the last frame lines up with the map. The rest is kept for the next
+            // frame, otherwise a slow drag would never move the map
+            panX -= dx;
+            panY -= dy;
+            blit(dx, dy);
+        } else {
+            panX = panY = 0;
+            gc.setTransform(new Affine());
+            gc.setFill(GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND));
+            gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            prepareMapTransform();
+            drawer.drawMap();
+        }
+        fullRedraw = false;
+        keepFrame();
+        prepareMapTransform();
+        drawer.drawOverlays();
+        finishFrame(pulse, start);
+    }
+
+    /**
+     * Draws more of a map that didn't fit in the frame budget, on top of the map drawn so far. The things on top of
+     * the map are drawn again after
+     *
+     * @param pulse The time of the pulse, in System.nanoTime
+     */
+    private void refine(long pulse) {
+        long start = System.nanoTime();
+        if (lastFrame != null) { // the map without the route and points of interest on top
+            gc.setTransform(new Affine());
+            gc.drawImage(lastFrame, 0, 0);
+        }
+        prepareMapTransform();
+        drawer.continueMap();
+        keepFrame();
+        prepareMapTransform();
+        drawer.drawOverlays();
+        finishFrame(pulse, start);
+    }
+
+    private void finishFrame(long pulse, long start) {
+        long end = System.nanoTime();
+        FPSCounter.getInstance().recordFrame(pulse, end - start);
+        if (inputTime >= 0) {
+            FPSCounter.getInstance().recordInputLatency(end - inputTime);
+            inputTime = -1;
+        }
+    }
+
+    private void prepareMapTransform() {
+        Affine frame = new Affine(trans);
+        frame.prependTranslation(-panX, -panY); // the part of the pan the frame hasn't moved yet
+        gc.setTransform(frame);
         gc.setLineWidth(1 / Math.sqrt(trans.determinant()));
         gc.setStroke(Color.BLACK);
-        drawer.draw();
+    }
+
+    /**
+     * Draws the last frame moved by the pan, then the map in the L-shaped region it left uncovered, clipped to it
+     *
+     * @param dx How far the map moved right, in whole pixels
+     * @param dy How far the map moved down, in whole pixels
+     */
+    private void blit(double dx, double dy) {
+        double width = canvas.getWidth(), height = canvas.getHeight();
+        double stripX = dx > 0 ? 0 : width + dx, stripY = dy > 0 ? 0 : height + dy;
+        gc.setTransform(new Affine());
+        gc.drawImage(lastFrame, dx, dy);
+        gc.save();
+        gc.beginPath();
+        gc.rect(stripX, 0, Math.abs(dx), height);
+        gc.rect(0, stripY, width, Math.abs(dy));
+        gc.clip();
+        gc.setFill(GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND));
+        gc.fillRect(0, 0, width, height);
+        prepareMapTransform();
+        if (dx == 0) {
+            drawer.drawMapRegions(toMap(0, stripY, width, Math.abs(dy)));
+        } else if (dy == 0) {
+            drawer.drawMapRegions(toMap(stripX, 0, Math.abs(dx), height));
+        } else {
+            drawer.drawMapRegions(toMap(stripX, 0, Math.abs(dx), height), toMap(0, stripY, width, Math.abs(dy)));
+        }
+        gc.restore();
+    }
+
+    /**
+     * The part of the map under a rectangle on the screen, with a margin for the wide lines of objects just outside
+     * it. The map is only ever panned and zoomed, so the transform is just a scale and a translation
+     */
+    private SerializableRectangle2D toMap(double x, double y, double width, double height) {
+        double scale = trans.getMxx(), margin = 10;
+        return new SerializableRectangle2D((x - margin - trans.getTx()) / scale, (y - margin - trans.getTy()) / scale,
+                (width + 2 * margin) / scale, (height + 2 * margin) / scale);
+    }
+
+    /**
+     * Keeps the map as it is now, before anything is drawn on top of it, for the next frame to move when panning.
+     * Not worth it when the map comes from the tile cache, which is already just drawing images
+     */
+    private void keepFrame() {
+        if (!GlobalConfig.getInstance().getOption(GlobalConfig.Options.BLIT_PAN) || drawer.drawsFromTileCache()
+                || GlobalConfig.getInstance().getOption(GlobalConfig.Options.DEBUG_ZOOM)) {
+            lastFrame = null;
+            return;
+        }
+        if (lastFrame != null && (lastFrame.getWidth() != canvas.getWidth() || lastFrame.getHeight() != canvas.getHeight())) {
+            lastFrame = null;
+        }
+        lastFrame = canvas.snapshot(null, lastFrame);
+    }
 
-        FPSCounter.getInstance().updateFPS(System.currentTimeMillis());
+    /**
+     * Remembers when the oldest input that hasn't been drawn yet happened, for measuring the input latency
+     */
+    private void input() {
+        if (inputTime < 0) {
+            inputTime = System.nanoTime();
+        }
     }
 
     /**
-     * Handles panning on the map
+     * Handles panning on the map. The next frame only has to draw the part of the map that came into view
      * 
      * @param x Cursor x-coord when panning
      * @param y Cursor y-coord when pannign
      */
     public void pan(double x, double y) {
+        input();
         trans.prependTranslation(x, y);
-        draw();
+        panX += x;
+        panY += y;
+        dirty = true;
     }
 
     /**
@@ -139,5 +302,6 @@ public class MapView {
         pan(-x, -y);
         trans.prependScale(factor, factor);
         pan(x, y);
+        draw();
     }
 }
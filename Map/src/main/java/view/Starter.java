@@ -1,7 +1,15 @@
 package view;
 
+import java.util.Arrays;
+
+import controller.MapServer;
+
 public class Starter {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--server")) { // the rest of the arguments go to the server
+            MapServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         App.main(args);
     }
 }
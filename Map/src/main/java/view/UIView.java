@@ -30,7 +30,7 @@ public class UIView extends model.ResourceLoader {
     ScrollPane navigationScrollPane, searchResultScrollPane;
     private final VBox elements, searchResultList, navigationList, navigationView, debugConsoleView;
     private final Label titleLabel, fromLabel, toLabel, fromAddressLabel, toAddressLabel, nearestNeighborLabel,
-            fpsLabel, fpsValueLabel, zoomLabel, zoomValueLabel;
+            fpsLabel, fpsValueLabel, latencyLabel, latencyValueLabel, zoomLabel, zoomValueLabel;
     private final TextField inputBar, debugConsoleInputBar;
     private final TextArea debugConsoleTextArea;
     private final StringBuilder printableNavigationText;
@@ -42,6 +42,7 @@ public class UIView extends model.ResourceLoader {
             destinationReachedDark, destinationReachedLight;
     private final ValueChangeSubject<Integer> curAddress, fromAddress, toAddress;
     private final ValueChangeSubject<Graph.TravelPermission> curPermission;
+    private final ValueChangeSubject<List<Address>> suggestions;
     private final Canvas canvas;
     private final MapView mapView;
     private final AddressRegistry addressRegistry;
@@ -67,6 +68,7 @@ public class UIView extends model.ResourceLoader {
         curAddress = new ValueChangeSubject<>(null);
         fromAddress = new ValueChangeSubject<>(null);
         toAddress = new ValueChangeSubject<>(null);
+        suggestions = new ValueChangeSubject<>(null);
 
         // Initialize Vertical Boxes
         elements = createVBox(20, 250, 600, 350, 1000, Pos.TOP_LEFT);
@@ -84,7 +86,8 @@ public class UIView extends model.ResourceLoader {
         HBox toResultBar = createHBox(5, 300, 20, 350, 20, Pos.TOP_LEFT);
         HBox searchBar = createHBox(5, 350, 20, 350, 20, Pos.TOP_LEFT);
         HBox zoomBar = createHBox(0, 80, 20, 80, 20, Pos.TOP_LEFT);
-        HBox fpsBar = createHBox(0, 80, 20, 80, 20, Pos.TOP_LEFT);
+        HBox fpsBar = createHBox(0, 110, 20, 110, 20, Pos.TOP_LEFT);
+        HBox latencyBar = createHBox(0, 100, 20, 100, 20, Pos.TOP_LEFT);
 
         // Initialize labels
         fromLabel = createLabel("From:", 40, 25, 40, 25, 12);
@@ -94,7 +97,9 @@ public class UIView extends model.ResourceLoader {
         titleLabel = createLabel("Where do you want to go?", 170, 25, 170, 25, 14);
         nearestNeighborLabel = createLabel("N/A", 180, 25, 150, 25, 12);
         fpsLabel = createLabel("FPS:", 30, 25, 30, 25, 12);
-        fpsValueLabel = createLabel("N/A", 30, 25, 30, 25, 12);
+        fpsValueLabel = createLabel("N/A", 80, 25, 80, 25, 12);
+        latencyLabel = createLabel("Input:", 40, 25, 40, 25, 12);
+        latencyValueLabel = createLabel("N/A", 60, 25, 60, 25, 12);
         zoomLabel = createLabel("Zoom:", 50, 25, 50, 25, 12);
         zoomValueLabel = createLabel("N/A", 30, 25, 30, 25, 12);
 
@@ -117,6 +122,7 @@ public class UIView extends model.ResourceLoader {
         // Initialize Text fields and areas
         inputBar = new TextField();
         setUpInputBar();
+        suggestions.addObserver(() -> showSearchResults(inputBar.getText(), suggestions.getValue()));
         debugConsoleInputBar = new TextField();
         debugConsoleTextArea = DebugConsole.getInstance().getTextArea();
         setUpDebugConsole();
@@ -147,10 +153,12 @@ public class UIView extends model.ResourceLoader {
         toResultBar.getChildren().addAll(toLabel, toAddressLabel);
         navigationView.getChildren().addAll(navigationScrollPane, navigationPrintButton);
 
-        infoBar.getChildren().addAll(nearestNeighborLabel, zoomBar, fpsBar);
+        infoBar.getChildren().addAll(nearestNeighborLabel, zoomBar, fpsBar, latencyBar);
         zoomBar.getChildren().addAll(zoomLabel, zoomValueLabel);
         fpsBar.getChildren().addAll(fpsLabel, fpsValueLabel);
+        latencyBar.getChildren().addAll(latencyLabel, latencyValueLabel);
         FPSCounter.getInstance().setFPSViewer(fpsValueLabel);
+        FPSCounter.getInstance().setLatencyViewer(latencyValueLabel);
 
         debugConsoleView.getChildren().addAll(debugConsoleTextArea, debugConsoleInputBar);
 
@@ -177,6 +185,16 @@ public class UIView extends model.ResourceLoader {
             }
         });
 
+        // Listener for the address nearest to a point of interest
+        mapView.getClickedPoint().addObserver(() -> {
+            SerializablePoint2D clicked = mapView.getClickedPoint().getValue();
+            Address nearest = addressRegistry.getNearestAddress(clicked.getX(), clicked.getY());
+            if (nearest != null) {
+                clearSearchResultList();
+                addToSearchResultList(nearest);
+            }
+        });
+
         // Initializing images src\main\resources\images
         goStraightDark = new Image(getResourceStream("goStraightDark.png"));
         rightTurnDark = new Image(getResourceStream("rightTurnDark.png"));
@@ -473,9 +491,24 @@ public class UIView extends model.ResourceLoader {
      * @param query Search input used for finding addresses
      */
     private void doSearch(String query) {
-        clearSearchResultList();
         curAddress.setValue(null);
-        List<Address> addresses = addressRegistry.findAddresses(query);
+        SerializablePoint2D center = mapView.getCenter();
+        List<Address> addresses = addressRegistry.findAddresses(query, center.getX(), center.getY(),
+                GlobalConfig.getInstance().getConstant(GlobalConfig.Constant.MAX_AMT_ADDRESSES));
+        showSearchResults(query, addresses);
+        if (addresses.size() == 1) {
+            curAddress.setValue(addresses.get(0).getGraphNode());
+        }
+    }
+
+    /**
+     * Shows the first addresses found in the search result list
+     * 
+     * @param query     the query the addresses were found for
+     * @param addresses the addresses found
+     */
+    private void showSearchResults(String query, List<Address> addresses) {
+        clearSearchResultList();
         if (addresses.isEmpty()) {
             Label noResults = new Label();
             noResults.setPrefSize(200, 50);
@@ -485,10 +518,9 @@ public class UIView extends model.ResourceLoader {
             searchResultList.getChildren().add(noResults);
             return;
         }
-        if (addresses.size() == 1) {
-            curAddress.setValue(addresses.get(0).getGraphNode());
-        } else if (addresses.size() > 8) {
-            addresses = addresses.subList(0, 8);
+        int shown = GlobalConfig.getInstance().getConstant(GlobalConfig.Constant.MAX_AMT_ADDRESSES);
+        if (addresses.size() > shown) {
+            addresses = addresses.subList(0, shown);
         }
         addresses.forEach(this::addToSearchResultList);
     }
@@ -696,6 +728,8 @@ public class UIView extends model.ResourceLoader {
             zoomValueLabel.setStyle("-fx-text-fill: white");
             fpsLabel.setStyle("-fx-text-fill: white");
             fpsValueLabel.setStyle("-fx-text-fill: white");
+            latencyLabel.setStyle("-fx-text-fill: white");
+            latencyValueLabel.setStyle("-fx-text-fill: white");
             GlobalConfig.getInstance().setBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND,
                     Color.rgb(10, 10, 10));
         } else {
@@ -733,6 +767,8 @@ public class UIView extends model.ResourceLoader {
             zoomValueLabel.setStyle("-fx-text-fill: black");
             fpsLabel.setStyle("-fx-text-fill: black");
             fpsValueLabel.setStyle("-fx-text-fill: black");
+            latencyLabel.setStyle("-fx-text-fill: black");
+            latencyValueLabel.setStyle("-fx-text-fill: black");
             GlobalConfig.getInstance().setBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND,
                     Color.LIGHTGREY);
         }
@@ -782,6 +818,20 @@ public class UIView extends model.ResourceLoader {
         return curPermission;
     }
 
+    /**
+     * Getting the search bar
+     */
+    public TextField getInputBar() {
+        return inputBar;
+    }
+
+    /**
+     * Getting ValueChangeSubject of the addresses found while the query is typed
+     */
+    public ValueChangeSubject<List<Address>> getSuggestions() {
+        return suggestions;
+    }
+
     public VBox getNavigationList() {
         return navigationList;
     }
@@ -58,4 +58,29 @@ public class DPHT2DTreeTest {
         }
         System.out.println("Average nodes examined: " + (totalAmtNodesExamined * 1.0 / minDistIDs.size()) + " compared to log2(" + sampleSize + ") = " + Math.log(sampleSize) / Math.log(2));
     }
+
+    @Test void BulkQueriesMatchSingleQueries() {
+        tree = new DPHT2DTree(dpht); 
+        Random rnd = new Random(); 
+        double[] xs = new double[sampleSize * 4]; 
+        double[] ys = new double[sampleSize * 4]; 
+        for(int i = 0; i < xs.length; i++) {
+            xs[i] = rnd.nextDouble() - 0.5; 
+            ys[i] = rnd.nextDouble() - 0.5; 
+        }
+        int[] bulkIDs = tree.getClosestNodeIDs(xs, ys); 
+        assertEquals(xs.length, bulkIDs.length); 
+        for(int i = 0; i < xs.length; i++) {
+            assertEquals(tree.getClosestNodeID(xs[i], ys[i]), bulkIDs[i]); 
+        }
+        for(int i = 0; i < testPoints.size(); i++) {
+            int[] single = tree.getClosestNodeIDs(new double[]{ testPoints.get(i).getX() }, new double[]{ testPoints.get(i).getY() }); 
+            assertEquals(minDistIDs.get(i), single[0]); 
+        }
+    }
+
+    @Test void BulkQueriesRejectMismatchedInput() {
+        tree = new DPHT2DTree(dpht); 
+        assertThrows(IllegalArgumentException.class, () -> tree.getClosestNodeIDs(new double[2], new double[3])); 
+    }
 }
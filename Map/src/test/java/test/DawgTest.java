@@ -0,0 +1,63 @@
+package test;
+
+import model.DataTypes.Dawg;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DawgTest {
+    private static final String[] endings = { "VEJ", "GADE", "STRÆDE", "ALLÉ" };
+
+    private static List<String> randomStreets(int amount) {
+        Random rnd = new Random(3);
+        TreeSet<String> words = new TreeSet<>();
+        while (words.size() < amount) {
+            StringBuilder word = new StringBuilder();
+            for (int k = rnd.nextInt(5) + 1; k > 0; k--) {
+                word.append((char) ('A' + rnd.nextInt(8)));
+            }
+            words.add(word.append(endings[rnd.nextInt(endings.length)]).toString());
+        }
+        return new ArrayList<>(words);
+    }
+
+    @Test void OrdinalIsIndexInSortedWords() {
+        List<String> words = randomStreets(5000);
+        Dawg dawg = Dawg.of(words);
+        assertEquals(words.size(), dawg.size());
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(i, dawg.ordinal(words.get(i)));
+        }
+    }
+
+    @Test void PrefixesAndOtherWordsAreNotFound() {
+        Dawg dawg = Dawg.of(List.of("NØRREVEJ", "SØNDERVEJ", "VESTERGADE"));
+        assertEquals(-1, dawg.ordinal("NØRRE"));
+        assertEquals(-1, dawg.ordinal("VESTERGADER"));
+        assertEquals(-1, dawg.ordinal("ØSTERGADE"));
+        assertEquals(-1, dawg.ordinal(""));
+        assertEquals(1, dawg.ordinal("SØNDERVEJ"));
+    }
+
+    @Test void EndingsAreShared() {
+        List<String> words = randomStreets(5000);
+        int letters = 0;
+        for (String word : words) {
+            letters += word.length();
+        }
+        // a trie has a node for every letter of the words that isn't shared with the word before it
+        assertTrue(Dawg.of(words).getStates() < letters / 4);
+    }
+
+    @Test void EmptyWordAndNoWords() {
+        assertEquals(0, Dawg.of(List.of()).size());
+        assertEquals(-1, Dawg.of(List.of()).ordinal("A"));
+        assertEquals(0, Dawg.of(List.of("", "A")).ordinal(""));
+        assertEquals(1, Dawg.of(List.of("", "A")).ordinal("A"));
+    }
+}
@@ -0,0 +1,128 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecimatorTest {
+    private Decimator decimator;
+    private PointRenderer renderer;
+
+    /**
+     * Keeps the points it is given.
+     */
+    private static class PointRenderer implements MapRenderer {
+        final List<double[]> points = new ArrayList<>();
+        int polygonPoints = -1;
+
+        @Override public void setStroke(SerializableColor color) { }
+        @Override public void setFill(SerializableColor color) { }
+        @Override public void setLineWidth(double lineWidth) { }
+        @Override public double getLineWidth() { return 1; }
+        @Override public void beginPath() { }
+        @Override public void moveTo(double x, double y) { points.add(new double[] { x, y }); }
+        @Override public void lineTo(double x, double y) { points.add(new double[] { x, y }); }
+        @Override public void stroke() { }
+        @Override public void fillPolygon(double[] xs, double[] ys, int n) { polygonPoints = n; }
+        @Override public void strokeLine(double x1, double y1, double x2, double y2) { }
+        @Override public void strokeRect(double x, double y, double width, double height) { }
+        @Override public void fillOval(double x, double y, double width, double height) { }
+        @Override public double getScale() { return 1; }
+        @Override public SerializableRectangle2D getView() { return new SerializableRectangle2D(0, 0, 1, 1); }
+    }
+
+    private static Node node(double x, double y) {
+        return new Node((float) -y, (float) (x / 0.56), new HashMap<>());
+    }
+
+    @BeforeEach void setup() {
+        decimator = new Decimator();
+        decimator.setScale(100); // a pixel is 0.01
+        renderer = new PointRenderer();
+    }
+
+    @Test void pointsInTheSamePixelAreDropped() {
+        double[] line = new double[202];
+        for (int i = 0; i <= 100; i++) {
+            line[2 * i] = i * 0.001; // ten points per pixel
+        }
+        decimator.addLine(renderer, line);
+        assertEquals(11, renderer.points.size());
+        assertEquals(0.1, renderer.points.get(10)[0], 1e-9); // the end is where it was
+    }
+
+    @Test void pointsFurtherApartAreKept() {
+        double[] line = { 0, 0, 0.02, 0, 0.02, 0.02, 0.04, 0.02 };
+        decimator.addLine(renderer, line);
+        assertEquals(4, renderer.points.size());
+    }
+
+    @Test void lastPointIsKeptEvenIfClose() {
+        decimator.addLine(renderer, new double[] { 0, 0, 0.05, 0, 0.051, 0 });
+        assertEquals(3, renderer.points.size());
+        assertEquals(0.051, renderer.points.get(2)[0], 1e-9);
+    }
+
+    @Test void polygonThatCollapsesIsNotFilled() {
+        decimator.fillPolygon(renderer, new double[] { 0, 0, 0.001, 0, 0.001, 0.001 });
+        assertEquals(-1, renderer.polygonPoints);
+        decimator.fillPolygon(renderer, new double[] { 0, 0, 0.1, 0, 0.1005, 0, 0.1, 0.1 });
+        assertEquals(3, renderer.polygonPoints);
+    }
+
+    @Test void subPixelObjectsAreNotVisible() {
+        assertFalse(decimator.isVisible(new Road(List.of(node(0, 0), node(0.002, 0.003)))));
+        assertTrue(decimator.isVisible(new Road(List.of(node(0, 0), node(0.02, 0.03)))));
+        decimator.setScale(1000);
+        assertTrue(decimator.isVisible(new Road(List.of(node(0, 0), node(0.002, 0.003)))));
+    }
+
+    @Test void bufferGrowsForLargeObjects() {
+        double[] line = new double[20000];
+        for (int i = 0; i < line.length; i += 2) {
+            line[i] = i * 0.01;
+        }
+        decimator.addLine(renderer, line);
+        assertEquals(10000, renderer.points.size());
+    }
+
+    @Test void simplifyKeepsCornersAndDropsWiggles() {
+        double[] line = { 0, 0, 1, 0.01, 2, -0.01, 3, 0, 4, 1, 3, 2 };
+        assertArrayEquals(new double[] { 0, 0, 3, 0, 4, 1, 3, 2 }, Geometry.simplify(line, 0.1));
+        assertArrayEquals(line, Geometry.simplify(line, 0.001));
+    }
+
+    private static Road wiggly(int points, double wiggle) {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < points; i++) {
+            nodes.add(node(i * 0.001, (i % 2) * wiggle));
+        }
+        return new Road(nodes);
+    }
+
+    @Test void zoomedOutDrawsACoarserLevel() {
+        Road road = wiggly(1000, 1.5e-4); // between the first and third tolerance, in between it keeps some
+        assertEquals(1000, road.getPointCount(MapObject.levelTolerances[0] / 2)); // zoomed in, everything
+        assertEquals(1000, road.getPointCount(MapObject.levelTolerances[0]));
+        assertEquals(2, road.getPointCount(MapObject.levelTolerances[2])); // the wiggles are below a pixel
+        assertEquals(2, road.getPointCount(1));
+
+        decimator.setScale(Decimator.pixelTolerance / MapObject.levelTolerances[3]);
+        road.addShape(renderer, decimator);
+        assertEquals(2, renderer.points.size());
+        assertEquals(0.999, renderer.points.get(1)[0], 1e-6);
+    }
+
+    @Test void simpleObjectsHaveNoLevels() {
+        Road road = wiggly(3, 0.001);
+        assertEquals(3, road.getPointCount(1e-9));
+        assertEquals(3, road.getPointCount(MapObject.levelTolerances[3]));
+        assertEquals(2, wiggly(100, 0).getPointCount(MapObject.levelTolerances[0])); // a straight line is its ends
+    }
+}
@@ -0,0 +1,121 @@
+package test;
+
+import model.DataTypes.DPHT2DTree;
+import model.DataTypes.DoublePointGrid;
+import model.DataTypes.DoublePointHashTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DoublePointGridTest {
+    private DoublePointHashTable dpht;
+    private DoublePointGrid grid;
+    private static final int sampleSize = 2048;
+
+    @BeforeEach void setup() {
+        dpht = new DoublePointHashTable(sampleSize * 2);
+        Random rnd = new Random();
+        for(int i = 0; i < sampleSize; i++) {
+            dpht.add(rnd.nextDouble() - 0.5, rnd.nextDouble() - 0.5); // -0.5 ensures we can correctly handle negative values as well
+        }
+        grid = new DoublePointGrid(dpht);
+    }
+
+    // caveman method find the lowest distance
+    private int closestByBruteForce(DoublePointHashTable table, double x, double y) {
+        double minDist = Double.POSITIVE_INFINITY;
+        int minDistID = -1;
+        for(int k = 0; k < table.size(); k++) {
+            double dist = Math.pow(table.getXFromID(k) - x, 2) + Math.pow(table.getYFromID(k) - y, 2);
+            if(dist < minDist) { minDist = dist; minDistID = k; }
+        }
+        return minDistID;
+    }
+
+    @Test void RandomPointsTest() {
+        Random rnd = new Random();
+        for(int i = 0; i < 512; i++) {
+            double x = rnd.nextDouble() - 0.5, y = rnd.nextDouble() - 0.5;
+            assertEquals(closestByBruteForce(dpht, x, y), grid.getClosestNodeID(x, y));
+        }
+    }
+
+    @Test void PointsOutsideTheGridTest() {
+        Random rnd = new Random();
+        for(int i = 0; i < 512; i++) {
+            double x = (rnd.nextDouble() - 0.5) * 10, y = (rnd.nextDouble() - 0.5) * 10;
+            assertEquals(closestByBruteForce(dpht, x, y), grid.getClosestNodeID(x, y));
+        }
+    }
+
+    @Test void MatchesDPHT2DTree() {
+        DPHT2DTree tree = new DPHT2DTree(dpht);
+        Random rnd = new Random();
+        for(int i = 0; i < 512; i++) {
+            double x = rnd.nextDouble() - 0.5, y = rnd.nextDouble() - 0.5;
+            assertEquals(tree.getClosestNodeID(x, y), grid.getClosestNodeID(x, y));
+        }
+    }
+
+    @Test void PointsOnALineTest() {
+        DoublePointHashTable line = new DoublePointHashTable();
+        for(int i = 0; i < sampleSize; i++) {
+            line.add(i, i);
+        }
+        DoublePointGrid lineGrid = new DoublePointGrid(line);
+        Random rnd = new Random();
+        for(int i = 0; i < 128; i++) {
+            double x = rnd.nextDouble() * sampleSize, y = rnd.nextDouble() * sampleSize;
+            assertEquals(closestByBruteForce(line, x, y), lineGrid.getClosestNodeID(x, y));
+        }
+    }
+
+    @Test void EmptyGridGivesNoNode() {
+        DoublePointGrid empty = new DoublePointGrid(new DoublePointHashTable());
+        assertEquals(-1, empty.getClosestNodeID(0, 0));
+        assertEquals(0, empty.getNodeIDsWithin(0, 0, 1).length);
+    }
+
+    @Test void RadiusQueryTest() {
+        Random rnd = new Random();
+        for(int i = 0; i < 64; i++) {
+            double x = rnd.nextDouble() - 0.5, y = rnd.nextDouble() - 0.5, radius = rnd.nextDouble() * 0.1;
+            List<Integer> expected = new ArrayList<>();
+            for(int k = 0; k < dpht.size(); k++) {
+                if(Math.pow(dpht.getXFromID(k) - x, 2) + Math.pow(dpht.getYFromID(k) - y, 2) <= radius * radius) { expected.add(k); }
+            }
+            int[] found = grid.getNodeIDsWithin(x, y, radius);
+            Arrays.sort(found);
+            assertEquals(expected.size(), found.length);
+            for(int k = 0; k < found.length; k++) {
+                assertEquals(expected.get(k), found[k]);
+            }
+        }
+    }
+
+    @Test void PointsFromArraysMayRepeat() {
+        DoublePointGrid flats = new DoublePointGrid(new double[] { 0, 1, 1, 2 }, new double[] { 0, 1, 1, 2 });
+        assertEquals(4, flats.size());
+        assertEquals(1, flats.getClosestNodeID(1.1, 0.9)); // the lowest ID of the two at the same point
+        assertArrayEquals(new int[] { 0, 3 }, flats.getClosestNodeIDs(new double[] { -1, 5 }, new double[] { 0, 5 }));
+    }
+
+    @Test void BulkQueryMatchesSingleQueries() {
+        Random rnd = new Random();
+        double[] xs = new double[1000], ys = new double[1000];
+        for(int i = 0; i < xs.length; i++) {
+            xs[i] = rnd.nextDouble() - 0.5;
+            ys[i] = rnd.nextDouble() - 0.5;
+        }
+        int[] ids = grid.getClosestNodeIDs(xs, ys);
+        for(int i = 0; i < xs.length; i++) {
+            assertEquals(grid.getClosestNodeID(xs[i], ys[i]), ids[i]);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package test;
+
+import model.FPSCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FPSCounterTest {
+    private static final long ms = 1_000_000L;
+    private FPSCounter counter;
+
+    @BeforeEach void setup() {
+        counter = FPSCounter.getInstance();
+        counter.reset();
+    }
+
+    @Test void fpsComesFromTheTimeBetweenFrames() {
+        for (int i = 0; i < 10; i++) {
+            counter.recordFrame(i * 20 * ms, 5 * ms);
+        }
+        assertEquals(50, counter.getFPS(), 1e-9);
+        assertEquals(5, counter.getFrameTimeMillis(), 1e-9); // the frames are quick, the pulses just aren't more often
+    }
+
+    @Test void idleTimeIsNotASlowFrame() {
+        counter.recordFrame(0, ms);
+        counter.recordFrame(10 * ms, ms);
+        counter.recordFrame(5000 * ms, ms); // nothing happened for five seconds
+        counter.recordFrame(5010 * ms, ms);
+        assertEquals(100, counter.getFPS(), 1e-9);
+    }
+
+    @Test void onlyTheLastFramesCount() {
+        for (int i = 0; i < 100; i++) {
+            counter.recordFrame(i * 10 * ms, (i < 50 ? 100 : 2) * ms);
+        }
+        assertEquals(2, counter.getFrameTimeMillis(), 1e-9);
+    }
+
+    @Test void inputLatencyIsSeparate() {
+        assertEquals(0, counter.getFPS());
+        assertEquals(0, counter.getInputLatencyMillis());
+        counter.recordInputLatency(30 * ms);
+        counter.recordInputLatency(10 * ms);
+        assertEquals(20, counter.getInputLatencyMillis(), 1e-9);
+        assertEquals(0, counter.getFrameTimeMillis());
+    }
+}
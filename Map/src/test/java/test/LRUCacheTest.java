@@ -0,0 +1,65 @@
+package test;
+
+import model.DataTypes.LRUCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LRUCacheTest {
+    private LRUCache<Integer, String> cache;
+
+    @BeforeEach void setup() {
+        cache = new LRUCache<>(100);
+    }
+
+    @Test void EvictsLeastRecentlyUsedWhenFull() {
+        cache.put(1, "one", 40);
+        cache.put(2, "two", 40);
+        cache.get(1); // 2 is now the least recently used
+        cache.put(3, "three", 40);
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("three", cache.get(3));
+        assertEquals(80, cache.getWeight());
+    }
+
+    @Test void EvictsSeveralToMakeRoomForHeavyValue() {
+        for(int i = 0; i < 10; i++) {
+            cache.put(i, "light", 10);
+        }
+        cache.put(10, "heavy", 55);
+        assertEquals(5, cache.size());
+        assertNull(cache.get(5));
+        assertEquals("light", cache.get(6));
+        assertTrue(cache.getWeight() <= cache.getCapacity());
+    }
+
+    @Test void ReplacingKeepsTheWeightRight() {
+        cache.put(1, "one", 40);
+        cache.put(1, "uno", 60);
+        assertEquals(1, cache.size());
+        assertEquals(60, cache.getWeight());
+        assertEquals("uno", cache.get(1));
+    }
+
+    @Test void ValueHeavierThanCapacityIsNotCached() {
+        cache.put(1, "one", 40);
+        cache.put(2, "huge", 101);
+        assertNull(cache.get(2));
+        assertEquals("one", cache.get(1));
+    }
+
+    @Test void ClearEmptiesTheCache() {
+        cache.put(1, "one", 40);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test void NegativeCapacityIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LRUCache<Integer, String>(-1));
+    }
+}
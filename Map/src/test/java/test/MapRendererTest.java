@@ -0,0 +1,161 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapRendererTest {
+    private static final int size = 100;
+    private static final double scale = 1000; // the scene is 0.1 map units wide
+    private static final SerializableColor white = new SerializableColor(1, 1, 1);
+    private static final int whiteARGB = 0xFFFFFFFF;
+    private List<MapObject> scene;
+
+    private static Node node(double x, double y) {
+        return new Node((float) -y, (float) (x / 0.56), new HashMap<>());
+    }
+
+    private static MapObjectInfo info(SerializableColor color, double strokeWidth) {
+        return new MapObjectInfo(1, new SerializableColor[] { color, color }, strokeWidth);
+    }
+
+    @BeforeEach void setup() {
+        scene = new ArrayList<>();
+        scene.add(new Area(List.of(node(0.0105, 0.0105), node(0.0605, 0.0105), node(0.0605, 0.0405), node(0.0105, 0.0405)),
+                info(new SerializableColor(0, 0, 1), 1)));
+        scene.add(new Highway(List.of(node(0.0055, 0.0705), node(0.0505, 0.0905), node(0.0955, 0.0705)),
+                info(new SerializableColor(1, 0, 0), 4), "Testvej"));
+        scene.add(new WayLine(List.of(node(0.0705, 0.0055), node(0.0705, 0.0955))));
+    }
+
+    private void drawScene(MapRenderer renderer) {
+        renderer.setLineWidth(1 / scale);
+        renderer.setStroke(new SerializableColor(0, 0, 0));
+        for (MapObject object : scene) {
+            object.draw(renderer);
+        }
+    }
+
+    private Java2DRenderer java2D() {
+        Java2DRenderer renderer = new Java2DRenderer(size, size);
+        renderer.setAntialiasing(false);
+        renderer.setTransform(scale, 0, 0);
+        renderer.clear(white);
+        return renderer;
+    }
+
+    @Test void java2DAndSoftwareRasterizerDrawTheSameScene() {
+        Java2DRenderer java2D = java2D();
+        drawScene(java2D);
+        SoftwareRasterizer raster = new SoftwareRasterizer(size, size);
+        raster.setTransform(scale, 0, 0);
+        raster.clear(whiteARGB);
+        drawScene(raster);
+
+        int same = 0, drawn = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int pixel = raster.getPixels()[y * size + x];
+                if (pixel == java2D.getImage().getRGB(x, y)) { same++; }
+                if (pixel != whiteARGB) { drawn++; }
+            }
+        }
+        assertTrue(drawn > 1500, "the scene should cover a good part of the image");
+        // the edges of lines may be rounded differently, the rest has to match
+        assertTrue(same >= size * size * 0.97, "only " + same + " pixels are the same");
+    }
+
+    @Test void areaIsFilledInItsColor() {
+        Java2DRenderer java2D = java2D();
+        drawScene(java2D);
+        assertEquals(0xFF0000FF, java2D.getImage().getRGB(30, 25));
+        assertEquals(whiteARGB, java2D.getImage().getRGB(30, 50));
+    }
+
+    @Test void highwayIsDrawnWiderAndLeavesTheLineWidthAlone() {
+        Java2DRenderer java2D = java2D();
+        drawScene(java2D);
+        assertEquals(1 / scale, java2D.getLineWidth(), 1e-12);
+        // the middle of the highway is at y = 90, and it is 4 pixels wide
+        assertEquals(0xFFFF0000, java2D.getImage().getRGB(50, 89));
+        assertEquals(0xFFFF0000, java2D.getImage().getRGB(50, 91));
+    }
+
+    @Test void viewIsTheImageInMapCoordinates() {
+        Java2DRenderer java2D = new Java2DRenderer(new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB));
+        java2D.setTransform(100, -50, 20);
+        SerializableRectangle2D view = java2D.getView();
+        assertEquals(0.5, view.getMinX(), 1e-12);
+        assertEquals(-0.2, view.getMinY(), 1e-12);
+        assertEquals(2, view.getWidth(), 1e-12);
+        assertEquals(1, view.getHeight(), 1e-12);
+
+        SoftwareRasterizer raster = new SoftwareRasterizer(200, 100);
+        raster.setTransform(100, -50, 20);
+        assertEquals(view.getMinX(), raster.getView().getMinX(), 1e-12);
+        assertEquals(view.getMaxY(), raster.getView().getMaxY(), 1e-12);
+    }
+
+    @Test void mapDrawerDrawsWithoutACanvas() {
+        Java2DRenderer java2D = java2D();
+        MapDrawer drawer = new MapDrawer(java2D, scene, new SerializableRectangle2D(0, 0, 0.1, 0.1), null, null, null);
+        java2D.setLineWidth(1 / scale); // like MapView does before drawing
+        drawer.draw();
+        assertEquals(0xFF0000FF, java2D.getImage().getRGB(30, 25));
+        assertEquals(MapDrawer.zoomLevelOf(0.1, 0.1), drawer.getZoomLevel().getValue(), 1e-12);
+    }
+
+    @Test void mapDrawerCanDrawJustARegion() {
+        Java2DRenderer java2D = java2D();
+        MapDrawer drawer = new MapDrawer(java2D, scene, new SerializableRectangle2D(0, 0, 0.1, 0.1), null, null, null);
+        java2D.setLineWidth(1 / scale);
+        drawer.drawMap(); // the regions are drawn at the zoom level of the last full map
+        java2D.clear(white);
+        drawer.drawMapRegions(new SerializableRectangle2D(0.065, 0, 0.01, 0.1)); // just around the wayline
+        assertEquals(0xFF000000, java2D.getImage().getRGB(70, 50));
+        assertEquals(whiteARGB, java2D.getImage().getRGB(30, 25)); // the area isn't in the region
+    }
+
+    @Test void progressiveDrawingFinishesOverSeveralFrames() {
+        List<MapObject> objects = new ArrayList<>(scene);
+        for (int i = 0; i < 1500; i++) {
+            objects.add(new WayLine(List.of(node(0.08 + i * 1e-5, 0.01), node(0.08 + i * 1e-5, 0.02))));
+        }
+        Java2DRenderer java2D = java2D();
+        MapDrawer drawer = new MapDrawer(java2D, objects, new SerializableRectangle2D(0, 0, 0.1, 0.1), null, null, null);
+        java2D.setLineWidth(1 / scale);
+        GlobalConfig.getInstance().setConstant(GlobalConfig.Constant.FRAME_BUDGET_MS, 0); // a slice per frame
+        try {
+            drawer.drawMap();
+            assertTrue(drawer.isRefining());
+            int painted = 0;
+            for (int x = 80; x < 96; x++) {
+                painted += java2D.getImage().getRGB(x, 15) == 0xFF000000 ? 1 : 0;
+            }
+            assertTrue(painted > 0); // waylines are visible furthest out, so they come first
+            assertEquals(whiteARGB, java2D.getImage().getRGB(30, 25)); // the area comes later
+            int frames = 1;
+            while (drawer.isRefining()) {
+                drawer.continueMap();
+                frames++;
+            }
+            assertEquals(3, frames);
+            assertEquals(0xFF0000FF, java2D.getImage().getRGB(30, 25));
+
+            drawer.drawMap();
+            GlobalConfig.getInstance().setOption(GlobalConfig.Options.PROGRESSIVE, false);
+            drawer.drawMap(); // a new view drops what was left of the last one
+            assertFalse(drawer.isRefining());
+        } finally {
+            GlobalConfig.getInstance().setConstant(GlobalConfig.Constant.FRAME_BUDGET_MS, 10);
+            GlobalConfig.getInstance().setOption(GlobalConfig.Options.PROGRESSIVE, true);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package test;
+
+import controller.MapServer;
+import model.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapServerTest {
+    private MapServer server;
+    private RTree tree;
+
+    private static Node node(double x, double y) {
+        return new Node((float) -y, (float) (x / 0.56), new HashMap<>());
+    }
+
+    @BeforeEach void setup() throws IOException {
+        SerializableColor blue = new SerializableColor(0, 0, 1);
+        List<MapObject> objects = new ArrayList<>();
+        objects.add(new Area(List.of(node(0.01, 0.01), node(0.06, 0.01), node(0.06, 0.04), node(0.01, 0.04)),
+                new MapObjectInfo(1, new SerializableColor[] { blue, blue }, 1)));
+        objects.add(new WayLine(List.of(node(0.07, 0.005), node(0.07, 0.095))));
+        tree = new RTree(new SerializableRectangle2D(0, 0, 0.1, 0.1), objects);
+
+        Graph graph = new Graph();
+        int a = graph.addNode(0.01, 0.05), b = graph.addNode(0.05, 0.05), c = graph.addNode(0.09, 0.05);
+        graph.addEdge(a, b, 0, 50, null, Graph.roadPermissions.all);
+        graph.addEdge(b, a, 0, 50, null, Graph.roadPermissions.all);
+        graph.addEdge(b, c, 0, 50, null, Graph.roadPermissions.all);
+        graph.addEdge(c, b, 0, 50, null, Graph.roadPermissions.all);
+
+        server = new MapServer(tree, graph, null, 0, 2);
+        server.start();
+    }
+
+    @AfterEach void teardown() {
+        server.stop();
+    }
+
+    private HttpURLConnection get(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+    }
+
+    private String body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The metrics of a request are recorded after its response is sent, so they can lag a little behind.
+     */
+    private void assertMetricsSoonContain(String expected) throws InterruptedException {
+        for (int i = 0; i < 100 && !server.metricsJson().contains(expected); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(server.metricsJson().contains(expected), server.metricsJson());
+    }
+
+    @Test void tileIsAPngOfTheMap() throws IOException {
+        HttpURLConnection connection = get("/tile/2/0/0.png"); // 1024 pixels per map unit, so the map is in this tile
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("image/png", connection.getHeaderField("Content-Type"));
+        BufferedImage tile;
+        try (InputStream in = connection.getInputStream()) {
+            tile = ImageIO.read(in);
+        }
+        assertEquals(TileCache.tileSize, tile.getWidth());
+        assertEquals(0xFF0000FF, tile.getRGB(30, 25)); // inside the area
+        assertEquals(new SerializableColor(GlobalConfig.getInstance().getBackgroundColor(GlobalConfig.BackgroundColor.CANVAS_BACKGROUND)).getARGB(),
+                tile.getRGB(200, 200));
+    }
+
+    @Test void secondRequestForATileIsCached() throws IOException, InterruptedException {
+        assertEquals(200, get("/tile/2/0/0.png").getResponseCode());
+        assertEquals(200, get("/tile/2/0/0.png").getResponseCode());
+        assertEquals(1, server.getTiles().getMisses());
+        assertEquals(1, server.getTiles().getHits());
+        assertMetricsSoonContain("\"tile\":{\"count\":2,\"errors\":0");
+    }
+
+    @Test void malformedTileIsABadRequest() throws IOException, InterruptedException {
+        assertEquals(400, get("/tile/2/x/0.png").getResponseCode());
+        assertEquals(400, get("/tile/99/0/0.png").getResponseCode());
+        assertMetricsSoonContain("\"tile\":{\"count\":2,\"errors\":2");
+    }
+
+    @Test void routeFollowsTheGraph() throws IOException {
+        HttpURLConnection connection = get("/route?from=0.011,0.049&to=0.09,0.05&mode=walkable");
+        assertEquals(200, connection.getResponseCode());
+        String json = body(connection);
+        assertTrue(json.startsWith("{\"path\":[[0.01,0.05],[0.05,0.05],[0.09,0.05]]"), json);
+        assertTrue(json.contains("\"meters\":" + Math.round(0.08 * Geometry.metersPerMapUnit)), json);
+    }
+
+    @Test void routeNeedsBothEnds() throws IOException {
+        assertEquals(400, get("/route?from=0.01,0.05").getResponseCode());
+        assertEquals(400, get("/route?from=0.01,0.05&to=0.09,0.05&mode=flying").getResponseCode());
+    }
+
+    @Test void searchWithoutAddressesIsABadRequest() throws IOException {
+        assertEquals(400, get("/search?q=Testvej").getResponseCode());
+    }
+
+    @Test void controlCharactersAreEscaped() {
+        assertEquals("Vestergade \\\"3\\\" \\\\ 1\\n\\t\\u0000\\u001f", MapServer.escape("Vestergade \"3\" \\ 1\n\t\u0000\u001f"));
+    }
+
+    @Test void startingAServerLeavesTheOptionsAlone() throws IOException {
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.ADRESS_DEBUG_INFO, true);
+        MapServer other = new MapServer(tree, null, null, 0, 1);
+        other.stop();
+        assertTrue(GlobalConfig.getInstance().getOption(GlobalConfig.Options.ADRESS_DEBUG_INFO));
+    }
+}
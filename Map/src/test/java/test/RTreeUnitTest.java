@@ -11,6 +11,7 @@ import javafx.geometry.Rectangle2D;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -94,4 +95,27 @@ public class RTreeUnitTest {
        String nearestHighway= tree.getNearestRoad(5.986324488064858, -55.049577512171545).getName();
        assertEquals(nearestHighway, "Nordvej");
    }
-}
+
+   @Test void constructionGivesTheSameTreeOnAnyAmountOfCores() {
+       ForkJoinPool onePool = new ForkJoinPool(1), fourPool = new ForkJoinPool(4);
+       try {
+           RTree single = new RTree(loader.getBounds(), new ArrayList<>(objs), onePool);
+           RTree multi = new RTree(loader.getBounds(), new ArrayList<>(objs), fourPool);
+           assertEquals(single.getBounds().getMinX(), multi.getBounds().getMinX());
+           assertEquals(single.getBounds().getMinY(), multi.getBounds().getMinY());
+           assertEquals(single.getBounds().getMaxX(), multi.getBounds().getMaxX());
+           assertEquals(single.getBounds().getMaxY(), multi.getBounds().getMaxY());
+
+           SerializableRectangle2D rectangleThatContainsAll = new SerializableRectangle2D(-100, -100, 200, 200);
+           for(double zoomLvl : new double[] { 0.01, 0.14, 0.4, 0.8, 1 }) {
+               List<MapObject> singleObjects = new ArrayList<>(), multiObjects = new ArrayList<>();
+               single.getObjectsInSquare(rectangleThatContainsAll, singleObjects, zoomLvl);
+               multi.getObjectsInSquare(rectangleThatContainsAll, multiObjects, zoomLvl);
+               assertEquals(singleObjects, multiObjects); // same objects in the same order, so the nodes are the same
+           }
+       } finally {
+           onePool.shutdown();
+           fourPool.shutdown();
+       }
+   }
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeQueryUnitTest {
+    private RTree tree;
+    private List<MapObject> objects;
+    private static final int amtObjects = 5014;
+
+    private static List<Node> nodes(double... latLon) {
+        List<Node> nodes = new ArrayList<>();
+        for(int i = 0; i < latLon.length; i += 2) {
+            nodes.add(new Node((float) latLon[i], (float) latLon[i + 1], new HashMap<>()));
+        }
+        return nodes;
+    }
+
+    @BeforeEach void setup() {
+        Random rnd = new Random(42);
+        MapObjectInfo building = new MapObjectInfo(0.1, new SerializableColor[] { new SerializableColor(0, 0, 0), new SerializableColor(0, 0, 0) }, 1);
+        objects = new ArrayList<>();
+        for(int i = 0; i < amtObjects; i++) {
+            float lat = 55 + rnd.nextFloat() * 0.1f;
+            float lon = 10 + rnd.nextFloat() * 0.1f;
+            float size = rnd.nextFloat() * 0.002f;
+            if(i % 2 == 0) {
+                objects.add(new Road(nodes(lat, lon, lat + size, lon + rnd.nextFloat() * 0.002f, lat - size, lon + size)));
+            } else {
+                objects.add(new Area(nodes(lat, lon, lat + size, lon, lat + size, lon + size, lat, lon + size, lat, lon), building));
+            }
+        }
+        tree = new RTree(new SerializableRectangle2D(5.6, -55.1, 0.056, 0.1), new ArrayList<>(objects));
+    }
+
+    @Test void radiusQueryMatchesCheckingEveryObject() {
+        Random rnd = new Random(7);
+        for(int i = 0; i < 50; i++) {
+            double x = 5.6 + rnd.nextDouble() * 0.056, y = -55.1 + rnd.nextDouble() * 0.1;
+            double distance = Geometry.metersToMapUnits(rnd.nextInt(1000));
+            Set<MapObject> expected = new HashSet<>();
+            for(MapObject object : objects) {
+                if(object instanceof Area && object.isWithinDistance(x, y, distance)) { expected.add(object); }
+            }
+            Set<MapObject> found = ConcurrentHashMap.newKeySet();
+            AtomicInteger calls = new AtomicInteger();
+            tree.forEachWithinDistance(x, y, distance, object -> object instanceof Area, object -> { found.add(object); calls.incrementAndGet(); });
+            assertEquals(expected, found);
+            assertEquals(expected.size(), calls.get()); // no object is given twice
+        }
+    }
+
+    @Test void polygonQueryMatchesCheckingEveryObject() {
+        Random rnd = new Random(7);
+        for(int i = 0; i < 50; i++) {
+            double x = 5.6 + rnd.nextDouble() * 0.056, y = -55.1 + rnd.nextDouble() * 0.1, size = rnd.nextDouble() * 0.02;
+            double[] triangle = { x, y, x + size, y + size / 2, x + size / 3, y + size };
+            Set<MapObject> expected = new HashSet<>();
+            for(MapObject object : objects) {
+                if(object instanceof Road && object.intersectsPolygon(triangle)) { expected.add(object); }
+            }
+            Set<MapObject> found = ConcurrentHashMap.newKeySet();
+            tree.forEachIntersectingPolygon(triangle, object -> object instanceof Road, found::add);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test void pointInsideAreaIsWithinAnyDistance() {
+        Area square = new Area(nodes(55, 10, 55.01, 10, 55.01, 10.01, 55, 10.01, 55, 10), null);
+        assertTrue(square.isWithinDistance(0.56 * 10.005, -55.005, 0));
+        assertFalse(square.isWithinDistance(0.56 * 10.005, -55.02, Geometry.metersToMapUnits(1000)));
+        assertTrue(square.isWithinDistance(0.56 * 10.005, -55.02, Geometry.metersToMapUnits(1200)));
+    }
+
+    @Test void polygonInsideAreaIntersects() {
+        Area square = new Area(nodes(55, 10, 55.01, 10, 55.01, 10.01, 55, 10.01, 55, 10), null);
+        double[] small = { 5.6028, -55.006, 5.6029, -55.006, 5.6029, -55.005 };
+        assertTrue(square.intersectsPolygon(small));
+        Road road = new Road(nodes(55.02, 10, 55.02, 10.01));
+        assertFalse(road.intersectsPolygon(small));
+        Road crossing = new Road(nodes(54.99, 10.005, 55.02, 10.005));
+        double[] wide = { 5.59, -55.007, 5.62, -55.007, 5.62, -55.006, 5.59, -55.006 };
+        assertTrue(crossing.intersectsPolygon(wide));
+    }
+
+    @Test void emptyResultCallsNothing() {
+        List<MapObject> found = Collections.synchronizedList(new ArrayList<>());
+        tree.forEachWithinDistance(100, 100, 1, object -> true, found::add);
+        assertTrue(found.isEmpty());
+    }
+}
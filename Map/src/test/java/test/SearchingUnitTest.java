@@ -1,5 +1,411 @@
 package test;
 
+import model.Address;
+import model.AddressRegistry;
+import model.BulkGeocoder;
+import model.GlobalConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class SearchingUnitTest {
+    private AddressRegistry registry;
+
+    private static final String[][] addresses = {
+            { "Svendborg", "5700", "Svendborg", "Søndervej", "10" },
+            { "Svendborg", "5700", "Svendborg", "Søndervej", "12" },
+            { "Svendborg", "5700", "Svendborg", "Vestergade", "3" },
+            { "Svendborg", "5762", "Vester Skerninge", "Vestergade", "7" },
+            { "Odense", "5000", "Odense C", "Vestergade", "1" },
+            { "København", "1620", "København V", "Vesterbrogade", "5" },
+            { "Svendborg", "5700", "Svendborg", "Sankt Nicolai Gade", "2" },
+    };
+
+    @BeforeEach void setup() {
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.ADRESS_DEBUG_INFO, false);
+        registry = new AddressRegistry();
+        for (int i = 0; i < addresses.length; i++) {
+            String[] row = addresses[i];
+            Address address = new Address(row[0], row[1], row[2], row[3], row[4]);
+            address.setClosestGraphPoint(i + 1);
+            registry.addAddress(address, i * 0.001, 0); // a row of addresses a hundred meters apart
+        }
+    }
+
+    @Test void streetIsFound() {
+        List<Address> found = registry.findAddresses("Sankt Nicolai Gade 2");
+        assertEquals(1, found.size());
+        assertEquals("SANKT NICOLAI GADE", found.get(0).getStreet());
+        assertEquals("SVENDBORG", found.get(0).getCity());
+        assertEquals(5700, found.get(0).getPostCode());
+        assertEquals(7, found.get(0).getGraphNode());
+    }
+
+    @Test void unfinishedWordIsCompleted() {
+        List<Address> found = registry.findAddresses("Vesterbro");
+        assertEquals(1, found.size());
+        assertEquals("VESTERBROGADE", found.get(0).getStreet());
+        assertEquals(6, found.get(0).getGraphNode());
+    }
+
+    @Test void postcodeGivesItsStreets() {
+        List<Address> found = registry.findAddresses("5700");
+        assertEquals(3, found.size());
+        for (Address address : found) {
+            assertEquals("SVENDBORG", address.getCity());
+        }
+    }
+
+    @Test void cityGivesItsStreets() {
+        List<Address> found = registry.findAddresses("Odense C");
+        assertEquals(1, found.size());
+        assertEquals("VESTERGADE", found.get(0).getStreet());
+        assertEquals(5, found.get(0).getGraphNode());
+    }
+
+    @Test void unknownQueryFindsNothing() {
+        assertTrue(registry.findAddresses("Nowhere").isEmpty());
+        assertTrue(registry.findAddresses(new Address(null, null, null, "Nowhere", null)).isEmpty());
+        assertTrue(registry.findAddresses(new Address("Svendborg", "5700", "Svendborg", "Vestergade", "99")).isEmpty());
+    }
+
+    @Test void wordsCanBeInAnyOrder() {
+        List<Address> found = registry.findAddresses("Gade Nicolai 2");
+        assertEquals(1, found.size());
+        assertEquals("SANKT NICOLAI GADE", found.get(0).getStreet());
+        assertEquals(7, registry.findAddresses("Nicolai Sankt").get(0).getGraphNode());
+    }
+
+    @Test void wordFromTheMiddleOfAStreetFindsIt() {
+        List<Address> found = registry.findAddresses("Nicolai");
+        assertEquals(1, found.size());
+        assertEquals(7, found.get(0).getGraphNode());
+    }
+
+    @Test void otherWordsMustFitTheStreet() {
+        List<Address> found = registry.findAddresses("Nicolai Gade 2");
+        assertEquals(1, found.size());
+        assertEquals(7, found.get(0).getGraphNode());
+        assertTrue(registry.findAddresses("Nicolai Gade 3").isEmpty()); // it has no number 3
+    }
+
+    @Test void orderedSearchComesBeforeWordsInStreetNames() {
+        AddressRegistry withNames = new AddressRegistry();
+        withNames.addAddress(new Address("Svendborg", "5700", "Svendborg", "Søndervej", "10"));
+        withNames.addAddress(new Address("Svendborg", "5700", "Svendborg", "Vestergade", "3"));
+        withNames.addAddress(new Address("Odense", "5000", "Odense C", "Svendborg Landevej", "4"));
+        withNames.addAddress(new Address("Odense", "5000", "Odense C", "Vester Allé", "6"));
+        List<Address> found = withNames.findAddresses("Svendborg");
+        assertEquals(2, found.size());
+        for (Address address : found) {
+            assertEquals("SVENDBORG", address.getCity());
+        }
+        assertTrue(withNames.findAddresses("Vester").stream().anyMatch(a -> a.getStreet().equals("VESTERGADE")));
+        assertEquals("SVENDBORG LANDEVEJ", withNames.findAddresses("Landevej").get(0).getStreet());
+    }
+
+    @Test void nearestAddressesComeFirst() {
+        // Vestergade is in Svendborg at 0.002, Vester Skerninge at 0.003 and Odense C at 0.004
+        List<Address> found = registry.findAddresses("Vestergade", 0.0045, 0, 8);
+        assertEquals(3, found.size());
+        assertEquals("ODENSE C", found.get(0).getCity());
+        assertEquals("VESTER SKERNINGE", found.get(1).getCity());
+        assertEquals("SVENDBORG", found.get(2).getCity());
+        found = registry.findAddresses("Vestergade", 0, 0, 2);
+        assertEquals(2, found.size());
+        assertEquals("SVENDBORG", found.get(0).getCity());
+        assertEquals("VESTER SKERNINGE", found.get(1).getCity());
+    }
+
+    @Test void streetNameIsFoundInEveryTownItIsIn() {
+        List<Address> found = registry.findAddresses("Vestergade");
+        assertEquals(3, found.size());
+        assertTrue(found.stream().allMatch(a -> a.getStreet().equals("VESTERGADE")));
+        found = registry.findAddresses("Odense C Vestergade");
+        assertEquals(1, found.size());
+        assertEquals(5, found.get(0).getGraphNode());
+        found = registry.findAddresses(new Address("Odense", null, null, "Vestergade", null));
+        assertEquals(1, found.size());
+        assertEquals(5, found.get(0).getGraphNode());
+        assertTrue(registry.findAddresses(new Address("Odense", "5700", null, "Vestergade", null)).isEmpty());
+    }
+
+    @Test void rankingKeepsTheKNearest() {
+        AddressRegistry many = new AddressRegistry();
+        Random random = new Random(7);
+        double[] xs = new double[300];
+        for (int i = 0; i < xs.length; i++) { // the same street in 300 towns
+            xs[i] = random.nextDouble();
+            Address address = new Address("Kommune", Integer.toString(1000 + i), "By " + i, "Vestergade", "1");
+            address.setClosestGraphPoint(i);
+            many.addAddress(address, xs[i], 0);
+        }
+        List<Address> found = many.findAddresses("Vestergade", 0.5, 0, 10);
+        assertEquals(10, found.size());
+        Integer[] byDistance = new Integer[xs.length];
+        for (int i = 0; i < byDistance.length; i++) {
+            byDistance[i] = i;
+        }
+        Arrays.sort(byDistance, (a, b) -> Double.compare(Math.abs(xs[a] - 0.5), Math.abs(xs[b] - 0.5)));
+        for (int i = 0; i < 10; i++) {
+            assertEquals((int) byDistance[i], found.get(i).getGraphNode());
+        }
+    }
+
+    @Test void leadingSeparatorIsIgnored() {
+        List<Address> found = registry.findAddresses("-Vestergade");
+        assertFalse(found.isEmpty());
+        assertTrue(found.stream().allMatch(a -> a.getStreet().equals("VESTERGADE")));
+        found = registry.findAddresses(".Vestergade 3");
+        assertEquals(1, found.size());
+        assertEquals(3, found.get(0).getGraphNode());
+        AddressRegistry.Session session = registry.newSession();
+        session.setText("-Vestergade");
+        assertEquals(registry.findAddresses("-Vestergade").size(), session.findAddresses().size());
+    }
+
+    @Test void firstAddressIsFoundLikeTheRest() {
+        List<Address> found = registry.findAddresses("Svendborg Vestergade 3");
+        assertEquals(1, found.size());
+        assertEquals(3, found.get(0).getGraphNode());
+        assertEquals("SØNDERVEJ", registry.findAddresses("Søndervej 10").get(0).getStreet());
+        assertEquals(1, registry.findAddresses("Søndervej 10").get(0).getGraphNode());
+    }
+
+    @Test void firstNameOfEveryLayerIsInsertedWhole() {
+        AddressRegistry single = new AddressRegistry();
+        Address address = new Address("Ærø", "5970", "Ærøskøbing", "Adelgade", "1");
+        address.setClosestGraphPoint(7);
+        single.addAddress(address, 0, 0);
+
+        List<Address> found = single.findAddresses("Ærøskøbing Adelgade 1");
+        assertEquals(1, found.size());
+        assertEquals("ADELGADE", found.get(0).getStreet());
+        assertEquals("ÆRØSKØBING", found.get(0).getCity());
+        assertEquals("ÆRØ", found.get(0).getMunicipality());
+        assertEquals(7, found.get(0).getGraphNode());
+        assertEquals(1, single.findAddresses(new Address("Ærø", null, "Ærøskøbing", "Adelgade", "1")).size());
+    }
+
+    @Test void frozenRegistryTakesNoMoreAddresses() {
+        registry.freeze();
+        assertThrows(IllegalStateException.class,
+                () -> registry.addAddress(new Address("Odense", "5000", "Odense C", "Kongensgade", "1")));
+        assertEquals(1, registry.findAddresses("Odense C").size());
+    }
+
+    @Test void completionsAreRankedByHouseNumbers() {
+        List<Address> found = registry.complete("s", 8);
+        assertEquals(2, found.size());
+        assertEquals("SØNDERVEJ", found.get(0).getStreet()); // two house numbers
+        assertEquals("SANKT NICOLAI GADE", found.get(1).getStreet());
+        assertTrue(found.get(0).getGraphNode() == 1 || found.get(0).getGraphNode() == 2); // at one of its houses
+    }
+
+    @Test void completionsAreLimitedToK() {
+        assertEquals(4, registry.complete("Vester", 8).size()); // Vestergade in three cities and Vesterbrogade
+        List<Address> found = registry.complete("Vester", 2);
+        assertEquals(2, found.size());
+        assertEquals("SVENDBORG", found.get(0).getCity()); // the first one loaded
+        assertEquals("VESTERBROGADE", registry.complete("Vesterb", 8).get(0).getStreet());
+    }
+
+    @Test void unknownPrefixHasNoCompletions() {
+        assertTrue(registry.complete("Nowhere", 8).isEmpty());
+        assertTrue(registry.complete("  ", 8).isEmpty());
+    }
+
+    @Test void typoIsCorrected() {
+        List<Address> found = registry.findAddresses("Vesterbrogde");
+        assertEquals(1, found.size());
+        assertEquals("VESTERBROGADE", found.get(0).getStreet());
+        assertEquals(1, registry.findAddresses("Sankt Nicolia Gade").size());
+    }
+
+    @Test void danishLettersCanBeTypedWithout() {
+        assertEquals("SØNDERVEJ", registry.findAddresses("Sondervej").get(0).getStreet());
+        assertEquals("SØNDERVEJ", registry.findAddresses("Soendervej Svendborg").get(0).getStreet());
+        assertEquals("KØBENHAVN V", registry.findAddresses("Koebenhavn").get(0).getCity());
+    }
+
+    @Test void foldingBelongsToTheRegistry() {
+        AddressRegistry folded = new AddressRegistry(), unfolded = new AddressRegistry();
+        unfolded.setFolding('Ø'); // Ø can only be typed as Ø, so "OE" is two edits off
+        for (AddressRegistry withStreet : List.of(folded, unfolded)) {
+            withStreet.addAddress(new Address("Svendborg", "5700", "Svendborg", "Søvej", "1"));
+        }
+        assertEquals("SØVEJ", folded.findAddresses("Soevej").get(0).getStreet());
+        assertTrue(unfolded.findAddresses("Soevej").isEmpty());
+        assertThrows(IllegalStateException.class, () -> folded.setFolding('Ø', "OE"));
+    }
+
+    @Test void wordsFarFromAnyNameFindNothing() {
+        assertTrue(registry.findAddresses("Vxstxrgxdx").isEmpty());
+        assertTrue(registry.findAddresses("Vsg").isEmpty()); // too short to guess at
+    }
+
+    @Test void sessionFindsWhatTheWholeQueryFinds() {
+        AddressRegistry.Session session = registry.newSession();
+        String query = "Vestergade  Odense C";
+        for (int i = 0; i < query.length(); i++) {
+            session.type(query.charAt(i));
+            assertEquals(registry.findAddresses(query.substring(0, i + 1)).toString(),
+                    session.findAddresses().toString(), query.substring(0, i + 1));
+        }
+    }
+
+    @Test void sessionGoesBackOnDelete() {
+        AddressRegistry.Session session = registry.newSession();
+        session.setText("Vesterbrogade");
+        session.delete();
+        session.delete();
+        assertEquals("VESTERBROGA", session.getText());
+        session.setText("Søndervej 1");
+        assertEquals("SØNDERVEJ 1", session.getText());
+        assertEquals(registry.findAddresses("Søndervej 1").toString(), session.findAddresses().toString());
+        session.setText("");
+        assertEquals("", session.getText());
+    }
+
+    @Test void idsAreTheAddressesFound() {
+        int[] found = new int[8];
+        assertEquals(1, registry.findAddressIds("Sankt Nicolai Gade 2", found));
+        assertEquals(7, registry.getGraphNode(found[0]));
+        assertEquals("SANKT NICOLAI GADE", registry.getAddress(found[0]).getStreet());
+        assertEquals(1, registry.findAddressIds("5700", new int[1])); // only as many as there is room for
+    }
+
+    @Test void searchesCanRunAtTheSameTime() throws Exception {
+        String[] queries = { "Sankt Nicolai Gade 2", "Vesterbro", "5700", "Odense C", "Vesterbrogde", "Nowhere" };
+        List<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(registry.findAddresses(query).toString());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> searchers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            searchers.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    for (int q = 0; q < queries.length; q++) {
+                        if (!expected.get(q).equals(registry.findAddresses(queries[q]).toString())) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> searcher : searchers) {
+            assertTrue(searcher.get());
+        }
+        pool.shutdown();
+    }
+
+    @Test void nearestAddressToAPoint() {
+        int point = registry.getNearestAddressPoint(0.0061, 0.0002);
+        assertEquals("SANKT NICOLAI GADE", registry.getAddressOfPoint(point).getStreet());
+        assertEquals(Math.hypot(0.0001, 0.0002) * 111320, registry.getMetersToPoint(point, 0.0061, 0.0002), 1e-6);
+        assertEquals("SØNDERVEJ", registry.getNearestAddress(-1, 0).getStreet());
+        assertArrayEquals(new int[] { registry.getNearestAddressPoint(0.002, 0), point },
+                registry.getNearestAddressPoints(new double[] { 0.002, 0.0061 }, new double[] { 0, 0.0002 }));
+    }
+
+    @Test void registryWithoutPointsFindsNoNearestAddress() {
+        AddressRegistry withoutPoints = new AddressRegistry();
+        withoutPoints.addAddress(new Address("Odense", "5000", "Odense C", "Vestergade", "1"));
+        assertEquals(-1, withoutPoints.getNearestAddressPoint(0, 0));
+        assertNull(withoutPoints.getNearestAddress(0, 0));
+    }
+
+    @Test void csvOfPointsIsReverseGeocoded() throws IOException {
+        StringWriter out = new StringWriter();
+        long rows = new BulkGeocoder(registry).reverse(new BufferedReader(new StringReader(
+                "lat,lon\n-0.0002,0.0109\n\nnot a point\n")), out); // around the map point 0.0061,0.0002
+        assertEquals(2, rows);
+        assertEquals("lat,lon,address,meters\n"
+                + "-0.0002,0.0109,\"SANKT NICOLAI GADE 2, 5700 SVENDBORG\",25\n"
+                + "not a point,,\n", out.toString());
+    }
+
+    @Test void csvOfAddressesIsGeocoded() throws IOException {
+        StringWriter out = new StringWriter();
+        long rows = new BulkGeocoder(registry).forward(new BufferedReader(new StringReader(
+                "street,number,city\n\"Sankt Nicolai Gade\",2,Svendborg\nsøndervej  12.\n5700\nSøndervej 99\nNowhere\n")),
+                out, true);
+        assertEquals(5, rows);
+        String[] lines = out.toString().split("\n");
+        assertEquals("street,number,city,graph_node,lat,lon,match", lines[0]);
+        assertTrue(lines[1].endsWith(",7,0.0," + 6 * 0.001 / 0.56 + ",exact"));
+        assertTrue(lines[2].startsWith("søndervej  12.,2,0.0,"));
+        assertTrue(lines[2].endsWith(",exact"));
+        assertTrue(lines[3].endsWith(",ambiguous"));
+        assertTrue(lines[4].endsWith(",partial"));
+        assertEquals("Nowhere,,,,,none", lines[5]);
+    }
+
+    @Test void csvWithoutHeaderKeepsEveryRow() throws IOException {
+        StringWriter out = new StringWriter();
+        long rows = new BulkGeocoder(registry).forward(new BufferedReader(new StringReader(
+                "Nowhere\n-,,\nSankt Nicolai Gade 2\n")), out, false);
+        assertEquals(3, rows);
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("Nowhere,,,,,none", lines[0]);
+        assertEquals("-,,,,,,,none", lines[1]);
+        assertTrue(lines[2].startsWith("Sankt Nicolai Gade 2,7,"));
+    }
+
+    @Test void registryMappedFromAFileFindsTheSame() throws IOException, ClassNotFoundException {
+        Path file = Files.createTempFile("registry", ".bin");
+        file.toFile().deleteOnExit(); // not before, a mapped file can't be deleted on every system
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            registry.writeSection(out);
+        }
+        AddressRegistry mapped = copy(registry);
+        assertThrows(IllegalStateException.class, () -> mapped.findAddresses("Vestergade"));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped.mapSection(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        for (String query : new String[] { "Gade Nicolai 2", "Skerninge Vestergade", "Vestergade", "Odense C" }) {
+            assertEquals(registry.findAddresses(query).toString(), mapped.findAddresses(query).toString());
+        }
+        assertEquals(registry.complete("Vest", 8).toString(), mapped.complete("Vest", 8).toString());
+        assertEquals(registry.getNearestAddress(0.0031, 0).toString(), mapped.getNearestAddress(0.0031, 0).toString());
+        assertEquals(registry.getGraphNode(5), mapped.getGraphNode(5));
+    }
 
+    /**
+     * The registry the way a snapshot has it before its section is mapped
+     */
+    private static AddressRegistry copy(AddressRegistry registry) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(registry);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (AddressRegistry) in.readObject();
+        }
+    }
 }
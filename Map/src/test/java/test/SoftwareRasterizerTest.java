@@ -0,0 +1,88 @@
+package test;
+
+import model.SoftwareRasterizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SoftwareRasterizerTest {
+    private static final int white = 0xFFFFFFFF, red = 0xFFFF0000;
+    private SoftwareRasterizer raster;
+
+    @BeforeEach void setup() {
+        raster = new SoftwareRasterizer(100, 100);
+        raster.clear(white);
+        raster.setColor(red);
+    }
+
+    private int pixel(int x, int y) {
+        return raster.getPixels()[y * raster.getWidth() + x];
+    }
+
+    private int count(int color) {
+        int count = 0;
+        for(int pixel : raster.getPixels()) {
+            if(pixel == color) { count++; }
+        }
+        return count;
+    }
+
+    @Test void FillsExactlyThePixelsInsideASquare() {
+        raster.fillPolygon(new double[] { 10, 10, 30, 10, 30, 30, 10, 30 });
+        assertEquals(400, count(red));
+        assertEquals(red, pixel(10, 10));
+        assertEquals(red, pixel(29, 29));
+        assertEquals(white, pixel(30, 30));
+        assertEquals(white, pixel(9, 20));
+    }
+
+    @Test void TransformIsAppliedToCoordinates() {
+        raster.setTransform(10, -50, -50); // map coordinate 5 is pixel 0
+        raster.fillPolygon(new double[] { 6, 6, 7, 6, 7, 7, 6, 7 });
+        assertEquals(100, count(red));
+        assertEquals(red, pixel(10, 10));
+        assertEquals(white, pixel(20, 20));
+    }
+
+    @Test void ThinLineCoversOnePixelPerStep() {
+        raster.strokePolyline(new double[] { 10.5, 50.5, 89.5, 50.5 });
+        assertEquals(80, count(red));
+        assertEquals(red, pixel(50, 50));
+        assertEquals(white, pixel(50, 51));
+    }
+
+    @Test void WideLineHasTheGivenWidth() {
+        raster.setLineWidth(6);
+        raster.strokePolyline(new double[] { 10, 50, 90, 50 });
+        assertEquals(red, pixel(50, 47));
+        assertEquals(red, pixel(50, 52));
+        assertEquals(white, pixel(50, 46));
+        assertEquals(white, pixel(50, 53));
+        assertEquals(80 * 6, count(red));
+    }
+
+    @Test void LinesFarOutsideAreClippedQuickly() {
+        raster.strokePolyline(new double[] { -1e9, 50.5, 1e9, 50.5 });
+        assertEquals(100, count(red));
+        raster.setLineWidth(4);
+        raster.strokePolyline(new double[] { -1e9, -1e9, -1e9 + 5, -1e9 });
+        assertEquals(100, count(red));
+    }
+
+    @Test void TransparentColorsAreBlended() {
+        raster.clear(0xFF000000);
+        raster.setColor(0x80FFFFFF); // half transparent white
+        raster.fillPolygon(new double[] { 0, 0, 100, 0, 100, 100, 0, 100 });
+        int blended = pixel(50, 50);
+        assertEquals(0xFF, blended >>> 24);
+        assertEquals(0x80, (blended >> 16) & 0xFF);
+    }
+
+    @Test void PolygonWithAHoleUsesEvenOdd() {
+        // a square with a square hole, drawn as one polygon going around the hole and back
+        raster.fillPolygon(new double[] { 0, 0, 60, 0, 60, 60, 0, 60, 0, 0, 20, 20, 20, 40, 40, 40, 40, 20, 20, 20 });
+        assertEquals(red, pixel(10, 10));
+        assertEquals(white, pixel(30, 30));
+    }
+}
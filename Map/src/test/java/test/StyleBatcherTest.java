@@ -0,0 +1,121 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StyleBatcherTest {
+    private static final SerializableColor light = new SerializableColor(1, 1, 1), dark = new SerializableColor(0.1, 0.1, 0.1);
+    private MapObjectInfo majorRoad, minorRoad, forest, building;
+    private StyleBatcher batcher;
+    private RecordingRenderer renderer;
+
+    /**
+     * Writes down every call that changes the style or draws something.
+     */
+    private static class RecordingRenderer implements MapRenderer {
+        final List<String> calls = new ArrayList<>();
+        double lineWidth = 1;
+        int lines;
+
+        @Override public void setStroke(SerializableColor color) { calls.add("stroke color " + color.getARGB()); }
+        @Override public void setFill(SerializableColor color) { calls.add("fill color " + color.getARGB()); }
+        @Override public void setLineWidth(double lineWidth) { this.lineWidth = lineWidth; }
+        @Override public double getLineWidth() { return lineWidth; }
+        @Override public void beginPath() { lines = 0; }
+        @Override public void moveTo(double x, double y) { lines++; }
+        @Override public void lineTo(double x, double y) { }
+        @Override public void stroke() { calls.add("stroke " + lines + " lines " + lineWidth); }
+        @Override public void fillPolygon(double[] xs, double[] ys, int n) { calls.add("fill"); }
+        @Override public void strokeLine(double x1, double y1, double x2, double y2) { }
+        @Override public void strokeRect(double x, double y, double width, double height) { }
+        @Override public void fillOval(double x, double y, double width, double height) { }
+        @Override public double getScale() { return 100; } // the test shapes are around a hundred pixels
+        @Override public SerializableRectangle2D getView() { return new SerializableRectangle2D(0, 0, 1, 1); }
+    }
+
+    private static List<Node> line(double offset) {
+        return List.of(new Node((float) -offset, 1, new HashMap<>()), new Node((float) -offset, 2, new HashMap<>()),
+                new Node((float) -offset - 1, 2, new HashMap<>()));
+    }
+
+    @BeforeEach void setup() {
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.TOGGLE_DARKMODE, true);
+        majorRoad = new MapObjectInfo(0.5, new SerializableColor[] { light, dark }, 3);
+        minorRoad = new MapObjectInfo(0.3, new SerializableColor[] { light, dark }, 1);
+        forest = new MapObjectInfo(0.9, new SerializableColor[] { light, dark }, 1);
+        building = new MapObjectInfo(0.15, new SerializableColor[] { light, dark }, 1);
+        batcher = new StyleBatcher();
+        renderer = new RecordingRenderer();
+    }
+
+    @Test void sameStyleIsStrokedAsOnePath() {
+        List<MapObject> objects = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            objects.add(new Highway(line(i), majorRoad, "Hovedvej"));
+        }
+        batcher.draw(renderer, objects);
+        assertEquals(List.of("stroke color " + dark.getARGB(), "stroke 10 lines 3.0"), renderer.calls);
+        assertEquals(1, renderer.getLineWidth()); // the line width is put back
+    }
+
+    @Test void areasGoBelowLinesAndMajorRoadsOnTop() {
+        List<MapObject> objects = new ArrayList<>();
+        objects.add(new Highway(line(0), majorRoad, "Hovedvej"));
+        objects.add(new Area(line(1), building));
+        objects.add(new Highway(line(2), minorRoad, "Sidevej"));
+        objects.add(new Area(line(3), forest));
+        objects.add(new Area(line(4), building));
+        batcher.draw(renderer, objects);
+        assertEquals(List.of(
+                "fill color " + dark.getARGB(), "fill", // forest
+                "fill color " + dark.getARGB(), "fill", "fill", // buildings
+                "stroke color " + dark.getARGB(), "stroke 1 lines 1.0", // minor road
+                "stroke color " + dark.getARGB(), "stroke 1 lines 3.0"), renderer.calls); // major road
+        assertEquals(4, batcher.getStyleCount());
+    }
+
+    @Test void colorsFollowTheTheme() {
+        List<MapObject> objects = List.of(new Highway(line(0), majorRoad, "Hovedvej"));
+        batcher.draw(renderer, objects);
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.TOGGLE_DARKMODE, false);
+        batcher.draw(renderer, objects);
+        GlobalConfig.getInstance().setOption(GlobalConfig.Options.TOGGLE_DARKMODE, true);
+        assertEquals("stroke color " + dark.getARGB(), renderer.calls.get(0));
+        assertEquals("stroke color " + light.getARGB(), renderer.calls.get(2));
+    }
+
+    @Test void themeCanBeGivenInsteadOfTheOption() {
+        List<MapObject> objects = List.of(new Highway(line(0), majorRoad, "Hovedvej"), new Area(line(1), building));
+        batcher.draw(renderer, objects, false, false); // the option is dark mode
+        assertEquals(List.of("fill color " + light.getARGB(), "fill", "stroke color " + light.getARGB(), "stroke 1 lines 3.0"),
+                renderer.calls);
+        renderer.calls.clear();
+        TileCache.drawObjects(renderer, objects, batcher, false, false, false);
+        assertEquals(List.of("stroke color " + light.getARGB(), "stroke 1 lines 3.0", "fill color " + light.getARGB(), "fill"),
+                renderer.calls);
+    }
+
+        @Test void decimationWorksWithoutBatching() {
+        List<Node> tiny = List.of(new Node(0, 0, new HashMap<>()), new Node(0.001f, 0.001f, new HashMap<>()));
+        List<MapObject> objects = List.of(new Highway(tiny, majorRoad, "Sti"), new Highway(line(0), majorRoad, "Hovedvej"));
+        batcher.drawEach(renderer, objects, true, true); // the tiny road is less than a pixel at this scale
+        assertEquals(List.of("stroke color " + dark.getARGB(), "stroke 1 lines 3.0"), renderer.calls);
+        renderer.calls.clear();
+        batcher.drawEach(renderer, objects, false, true);
+        assertEquals(4, renderer.calls.size());
+    }
+
+    @Test void objectsAreOnlyDrawnInTheFrameTheyAreGiven() {
+        batcher.draw(renderer, List.of(new Highway(line(0), majorRoad, "Hovedvej")));
+        renderer.calls.clear();
+        batcher.draw(renderer, List.of(new Area(line(1), building)));
+        assertEquals(List.of("fill color " + dark.getARGB(), "fill"), renderer.calls);
+    }
+}
@@ -0,0 +1,69 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ViewportQueryUnitTest {
+    private RTree tree;
+    private static final int amtObjects = 5014;
+
+    @BeforeEach void setup() {
+        Random rnd = new Random(42);
+        List<MapObject> objects = new ArrayList<>();
+        for(int i = 0; i < amtObjects; i++) {
+            float lat = 55 + rnd.nextFloat() * 0.1f;
+            float lon = 10 + rnd.nextFloat() * 0.1f;
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(new Node(lat, lon, new HashMap<>()));
+            nodes.add(new Node(lat + rnd.nextFloat() * 0.002f, lon + rnd.nextFloat() * 0.002f, new HashMap<>()));
+            objects.add(new Road(nodes));
+        }
+        tree = new RTree(new SerializableRectangle2D(5.6, -55.1, 0.056, 0.1), objects);
+    }
+
+    private Set<MapObject> fullQuery(SerializableRectangle2D view, double zoomLvl) {
+        Set<MapObject> expected = new HashSet<>();
+        tree.getObjectsIntersecting(view, expected, zoomLvl);
+        return expected;
+    }
+
+    @Test void pannedQueriesMatchFullQueries() {
+        ViewportQuery query = new ViewportQuery(tree);
+        Random rnd = new Random(7);
+        double x = 5.62, y = -55.08;
+        for(int i = 0; i < 200; i++) {
+            x += (rnd.nextDouble() - 0.5) * 0.004;
+            y += (rnd.nextDouble() - 0.5) * 0.004;
+            SerializableRectangle2D view = new SerializableRectangle2D(x, y, 0.02, 0.015);
+            Collection<MapObject> visible = query.query(view, 0.1);
+            assertEquals(fullQuery(view, 0.1), new HashSet<>(visible));
+        }
+    }
+
+    @Test void changedZoomLevelGivesFullQuery() {
+        ViewportQuery query = new ViewportQuery(tree);
+        SerializableRectangle2D view = new SerializableRectangle2D(5.61, -55.09, 0.03, 0.03);
+        query.query(view, 0.1);
+        Collection<MapObject> visible = query.query(view, 0.9);
+        assertEquals(fullQuery(view, 0.9), new HashSet<>(visible));
+    }
+
+    @Test void jumpingFarAwayGivesFullQuery() {
+        ViewportQuery query = new ViewportQuery(tree);
+        query.query(new SerializableRectangle2D(5.6, -55.1, 0.01, 0.01), 0.1);
+        SerializableRectangle2D farView = new SerializableRectangle2D(5.64, -55.02, 0.01, 0.01);
+        Collection<MapObject> visible = query.query(farView, 0.1);
+        assertEquals(fullQuery(farView, 0.1), new HashSet<>(visible));
+    }
+}